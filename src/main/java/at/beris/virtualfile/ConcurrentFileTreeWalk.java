@@ -0,0 +1,114 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+import at.beris.virtualfile.filter.Filter;
+import at.beris.virtualfile.filter.IsDirectoryFilter;
+import at.beris.virtualfile.util.BlockingIterator;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a directory tree on a ForkJoinPool. The task listing a directory forks a task for each subdirectory
+ * it finds, so idle threads steal the listings of other branches. The parallelism of the pool limits the number
+ * of listings running at the same time. A directory is listed completely before its files are handed to the
+ * stream, so no connection is held while a task waits for the consumer. The files matching the filter are
+ * returned in no particular order.
+ */
+class ConcurrentFileTreeWalk {
+    private static final int RESULT_QUEUE_CAPACITY = 1024;
+
+    private final Filter filter;
+    private final Filter withDirectoriesFilter;
+    private final ForkJoinPool pool;
+    private final BlockingIterator<VirtualFile> results = new BlockingIterator<>(RESULT_QUEUE_CAPACITY);
+
+    /**
+     * @param filter      Filter
+     * @param parallelism Maximum number of directories listed at the same time
+     */
+    ConcurrentFileTreeWalk(Filter filter, int parallelism) {
+        this.filter = filter;
+        this.withDirectoriesFilter = ((Filter) filter.clone()).or(new IsDirectoryFilter().equalTo(true));
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("VirtualFile-Find-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Starts the walk. Closing the stream stops the threads.
+     *
+     * @param directory Directory to start from
+     * @return Stream of the files found
+     */
+    Stream<VirtualFile> start(VirtualFile directory) {
+        pool.execute(new ListingTask(null, directory));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    private void close() {
+        results.close();
+        pool.shutdownNow();
+    }
+
+    private class ListingTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final VirtualFile directory;
+
+        private ListingTask(ListingTask parent, VirtualFile directory) {
+            super(parent);
+            this.directory = directory;
+        }
+
+        @Override
+        public void compute() {
+            if (!results.isClosed()) {
+                // the listing is read completely, so the connection is released before waiting for the consumer
+                for (VirtualFile file : directory.list(withDirectoriesFilter)) {
+                    if (file.isDirectory()) {
+                        addToPendingCount(1);
+                        new ListingTask(this, file).fork();
+                    }
+                    if (filter.filter(file) && !results.offer(file))
+                        break;
+                }
+            }
+            tryComplete();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if (getCompleter() == null) {
+                results.finish(null);
+                pool.shutdown();
+            }
+        }
+
+        @Override
+        public boolean onExceptionalCompletion(Throwable ex, CountedCompleter<?> caller) {
+            if (getCompleter() == null) {
+                results.finish(ex instanceof RuntimeException ? (RuntimeException) ex : new VirtualFileException(ex));
+                pool.shutdown();
+            }
+            return true;
+        }
+    }
+}
@@ -9,6 +9,7 @@
 
 package at.beris.virtualfile;
 
+import at.beris.virtualfile.cache.EvictionPolicy;
 import at.beris.virtualfile.client.ClientConfiguration;
 import at.beris.virtualfile.client.ftp.FtpClientConfiguration;
 import at.beris.virtualfile.client.http.HttpClientConfiguration;
@@ -49,6 +50,13 @@ public final class Configuration {
     private static final int MASTER_PASSWORD_LENGTH = 10;
 
     public static final int DEFAULT_FILE_CACHE_SIZE = 10000;
+    public static final long DEFAULT_FILE_CACHE_MEMORY_LIMIT = 0;
+    public static final EvictionPolicy DEFAULT_FILE_CACHE_EVICTION_POLICY = EvictionPolicy.LRU;
+    public static final int DEFAULT_NEGATIVE_LOOKUP_CACHE_SIZE = 1000;
+    public static final int DEFAULT_NEGATIVE_LOOKUP_CACHE_TIME_TO_LIVE = 30;
+    public static final int DEFAULT_COPY_THREAD_POOL_SIZE = 1;
+    public static final boolean DEFAULT_RESUMABLE_COPY = false;
+    public static final int DEFAULT_CHECKSUM_CACHE_SIZE = 0;
     public static final String DEFAULT_HOME_DIRECTORY = System.getProperty("user.home") + File.separator + ".VirtualFile";
 
     @XmlTransient
@@ -56,6 +64,20 @@ public final class Configuration {
 
     private int fileCacheSize;
 
+    private long fileCacheMemoryLimit;
+
+    private EvictionPolicy fileCacheEvictionPolicy;
+
+    private int negativeLookupCacheSize;
+
+    private int negativeLookupCacheTimeToLive;
+
+    private int copyThreadPoolSize;
+
+    private boolean resumableCopy;
+
+    private int checksumCacheSize;
+
     private char[] masterPassword;
 
     private SftpClientConfiguration sftpClientConfiguration;
@@ -146,6 +168,112 @@ public final class Configuration {
 
     public Configuration setFileCacheSize(int size) {
         this.fileCacheSize = size;
+        callbackHandler.changedFileCacheSize(size);
+        return this;
+    }
+
+    public long getFileCacheMemoryLimit() {
+        return fileCacheMemoryLimit;
+    }
+
+    /**
+     * Limits the estimated heap memory retained by the cached files in addition to the file cache size.
+     *
+     * @param bytes Memory limit in bytes or 0 for no limit
+     * @return Configuration
+     */
+    public Configuration setFileCacheMemoryLimit(long bytes) {
+        this.fileCacheMemoryLimit = bytes;
+        callbackHandler.changedFileCacheMemoryLimit(bytes);
+        return this;
+    }
+
+    public EvictionPolicy getFileCacheEvictionPolicy() {
+        return fileCacheEvictionPolicy;
+    }
+
+    public Configuration setFileCacheEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.fileCacheEvictionPolicy = evictionPolicy;
+        callbackHandler.changedFileCacheEvictionPolicy(evictionPolicy);
+        return this;
+    }
+
+    public int getNegativeLookupCacheSize() {
+        return negativeLookupCacheSize;
+    }
+
+    /**
+     * Sets the number of remote files remembered as not existing.
+     *
+     * @param size Number of entries or 0 to disable the negative lookup cache
+     * @return Configuration
+     */
+    public Configuration setNegativeLookupCacheSize(int size) {
+        this.negativeLookupCacheSize = size;
+        callbackHandler.changedNegativeLookupCacheSize(size);
+        return this;
+    }
+
+    public int getNegativeLookupCacheTimeToLive() {
+        return negativeLookupCacheTimeToLive;
+    }
+
+    /**
+     * Sets how long a remote file is remembered as not existing.
+     *
+     * @param timeToLive Time to live in seconds
+     * @return Configuration
+     */
+    public Configuration setNegativeLookupCacheTimeToLive(int timeToLive) {
+        this.negativeLookupCacheTimeToLive = timeToLive;
+        callbackHandler.changedNegativeLookupCacheTimeToLive(timeToLive);
+        return this;
+    }
+
+    public int getCopyThreadPoolSize() {
+        return copyThreadPoolSize;
+    }
+
+    /**
+     * Sets the number of threads copying the files of a directory tree in parallel.
+     *
+     * @param copyThreadPoolSize Number of threads or 1 to copy one file after another
+     * @return Configuration
+     */
+    public Configuration setCopyThreadPoolSize(int copyThreadPoolSize) {
+        this.copyThreadPoolSize = copyThreadPoolSize;
+        return this;
+    }
+
+    public boolean isResumableCopy() {
+        return resumableCopy;
+    }
+
+    /**
+     * Enables checkpoints while copying files, so that an aborted copy continues where it stopped.
+     * The checkpoints are kept in the home directory.
+     *
+     * @param resumableCopy True to continue aborted copies
+     * @return Configuration
+     */
+    public Configuration setResumableCopy(boolean resumableCopy) {
+        this.resumableCopy = resumableCopy;
+        return this;
+    }
+
+    public int getChecksumCacheSize() {
+        return checksumCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of checksums kept in the persistent checksum cache in the home directory.
+     * A cached checksum is used as long as the size and modification time of the file are unchanged.
+     *
+     * @param checksumCacheSize Maximum number of checksums or 0 to calculate every checksum
+     * @return Configuration
+     */
+    public Configuration setChecksumCacheSize(int checksumCacheSize) {
+        this.checksumCacheSize = checksumCacheSize;
         return this;
     }
 
@@ -164,6 +292,13 @@ public final class Configuration {
 
     private void initDefaultSettings() {
         fileCacheSize = DEFAULT_FILE_CACHE_SIZE;
+        fileCacheMemoryLimit = DEFAULT_FILE_CACHE_MEMORY_LIMIT;
+        fileCacheEvictionPolicy = DEFAULT_FILE_CACHE_EVICTION_POLICY;
+        negativeLookupCacheSize = DEFAULT_NEGATIVE_LOOKUP_CACHE_SIZE;
+        negativeLookupCacheTimeToLive = DEFAULT_NEGATIVE_LOOKUP_CACHE_TIME_TO_LIVE;
+        copyThreadPoolSize = DEFAULT_COPY_THREAD_POOL_SIZE;
+        resumableCopy = DEFAULT_RESUMABLE_COPY;
+        checksumCacheSize = DEFAULT_CHECKSUM_CACHE_SIZE;
     }
 
     public void save() {
@@ -272,9 +407,37 @@ public final class Configuration {
         public void changedFileCacheSize(int newSize) {
 
         }
+
+        @Override
+        public void changedFileCacheMemoryLimit(long newMemoryLimit) {
+
+        }
+
+        @Override
+        public void changedFileCacheEvictionPolicy(EvictionPolicy newEvictionPolicy) {
+
+        }
+
+        @Override
+        public void changedNegativeLookupCacheSize(int newSize) {
+
+        }
+
+        @Override
+        public void changedNegativeLookupCacheTimeToLive(int newTimeToLive) {
+
+        }
     }
 
     public interface CallbackHandler {
         void changedFileCacheSize(int newSize);
+
+        void changedFileCacheMemoryLimit(long newMemoryLimit);
+
+        void changedFileCacheEvictionPolicy(EvictionPolicy newEvictionPolicy);
+
+        void changedNegativeLookupCacheSize(int newSize);
+
+        void changedNegativeLookupCacheTimeToLive(int newTimeToLive);
     }
 }
@@ -20,7 +20,9 @@ import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.LongSupplier;
 
 public class FileModel {
     private URL url;
@@ -29,6 +31,7 @@ public class FileModel {
     private FileTime lastAccessTime;
     private FileTime creationTime;
     private long size;
+    private LongSupplier sizeCalculator;
     private FileModel parent;
     private Set<FileAttribute> attributes;
     private boolean isSymbolicLink;
@@ -37,6 +40,10 @@ public class FileModel {
     private List<AclEntry> acl;
     private boolean isDirectory;
     private boolean fileExists;
+    private String checksumAlgorithm;
+    private Byte[] checksum;
+    private long checksumSize;
+    private FileTime checksumLastModifiedTime;
 
     public FileModel() {
         attributes = new HashSet<>();
@@ -76,11 +83,27 @@ public class FileModel {
     }
 
     public long getSize() {
+        LongSupplier calculator = sizeCalculator;
+        if (calculator != null) {
+            size = calculator.getAsLong();
+            sizeCalculator = null;
+        }
         return size;
     }
 
     public void setSize(long size) {
         this.size = size;
+        this.sizeCalculator = null;
+    }
+
+    /**
+     * Sets a size that is expensive to get, e.g. the number of entries of a directory. It's calculated
+     * when it is first read.
+     *
+     * @param sizeCalculator Calculates the size
+     */
+    public void setSize(LongSupplier sizeCalculator) {
+        this.sizeCalculator = sizeCalculator;
     }
 
     public FileModel getParent() {
@@ -168,6 +191,45 @@ public class FileModel {
         this.linkTarget = linkTarget;
     }
 
+    /**
+     * Returns the cached checksum. The checksum is only valid while the size and modification time are the
+     * same as when it was cached.
+     *
+     * @param algorithm Digest algorithm
+     * @return Checksum or null if no valid checksum of the algorithm is cached
+     */
+    public Byte[] getChecksum(String algorithm) {
+        if (checksum == null || !checksumAlgorithm.equals(algorithm) || checksumSize != getSize()
+                || !Objects.equals(checksumLastModifiedTime, lastModifiedTime))
+            return null;
+        return checksum;
+    }
+
+    /**
+     * Caches the checksum for the current size and modification time.
+     *
+     * @param algorithm Digest algorithm
+     * @param checksum  Checksum or null to clear the cache
+     */
+    public void setChecksum(String algorithm, Byte[] checksum) {
+        this.checksumAlgorithm = algorithm;
+        this.checksum = checksum;
+        this.checksumSize = getSize();
+        this.checksumLastModifiedTime = lastModifiedTime;
+    }
+
+    /**
+     * Takes over the cached checksum of another model of the same file.
+     *
+     * @param model FileModel
+     */
+    public void copyChecksum(FileModel model) {
+        this.checksumAlgorithm = model.checksumAlgorithm;
+        this.checksum = model.checksum;
+        this.checksumSize = model.checksumSize;
+        this.checksumLastModifiedTime = model.checksumLastModifiedTime;
+    }
+
     public void clear() {
         acl.clear();
         acl = null;
@@ -181,5 +243,8 @@ public class FileModel {
         group = null;
         url = null;
         linkTarget = null;
+        checksum = null;
+        checksumLastModifiedTime = null;
+        sizeCalculator = null;
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile;
+
+import at.beris.virtualfile.filter.Filter;
+import at.beris.virtualfile.filter.IsDirectoryFilter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * Walks a directory tree and returns the files matching a filter. Only one listing is open at a time, so a walk
+ * of a remote tree uses a single connection. Directories found in a listing are listed after it, the most
+ * recently found first. Only these pending directories are kept, so the memory doesn't depend on the number of files.
+ */
+class FileTreeIterator implements Iterator<VirtualFile>, AutoCloseable {
+    private final Filter filter;
+    private final Filter withDirectoriesFilter;
+    private final Deque<VirtualFile> pendingDirectories = new ArrayDeque<>();
+    private Stream<VirtualFile> stream;
+    private Iterator<VirtualFile> iterator;
+    private VirtualFile next;
+
+    /**
+     * @param directory Directory to start from
+     * @param filter    Filter
+     */
+    FileTreeIterator(VirtualFile directory, Filter filter) {
+        this.filter = filter;
+        this.withDirectoriesFilter = ((Filter) filter.clone()).or(new IsDirectoryFilter().equalTo(true));
+        pendingDirectories.push(directory);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (iterator == null || !iterator.hasNext()) {
+                closeStream();
+                if (pendingDirectories.isEmpty())
+                    return false;
+                stream = pendingDirectories.pop().stream(withDirectoriesFilter);
+                iterator = stream.iterator();
+                continue;
+            }
+            VirtualFile file = iterator.next();
+            if (file.isDirectory())
+                pendingDirectories.push(file);
+            if (filter.filter(file))
+                next = file;
+        }
+        return true;
+    }
+
+    @Override
+    public VirtualFile next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        VirtualFile file = next;
+        next = null;
+        return file;
+    }
+
+    @Override
+    public void close() {
+        pendingDirectories.clear();
+        closeStream();
+    }
+
+    private void closeStream() {
+        if (stream == null)
+            return;
+        Stream<VirtualFile> currentStream = stream;
+        stream = null;
+        iterator = null;
+        currentStream.close();
+    }
+}
@@ -10,6 +10,7 @@
 package at.beris.virtualfile;
 
 import at.beris.virtualfile.attribute.FileAttribute;
+import at.beris.virtualfile.cache.ChecksumStore;
 import at.beris.virtualfile.content.charset.CharsetDetector;
 import at.beris.virtualfile.content.charset.CharsetMatch;
 import at.beris.virtualfile.content.detect.Detector;
@@ -18,10 +19,12 @@ import at.beris.virtualfile.content.mime.MediaType;
 import at.beris.virtualfile.exception.NotImplementedException;
 import at.beris.virtualfile.exception.VirtualFileException;
 import at.beris.virtualfile.filter.Filter;
-import at.beris.virtualfile.filter.IsDirectoryFilter;
 import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.provider.operation.CopyResult;
 import at.beris.virtualfile.provider.operation.FileOperationListener;
+import at.beris.virtualfile.util.ChecksumUtils;
 import at.beris.virtualfile.util.FileUtils;
+import at.beris.virtualfile.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +36,11 @@ import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static at.beris.virtualfile.util.UrlUtils.maskedUrlString;
 
@@ -43,18 +51,22 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
 
     private static Logger logger = LoggerFactory.getLogger(UrlFile.class);
 
-    protected FileModel model;
+    protected volatile FileModel model;
     protected URL url;
-    protected FileOperationProvider fileOperationProvider;
+    protected volatile FileOperationProvider fileOperationProvider;
     protected UrlFileContext context;
 
+    private long modelTimeToLive;
+    private volatile long modelUpdateTime;
+    private final AtomicBoolean modelRefreshing = new AtomicBoolean(false);
+
     private UrlFile() {
     }
 
     UrlFile(URL url, UrlFileContext context) {
         this.url = url;
         this.context = context;
-        this.fileOperationProvider = context.getFileOperationProvider(url);
+        this.modelTimeToLive = TimeUnit.SECONDS.toNanos(context.getFileModelTimeToLive(url));
     }
 
     @Override
@@ -74,8 +86,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     @Override
     public String getName() {
         logger.debug("Get name for {}", this);
-        checkModel();
-        String name = FileUtils.getName(model.getUrl().getPath());
+        String name = FileUtils.getName(url.getPath());
         logger.debug("Returns: {}", name);
         return name;
     }
@@ -138,7 +149,8 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public void delete() {
         logger.info("Delete {}", this);
         checkModel();
-        fileOperationProvider.delete(model);
+        getFileOperationProvider().delete(model);
+        context.invalidateDescendants(this);
     }
 
     @Override
@@ -157,7 +169,18 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public Byte[] checksum() {
         logger.info("Calculate checksum for {}", this);
         checkModel();
-        Byte[] checksum = fileOperationProvider.checksum(model);
+        Byte[] checksum = model.getChecksum(ChecksumUtils.SHA1);
+        if (checksum == null) {
+            ChecksumStore checksumStore = context.getChecksumStore();
+            if (checksumStore != null)
+                checksum = checksumStore.get(url, model.getSize(), model.getLastModifiedTime());
+            if (checksum == null) {
+                checksum = getFileOperationProvider().checksum(model);
+                if (checksumStore != null)
+                    checksumStore.put(url, model.getSize(), model.getLastModifiedTime(), checksum);
+            }
+            model.setChecksum(ChecksumUtils.SHA1, checksum);
+        }
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.setLength(0);
         stringBuilder.append("Returns: ");
@@ -167,6 +190,35 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         return checksum;
     }
 
+    @Override
+    public byte[] checksum(String algorithm) {
+        logger.info("Calculate {} checksum for {}", algorithm, this);
+        if (ChecksumUtils.SHA1.equals(algorithm))
+            return ChecksumUtils.toPrimitiveArray(checksum());
+
+        checkModel();
+        Byte[] checksum = model.getChecksum(algorithm);
+        if (checksum == null) {
+            checksum = ChecksumUtils.toObjectArray(getFileOperationProvider().checksum(model, algorithm));
+            model.setChecksum(algorithm, checksum);
+        }
+        return ChecksumUtils.toPrimitiveArray(checksum);
+    }
+
+    @Override
+    public byte[] treeChecksum(String algorithm) {
+        logger.info("Calculate {} tree checksum for {}", algorithm, this);
+        checkModel();
+        return getFileOperationProvider().treeChecksum(model, algorithm);
+    }
+
+    @Override
+    public Byte[] remoteChecksum() {
+        logger.debug("Get remote checksum for {}", this);
+        checkModel();
+        return getFileOperationProvider().remoteChecksum(model);
+    }
+
     @Override
     public boolean isDirectory() {
         logger.debug("Check isDirectory for {}", this);
@@ -189,7 +241,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public boolean isReadable() {
         logger.debug("Check isReadable for {}", this);
         checkModel();
-        boolean isReadable = fileOperationProvider.isReadable(model);
+        boolean isReadable = getFileOperationProvider().isReadable(model);
         logger.debug("Returns: {}", isReadable);
         return isReadable;
     }
@@ -198,7 +250,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public boolean isWritable() {
         logger.debug("Check isWritable for {}", this);
         checkModel();
-        boolean isWritable = fileOperationProvider.isWritable(model);
+        boolean isWritable = getFileOperationProvider().isWritable(model);
         logger.debug("Returns: {}", isWritable);
         return isWritable;
     }
@@ -207,7 +259,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public boolean isExecutable() {
         logger.debug("Check isExecutable for {}", this);
         checkModel();
-        boolean isExecutable = fileOperationProvider.isExecutable(model);
+        boolean isExecutable = getFileOperationProvider().isExecutable(model);
         logger.debug("Returns: {}", isExecutable);
         return isExecutable;
     }
@@ -216,7 +268,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public boolean isHidden() {
         logger.debug("Check isHidden for {}", this);
         checkModel();
-        boolean isHidden = fileOperationProvider.isHidden(model);
+        boolean isHidden = getFileOperationProvider().isHidden(model);
         logger.debug("Returns: {}", isHidden);
         return isHidden;
     }
@@ -243,8 +295,14 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     @Override
     public Boolean exists() {
         logger.info("Check exists for {}", this);
+        if (context.isMissingFile(url)) {
+            logger.info("Returns: false (cached)");
+            return false;
+        }
         checkModel();
-        Boolean exists = fileOperationProvider.exists(model);
+        Boolean exists = getFileOperationProvider().exists(model);
+        if (!exists)
+            context.addMissingFile(url);
         logger.info("Returns: {}", exists);
         return exists;
     }
@@ -253,7 +311,8 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public void create() {
         logger.info("Create {}", this);
         checkModel();
-        fileOperationProvider.create(model);
+        context.removeMissingFileWithAncestors(url);
+        getFileOperationProvider().create(model);
         updateModel();
     }
 
@@ -261,14 +320,32 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public InputStream getInputStream() {
         logger.debug("Get Inputstream for {}", this);
         checkModel();
-        return fileOperationProvider.getInputStream(model);
+        return getFileOperationProvider().getInputStream(model);
+    }
+
+    @Override
+    public InputStream getInputStream(long offset) {
+        logger.debug("Get Inputstream for {} at offset {}", this, offset);
+        checkModel();
+        return getFileOperationProvider().getInputStream(model, offset);
     }
 
     @Override
     public OutputStream getOutputStream() {
         logger.debug("Get Outputstream for {}", this);
         checkModel();
-        return fileOperationProvider.getOutputStream(model);
+        context.removeMissingFileWithAncestors(url);
+        model.setChecksum(null, null);
+        return getFileOperationProvider().getOutputStream(model);
+    }
+
+    @Override
+    public OutputStream getOutputStream(boolean append) {
+        logger.debug("Get Outputstream for {} (append: {})", this, append);
+        checkModel();
+        context.removeMissingFileWithAncestors(url);
+        model.setChecksum(null, null);
+        return getFileOperationProvider().getOutputStream(model, append);
     }
 
     @Override
@@ -285,7 +362,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         logger.info("Set ACL to {} for {}", acl, this);
         checkModel();
         model.setAcl(acl);
-        fileOperationProvider.setAcl(model);
+        getFileOperationProvider().setAcl(model);
         updateModel();
     }
 
@@ -303,7 +380,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         logger.info("Set owner to {} for {}", owner, this);
         checkModel();
         model.setOwner(owner);
-        fileOperationProvider.setOwner(model);
+        getFileOperationProvider().setOwner(model);
         updateModel();
     }
 
@@ -326,7 +403,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         logger.info("Set group to {} for {}", group, this);
         checkModel();
         model.setGroup(group);
-        fileOperationProvider.setGroup(model);
+        getFileOperationProvider().setGroup(model);
         updateModel();
     }
 
@@ -335,7 +412,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         logger.info("Set lastAccessTime to {} for {}", time, this);
         checkModel();
         model.setLastAccessTime(time);
-        fileOperationProvider.setLastAccessTime(model);
+        getFileOperationProvider().setLastAccessTime(model);
         updateModel();
     }
 
@@ -344,7 +421,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         logger.info("Set lastModifiedTime to {} for {}", time, this);
         checkModel();
         model.setLastModifiedTime(time);
-        fileOperationProvider.setLastModifiedTime(model);
+        getFileOperationProvider().setLastModifiedTime(model);
         updateModel();
     }
 
@@ -354,7 +431,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         logger.info("Set attributes for {}", this);
         checkModel();
         model.setAttributes(new HashSet<>(Arrays.asList(attributes)));
-        fileOperationProvider.setAttributes(model);
+        getFileOperationProvider().setAttributes(model);
         updateModel();
     }
 
@@ -363,7 +440,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         logger.info("Set creationTime to {} for {}", time, this);
         checkModel();
         model.setCreationTime(time);
-        fileOperationProvider.setCreationTime(model);
+        getFileOperationProvider().setCreationTime(model);
         updateModel();
     }
 
@@ -426,7 +503,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         for (FileAttribute attribute : attributes)
             model.addAttribute(attribute);
 
-        fileOperationProvider.addAttributes(model);
+        getFileOperationProvider().addAttributes(model);
         updateModel();
     }
 
@@ -441,7 +518,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         for (FileAttribute attribute : attributes)
             model.removeAttribute(attribute);
 
-        fileOperationProvider.removeAttributes(model);
+        getFileOperationProvider().removeAttributes(model);
         updateModel();
     }
 
@@ -449,37 +526,45 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public void rename(String newName) {
         logger.info("Rename {} to {}", this, newName);
         checkModel();
-        fileOperationProvider.rename(model, newName);
+        URL parentUrl = UrlUtils.getParentUrl(url);
+        if (parentUrl != null)
+            context.invalidateMissingFiles(UrlUtils.newUrl(parentUrl, newName));
+        getFileOperationProvider().rename(model, newName);
+        context.invalidateDescendants(this);
     }
 
     @Override
     public List<VirtualFile> find(Filter filter) {
         logger.info("Find children for {} with filter {}", this, filter);
-        checkModel();
-        Filter directoriesFilter = new IsDirectoryFilter().equalTo(true);
-        Filter withDirectoriesFilter = ((Filter) filter.clone()).or(new IsDirectoryFilter().equalTo(true));
-
-        List<VirtualFile> fileList = new ArrayList<>(fileOperationProvider.list(model, withDirectoriesFilter));
-
-        Map<Filter, List<VirtualFile>> partitionedFileList = FileUtils.groupFileListByFilters(fileList, Arrays.asList(filter, directoriesFilter));
-
-        fileList.clear();
-        fileList = partitionedFileList.get(filter);
-        List<VirtualFile> directoryList = partitionedFileList.get(directoriesFilter);
-
-        for (VirtualFile directory : directoryList) {
-            fileList.addAll(directory.find(filter));
+        List<VirtualFile> fileList;
+        try (Stream<VirtualFile> stream = walk(filter)) {
+            fileList = stream.collect(Collectors.toList());
         }
-        directoryList.clear();
         logger.info("Returns: {} entries", fileList.size());
         return fileList;
     }
 
+    @Override
+    public Stream<VirtualFile> findConcurrently(Filter filter) {
+        logger.info("Find children concurrently for {} with filter {}", this, filter);
+        checkModel();
+        return new ConcurrentFileTreeWalk(filter, getFileOperationProvider().getMaxConnections()).start(this);
+    }
+
+    @Override
+    public Stream<VirtualFile> walk(Filter filter) {
+        logger.debug("Walk children for {} with filter {}", this, filter);
+        checkModel();
+        FileTreeIterator iterator = new FileTreeIterator(this, filter);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
     @Override
     public List<VirtualFile> list() {
         logger.info("List children for {}", this);
         checkModel();
-        List<VirtualFile> fileList = new ArrayList<>(fileOperationProvider.list(model, null));
+        List<VirtualFile> fileList = new ArrayList<>(getFileOperationProvider().list(model, null));
         logger.info("Returns: {} entries", fileList.size());
         return fileList;
     }
@@ -488,16 +573,30 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public List<VirtualFile> list(Filter filter) {
         logger.info("List children for {} with filter {}", this, filter);
         checkModel();
-        List<VirtualFile> fileList = new ArrayList<>(fileOperationProvider.list(model, filter));
+        List<VirtualFile> fileList = new ArrayList<>(getFileOperationProvider().list(model, filter));
         logger.info("Returns: {} entries", fileList.size());
         return fileList;
     }
 
+    @Override
+    public Stream<VirtualFile> stream() {
+        return stream(null);
+    }
+
+    @Override
+    public Stream<VirtualFile> stream(Filter filter) {
+        logger.debug("Stream children for {} with filter {}", this, filter);
+        checkModel();
+        return getFileOperationProvider().stream(model, filter).map(VirtualFile.class::cast);
+    }
+
     @Override
     public void move(VirtualFile target) {
         logger.info("Move {} to {}", this, target);
         checkModel();
-        fileOperationProvider.move(model, (UrlFile) target);
+        context.invalidateMissingFiles(target.getUrl());
+        getFileOperationProvider().move(model, (UrlFile) target);
+        context.invalidateDescendants(this);
     }
 
     @Override
@@ -513,7 +612,8 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public Integer copy(VirtualFile targetFile) {
         logger.info("Copy {} to {}", this, targetFile);
         checkModel();
-        Integer filesCopied = fileOperationProvider.copy(this, (UrlFile) targetFile, null);
+        context.invalidateMissingFiles(targetFile.getUrl());
+        Integer filesCopied = getFileOperationProvider().copy(this, (UrlFile) targetFile, null);
         logger.debug("Returns: {}", filesCopied);
         return filesCopied;
     }
@@ -522,16 +622,27 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public Integer copy(VirtualFile targetFile, FileOperationListener listener) {
         logger.info("Copy {} to {} with FileOperationListener", this, targetFile);
         checkModel();
-        Integer filesCopied = fileOperationProvider.copy(this, (UrlFile) targetFile, listener);
+        context.invalidateMissingFiles(targetFile.getUrl());
+        Integer filesCopied = getFileOperationProvider().copy(this, (UrlFile) targetFile, listener);
         logger.debug("Returns: {}", filesCopied);
         return filesCopied;
     }
 
+    @Override
+    public CopyResult copyWithChecksum(VirtualFile targetFile, String digestAlgorithm, FileOperationListener listener) {
+        logger.info("Copy {} to {} with {} checksums", this, targetFile, digestAlgorithm);
+        checkModel();
+        context.invalidateMissingFiles(targetFile.getUrl());
+        CopyResult copyResult = getFileOperationProvider().copyWithChecksum(this, (UrlFile) targetFile, digestAlgorithm, listener);
+        logger.debug("Returns: {} files copied", copyResult.getFilesCopied());
+        return copyResult;
+    }
+
     @Override
     public Boolean compare(VirtualFile targetFile) {
         logger.info("Compare {} with {}", this, targetFile);
         checkModel();
-        Boolean result = fileOperationProvider.compare(this, (UrlFile) targetFile, null);
+        Boolean result = getFileOperationProvider().compare(this, (UrlFile) targetFile, null);
         logger.debug("Returns: equal={}", result);
         return result;
     }
@@ -540,7 +651,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
     public Boolean compare(VirtualFile targetFile, FileOperationListener listener) {
         logger.info("Compare {} with {} with FileOperationListener", this, targetFile);
         checkModel();
-        Boolean result = fileOperationProvider.compare(this, (UrlFile) targetFile, listener);
+        Boolean result = getFileOperationProvider().compare(this, (UrlFile) targetFile, listener);
         logger.debug("Returns: equal={}", result);
         return result;
     }
@@ -585,7 +696,7 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
 
     @Override
     public int compareTo(UrlFile o) {
-        return url.toString().compareTo(url.toString());
+        return url.toString().compareTo(o.url.toString());
     }
 
     public void setModel(FileModel model) {
@@ -595,17 +706,88 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         if (parent != null)
             model.setParent(parent.getModel());
         model.setUrl(url);
+        modelUpdateTime = context.nanoTime();
+        context.removeMissingFile(url);
+        context.afterModelChanged(this);
+    }
+
+    /**
+     * Sets a model read with the listing of the parent, if the file has no model yet or its model expired.
+     *
+     * @param model FileModel
+     */
+    public void setModelIfAbsent(FileModel model) {
+        if (this.model == null || isModelExpired())
+            setModel(model);
     }
 
     void updateModel() {
         logger.debug("Update model for {}", this);
-        fileOperationProvider.updateModel(model);
+        getFileOperationProvider().updateModel(model);
+        modelUpdateTime = context.nanoTime();
+        if (!model.isFileExists())
+            context.addMissingFile(url);
+    }
+
+    /**
+     * Fills a new model and replaces the current one, so that readers keep seeing the stale model until
+     * the refresh has finished.
+     */
+    void refreshExpiredModel() {
+        logger.debug("Refresh expired model for {}", this);
+        try {
+            FileModel currentModel = model;
+            if (currentModel == null)
+                return;
+            FileModel newModel = context.createFileModel();
+            newModel.setParent(currentModel.getParent());
+            newModel.setUrl(currentModel.getUrl());
+            getFileOperationProvider().updateModel(newModel);
+            newModel.copyChecksum(currentModel);
+            if (model == currentModel) {
+                model = newModel;
+                modelUpdateTime = context.nanoTime();
+                context.afterModelChanged(this);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Refreshing model for {} failed", this, e);
+        } finally {
+            modelRefreshing.set(false);
+        }
+    }
+
+    /**
+     * Allows the next access to start a refresh again, if the refresh couldn't be started.
+     */
+    void cancelModelRefresh() {
+        modelRefreshing.set(false);
+    }
+
+    /**
+     * Gets the FileOperationProvider on first use, so that no client is created for files whose metadata
+     * and content are never accessed.
+     *
+     * @return FileOperationProvider
+     */
+    protected FileOperationProvider getFileOperationProvider() {
+        FileOperationProvider provider = fileOperationProvider;
+        if (provider == null) {
+            provider = context.getFileOperationProvider(url);
+            fileOperationProvider = provider;
+        }
+        return provider;
+    }
+
+    private boolean isModelExpired() {
+        return modelTimeToLive > 0 && context.nanoTime() - modelUpdateTime >= modelTimeToLive;
     }
 
     protected void checkModel() {
         logger.debug("Check model for {}", this);
         if (model == null)
             createModel();
+        else if (isModelExpired() && modelRefreshing.compareAndSet(false, true))
+            context.refreshExpiredModel(this);
         if (model.getUrl() != null && !url.toString().equals(model.getUrl().toString())) {
             context.replaceFileUrl(url, model.getUrl());
         }
@@ -618,6 +800,11 @@ public class UrlFile implements VirtualFile, Comparable<UrlFile> {
         if (parent != null)
             model.setParent(parent.getModel());
         model.setUrl(url);
-        updateModel();
+        if (context.isMissingFile(url)) {
+            model.setFileExists(false);
+            modelUpdateTime = context.nanoTime();
+        } else
+            updateModel();
+        context.afterModelChanged(this);
     }
 }
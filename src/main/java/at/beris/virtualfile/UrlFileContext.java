@@ -9,7 +9,10 @@
 
 package at.beris.virtualfile;
 
+import at.beris.virtualfile.cache.EvictionPolicy;
+import at.beris.virtualfile.cache.ChecksumStore;
 import at.beris.virtualfile.cache.FileCache;
+import at.beris.virtualfile.cache.NegativeLookupCache;
 import at.beris.virtualfile.client.Client;
 import at.beris.virtualfile.client.ClientConfiguration;
 import at.beris.virtualfile.content.charset.CharsetDetector;
@@ -18,23 +21,23 @@ import at.beris.virtualfile.content.mime.MimeTypes;
 import at.beris.virtualfile.exception.Message;
 import at.beris.virtualfile.exception.VirtualFileException;
 import at.beris.virtualfile.protocol.Protocol;
-import at.beris.virtualfile.provider.AbstractFileOperationProvider;
 import at.beris.virtualfile.provider.ArchiveOperationProvider;
 import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.provider.FileOperationProviderRegistry;
 import at.beris.virtualfile.util.DisposableObject;
-import at.beris.virtualfile.util.ReflectionUtils;
 import at.beris.virtualfile.util.StringUtils;
 import at.beris.virtualfile.util.UrlUtils;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
-import static at.beris.virtualfile.util.CollectionUtils.removeEntriesByValueFromMap;
 import static at.beris.virtualfile.util.UrlUtils.maskedUrlString;
 
 /**
@@ -43,20 +46,25 @@ import static at.beris.virtualfile.util.UrlUtils.maskedUrlString;
 public class UrlFileContext {
     private final static org.slf4j.Logger LOGGER = LoggerFactory.getLogger(UrlFileContext.class);
 
+    private static final Set<Protocol> NEGATIVE_LOOKUP_PROTOCOLS = EnumSet.of(Protocol.SFTP, Protocol.FTP);
+
+    private static final String CHECKSUM_STORE_FILENAME = "checksums.db";
+
     private Detector contentDetector;
     private CharsetDetector charsetDetector;
 
     private Map<String, Client> siteUrlToClientMap;
-    private Map<Site, FileOperationProvider> siteToFileOperationProviderMap;
+    Map<Site, FileOperationProvider> siteToFileOperationProviderMap;
     private FileCache fileCache;
-    private Map<UrlFile, UrlFile> fileToParentFileMap;
+    private ExecutorService modelRefreshExecutor;
+    private NegativeLookupCache negativeLookupCache;
+    private ChecksumStore checksumStore;
     private ArchiveOperationProvider archiveOperationProvider;
 
     private Configuration configuration;
     private KeyStoreManager keyStoreManager;
     private SiteManager siteManager;
     private SiteManager temporarySiteManager;
-    private Map<Protocol, Class> fileOperationProviderClassMap;
 
     private UrlFileContext() {
     }
@@ -66,43 +74,25 @@ public class UrlFileContext {
         configuration.setCallbackHandler(new CustomConfigurationCallbackHandler());
         this.keyStoreManager = keyStoreManager;
 
-        fileOperationProviderClassMap = createFileOperationProviderClassMap();
-
         this.siteUrlToClientMap = new HashMap<>();
-        this.siteToFileOperationProviderMap = new HashMap<>();
-        this.fileToParentFileMap = new HashMap();
+        this.siteToFileOperationProviderMap = new ConcurrentHashMap<>();
 
         this.siteManager = siteManager;
         this.temporarySiteManager = SiteManager.create(configuration, keyStoreManager);
 
-        fileCache = new FileCache(configuration.getFileCacheSize());
+        fileCache = new FileCache(configuration.getFileCacheSize(), configuration.getFileCacheEvictionPolicy());
+        setFileCacheMemoryLimit(configuration.getFileCacheMemoryLimit());
         fileCache.setCallbackHandler(new CustomFileCacheCallbackHandler());
-    }
 
-    private Map<Protocol, Class> createFileOperationProviderClassMap() {
-        Map<Protocol, Class> map = new HashMap<>();
-        try {
-            List<Class> fileOperationProviderClasses = ReflectionUtils.findSubClassesOfClassInPackage(AbstractFileOperationProvider.class);
-            for (Class fileOperationProviderClass : fileOperationProviderClasses) {
-                String simpleClassName = fileOperationProviderClass.getSimpleName();
-                String firstWord = StringUtils.EMPTY_STRING;
-
-                String[] words = StringUtils.getWordsFromCamelCaseString(simpleClassName);
-                if (words.length > 0)
-                    firstWord = words[0];
-
-                String protocolString = firstWord.equals("Local") ? "FILE" : firstWord.toUpperCase();
-                Protocol protocol = Protocol.valueOf(protocolString);
-                map.put(protocol, fileOperationProviderClass);
-            }
-            return map;
-        } catch (IOException | ClassNotFoundException e) {
-            throw new VirtualFileException(e);
-        }
+        negativeLookupCache = new NegativeLookupCache(configuration.getNegativeLookupCacheSize(),
+                configuration.getNegativeLookupCacheTimeToLive());
     }
 
     /**
      * Creates a UrlFile instance for the given url.
+     * <p>
+     * The url is normalized once. A cached file is found with a single lookup in the file cache. Missing
+     * ancestors are created as well. Files are shared between concurrent callers.
      *
      * @param url URL
      * @return New File Instance
@@ -110,39 +100,12 @@ public class UrlFileContext {
     public UrlFile resolveFile(URL url) {
         LOGGER.debug("resolveFile (url: {}) ", maskedUrlString(url));
         URL normalizedUrl = UrlUtils.normalizeUrl(url);
-        if ("".equals(normalizedUrl.getPath()))
-            normalizedUrl = UrlUtils.newUrl(normalizedUrl.toString() + "/");
-
-        String fullPath = normalizedUrl.getPath();
-        UrlFile parentFile = null;
-        UrlFile file = null;
-        StringBuilder stringBuilder = new StringBuilder();
-
-        String[] pathParts = "/".equals(fullPath) ? new String[]{"/"} : fullPath.split("/");
-        for (String pathPart : pathParts) {
-            stringBuilder.append(pathPart);
-            if (stringBuilder.length() < fullPath.length())
-                stringBuilder.append('/');
-
-            String pathUrlString = SiteManager.getSiteUrlString(normalizedUrl) + stringBuilder.toString();
-            try {
-                URL pathUrl = UrlUtils.normalizeUrl(new URL(pathUrlString));
-                file = fileCache.get(pathUrl.toString());
-                if (file == null) {
-                    file = createFile(pathUrl);
-                    fileCache.put(pathUrl.toString(), file);
-                }
-            } catch (MalformedURLException e) {
-                throw new VirtualFileException(e);
-            }
-
-            if (parentFile != null) {
-                fileToParentFileMap.put(file, parentFile);
-            }
+        String path = normalizedUrl.getPath();
+        if ("".equals(path))
+            path = "/";
 
-            parentFile = file;
-        }
-        return file;
+        URL fileUrl = UrlUtils.newUrl(SiteManager.getSiteUrlString(normalizedUrl) + path);
+        return fileCache.getOrCreate(fileUrl, this::createFile);
     }
 
     public UrlFile resolveFile(Site site, String path, boolean isDirectory) {
@@ -166,7 +129,7 @@ public class UrlFileContext {
 
             URL fileUrl = UrlUtils.normalizeUrl(new URL(siteManager.getSiteUrlString(site) + filePath));
 
-            return createFileInstance(fileUrl);
+            return new UrlFile(fileUrl, this);
         } catch (MalformedURLException e) {
             throw new VirtualFileException(e);
         }
@@ -179,12 +142,11 @@ public class UrlFileContext {
      * @param newUrl New URL
      */
     public void replaceFileUrl(URL oldUrl, URL newUrl) {
-        UrlFile file = fileCache.get(oldUrl.toString());
-        removeEntriesByValueFromMap(fileToParentFileMap, file);
-        fileToParentFileMap.remove(file.getUrl().toString());
-        fileCache.remove(oldUrl.toString());
+        UrlFile file = fileCache.get(oldUrl);
+        fileCache.removeTree(oldUrl, true);
         file.setUrl(newUrl);
-        fileCache.put(newUrl.toString(), file);
+        fileCache.put(newUrl, file);
+        negativeLookupCache.invalidate(newUrl.toString());
     }
 
     /**
@@ -194,17 +156,41 @@ public class UrlFileContext {
      */
     public void dispose(UrlFile file) {
         LOGGER.debug("dispose (file : {})", file);
-        removeEntriesByValueFromMap(fileToParentFileMap, file);
-        fileCache.remove(file.getUrl().toString());
+        fileCache.remove(file.getUrl());
         file.dispose();
     }
 
+    /**
+     * Removes the cached descendants of the file, because they became invalid, e.g. after the file was deleted
+     * or renamed. The descendants aren't disposed, because they may still be referenced.
+     *
+     * @param file UrlFile
+     */
+    void invalidateDescendants(UrlFile file) {
+        fileCache.removeTree(file.getUrl(), false);
+    }
+
     /**
      * Frees all resources allocated by the file content.
      */
     public void dispose() {
-        fileToParentFileMap.clear();
+        synchronized (this) {
+            if (modelRefreshExecutor != null) {
+                modelRefreshExecutor.shutdownNow();
+                modelRefreshExecutor = null;
+            }
+            if (checksumStore != null) {
+                checksumStore.close();
+                checksumStore = null;
+            }
+        }
         fileCache.clear();
+        negativeLookupCache.clear();
+        for (FileOperationProvider fileOperationProvider : siteToFileOperationProviderMap.values()) {
+            Client client = (Client) fileOperationProvider.getClient();
+            if (client != null)
+                client.dispose();
+        }
         siteToFileOperationProviderMap.clear();
         temporarySiteManager.dispose();
         disposeMap(siteUrlToClientMap);
@@ -217,21 +203,14 @@ public class UrlFileContext {
      * @return Parent file
      */
     public UrlFile getParentFile(UrlFile file) {
-        UrlFile parentFile = fileToParentFileMap.get(file);
-
-        if (parentFile == null) {
-            URL parentUrl = UrlUtils.getParentUrl(file.getUrl());
-            if (parentUrl == null)
-                return null;
-
-            parentFile = fileCache.get(parentUrl.toString());
-            if (parentFile == null) {
-                parentFile = createFile(parentUrl);
-                fileCache.put(parentUrl.toString(), parentFile);
-            }
-        }
+        UrlFile parentFile = fileCache.getParent(file.getUrl());
+        if (parentFile != null)
+            return parentFile;
 
-        return fileToParentFileMap.get(file);
+        URL parentUrl = UrlUtils.getParentUrl(file.getUrl());
+        if (parentUrl == null)
+            return null;
+        return resolveFile(parentUrl);
     }
 
     /**
@@ -256,7 +235,10 @@ public class UrlFileContext {
         if (site == null)
             site = temporarySiteManager.getSiteForUrl(url);
 
-        return siteToFileOperationProviderMap.get(site);
+        FileOperationProvider fileOperationProvider = site != null ? siteToFileOperationProviderMap.get(site) : null;
+        if (fileOperationProvider == null)
+            fileOperationProvider = initFileOperationProvider(url);
+        return fileOperationProvider;
     }
 
     /**
@@ -268,6 +250,19 @@ public class UrlFileContext {
         return new FileModel();
     }
 
+    /**
+     * Gets the persistent checksum cache. It is created on first use, so that its file is only opened
+     * when checksums are calculated.
+     *
+     * @return ChecksumStore or null if the checksum cache is disabled
+     */
+    public synchronized ChecksumStore getChecksumStore() {
+        if (checksumStore == null && configuration.getChecksumCacheSize() > 0)
+            checksumStore = new ChecksumStore(Paths.get(configuration.getHomeDirectory(), CHECKSUM_STORE_FILENAME),
+                    configuration.getChecksumCacheSize());
+        return checksumStore;
+    }
+
     public VirtualArchiveEntry createArchiveEntry() {
         return new FileArchiveEntry();
     }
@@ -312,116 +307,173 @@ public class UrlFileContext {
         if (protocol == Protocol.FILE)
             return null;
 
-        Class fileOperationProviderClass = fileOperationProviderClassMap.get(protocol);
-        Class clientClass = getClientClass(fileOperationProviderClass);
-        Constructor clientClassConstructor = getClientConstructor(clientClass);
-        Class clientConfigurationClass = getClientConfigurationClass(clientClassConstructor);
+        ClientConfiguration clientConfiguration = createClientConfiguration(url);
+        return FileOperationProviderRegistry.createClient(protocol, clientConfiguration);
+    }
 
-        try {
-            ClientConfiguration clientConfiguration = createClientConfiguration(url, clientConfigurationClass);
+    /**
+     * Checks if the file was recently looked up and didn't exist.
+     *
+     * @param url URL
+     * @return True if the file is known not to exist
+     */
+    boolean isMissingFile(URL url) {
+        return NEGATIVE_LOOKUP_PROTOCOLS.contains(UrlUtils.getProtocol(url)) && negativeLookupCache.contains(url.toString());
+    }
 
-            return (Client) clientClassConstructor.newInstance(clientConfiguration);
-        } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
-            throw new VirtualFileException(e);
-        }
+    /**
+     * Weighs the cached file again after its model was set or replaced.
+     *
+     * @param file File
+     */
+    void afterModelChanged(UrlFile file) {
+        fileCache.updateWeight(file.getUrl(), file);
     }
 
-    ClientConfiguration createClientConfiguration(URL url, Class clientConfigurationClass) {
-        try {
-            Protocol protocol = UrlUtils.getProtocol(url);
-            ClientConfiguration clientConfiguration = (ClientConfiguration) clientConfigurationClass.newInstance();
-            clientConfiguration.fillFromClientConfiguration(configuration.getClientConfiguration(protocol));
-            Site site = siteManager.getSiteForUrlString(url);
-            if (site != null) {
-                clientConfiguration.fillFromSite(site);
-            }
-            clientConfiguration.fillFromUrl(url);
-            return clientConfiguration;
-        } catch (InstantiationException | IllegalAccessException e) {
-            throw new VirtualFileException(e);
-        }
+    /**
+     * Remembers that the file doesn't exist. Only remote protocols with expensive lookups are remembered.
+     *
+     * @param url URL
+     */
+    void addMissingFile(URL url) {
+        if (NEGATIVE_LOOKUP_PROTOCOLS.contains(UrlUtils.getProtocol(url)))
+            negativeLookupCache.put(url.toString());
     }
 
-    private UrlFile createFile(URL url) {
-        LOGGER.debug("createFile (url : {})", maskedUrlString(url));
+    /**
+     * Forgets that the file didn't exist, because it was found.
+     *
+     * @param url URL
+     */
+    void removeMissingFile(URL url) {
+        if (!negativeLookupCache.isEmpty())
+            negativeLookupCache.remove(url.toString());
+    }
 
-        Protocol protocol = UrlUtils.getProtocol(url);
-        if (fileOperationProviderClassMap.get(protocol) == null)
-            throw new VirtualFileException(Message.PROTOCOL_NOT_CONFIGURED(protocol));
+    /**
+     * Forgets that the file and its ancestors didn't exist, because the file is created.
+     *
+     * @param url URL
+     */
+    void removeMissingFileWithAncestors(URL url) {
+        if (!negativeLookupCache.isEmpty())
+            negativeLookupCache.removeWithAncestors(url.toString());
+    }
 
+    /**
+     * Forgets that the file and its ancestors and descendants didn't exist, because a tree is moved or copied
+     * to the url.
+     *
+     * @param url URL
+     */
+    void invalidateMissingFiles(URL url) {
+        if (!negativeLookupCache.isEmpty())
+            negativeLookupCache.invalidate(url.toString());
+    }
+
+    /**
+     * Gets the time to live of the cached metadata for files with the protocol of the url.
+     *
+     * @param url URL
+     * @return Time to live in seconds or 0 if the metadata never expires
+     */
+    int getFileModelTimeToLive(URL url) {
+        ClientConfiguration clientConfiguration = configuration.getClientConfiguration(UrlUtils.getProtocol(url));
+        return clientConfiguration != null ? clientConfiguration.getFileModelTimeToLive() : 0;
+    }
+
+    /**
+     * Refreshes the expired model of the file in the background. Refreshes are executed one after another,
+     * so that they don't compete with each other for the clients.
+     *
+     * @param file UrlFile
+     */
+    void refreshExpiredModel(UrlFile file) {
         try {
-            initFileOperationProvider(url);
-            return createFileInstance(url);
-        } catch (InstantiationException | IllegalAccessException e) {
-            throw new VirtualFileException(e);
+            getModelRefreshExecutor().execute(file::refreshExpiredModel);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Refresh of expired model for {} rejected", file);
+            file.cancelModelRefresh();
         }
     }
 
-    private UrlFile createFileInstance(URL url) {
-        LOGGER.debug("createFileInstance (url: {})", maskedUrlString(url));
+    /**
+     * Gets the time the age of the file models is measured with.
+     *
+     * @return Current value of the monotonic clock in nanoseconds
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
 
-        try {
-            Constructor constructor = getUrlFileConstructor();
-            return (UrlFile) constructor.newInstance(url, this);
-        } catch (ReflectiveOperationException e) {
-            throw new VirtualFileException(e);
+    private synchronized ExecutorService getModelRefreshExecutor() {
+        if (modelRefreshExecutor == null) {
+            modelRefreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "VirtualFile-ModelRefresh");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return modelRefreshExecutor;
     }
 
-    private FileOperationProvider createFileOperationProviderInstance(Class instanceClass, Client client) throws InstantiationException, IllegalAccessException {
-        LOGGER.debug("createFileOperationProviderInstance (instanceClass: {}, client: {})", instanceClass, client);
-        try {
-            Class clientClass = client != null ? client.getClass() : Client.class;
-            Constructor constructor = instanceClass.getConstructor(UrlFileContext.class, clientClass);
-            return (FileOperationProvider) constructor.newInstance(this, client);
-        } catch (ReflectiveOperationException e) {
-            throw new VirtualFileException(e);
+    ClientConfiguration createClientConfiguration(URL url) {
+        Protocol protocol = UrlUtils.getProtocol(url);
+        ClientConfiguration clientConfiguration = FileOperationProviderRegistry.createClientConfiguration(protocol);
+        clientConfiguration.fillFromClientConfiguration(configuration.getClientConfiguration(protocol));
+        Site site = siteManager.getSiteForUrlString(url);
+        if (site != null) {
+            clientConfiguration.fillFromSite(site);
         }
+        clientConfiguration.fillFromUrl(url);
+        return clientConfiguration;
     }
 
-    private void initFileOperationProvider(URL url) throws InstantiationException, IllegalAccessException {
+    private UrlFile createFile(URL url) {
+        LOGGER.debug("createFile (url : {})", maskedUrlString(url));
+
+        Protocol protocol = UrlUtils.getProtocol(url);
+        if (!FileOperationProviderRegistry.isRegistered(protocol))
+            throw new VirtualFileException(Message.PROTOCOL_NOT_CONFIGURED(protocol));
+
+        return new UrlFile(url, this);
+    }
+
+    private synchronized FileOperationProvider initFileOperationProvider(URL url) {
         LOGGER.debug("Initialize FileOperationProvider for URL {}", maskedUrlString(url));
         Protocol protocol = UrlUtils.getProtocol(url);
-        FileOperationProvider fileOperationProvider = getFileOperationProvider(url);
-        if (fileOperationProvider == null) {
-            Client client = createClientInstance(UrlUtils.newUrl(url.toString()));
-            Class instanceClass = fileOperationProviderClassMap.get(protocol);
-            fileOperationProvider = createFileOperationProviderInstance(instanceClass, client);
 
-            Site site = siteManager.getSiteForUrlString(url);
+        Site site = siteManager.getSiteForUrlString(url);
+        if (site == null) {
+            site = temporarySiteManager.getSiteForUrlString(url);
             if (site == null) {
-                site = temporarySiteManager.getSiteForUrlString(url);
-                if (site == null) {
-                    site = Site.create();
-                    site.fillFromUrl(url);
-                    temporarySiteManager.addSite(site);
-                }
+                site = Site.create();
+                site.fillFromUrl(url);
+                temporarySiteManager.addSite(site);
             }
+        }
 
+        FileOperationProvider fileOperationProvider = siteToFileOperationProviderMap.get(site);
+        if (fileOperationProvider == null) {
+            Client client = createClientInstance(UrlUtils.newUrl(url.toString()));
+            fileOperationProvider = FileOperationProviderRegistry.createFileOperationProvider(protocol, this, client);
             siteToFileOperationProviderMap.put(site, fileOperationProvider);
         }
+        return fileOperationProvider;
     }
 
-    private void initFileOperationProvider(Site site) {
+    private synchronized void initFileOperationProvider(Site site) {
         LOGGER.debug("iInitialize FileOperationProvider for site {})", site);
         Protocol protocol = site.getProtocol();
 
         FileOperationProvider fileOperationProvider = siteToFileOperationProviderMap.get(site);
         if (fileOperationProvider == null) {
-            Class fileOperationProviderClass = fileOperationProviderClassMap.get(protocol);
-            Class clientClass = getClientClass(fileOperationProviderClass);
-            Constructor clientClassConstructor = getClientConstructor(clientClass);
-            Class clientConfigurationClass = getClientConfigurationClass(clientClassConstructor);
-
-            try {
-                ClientConfiguration clientConfiguration = (ClientConfiguration) clientConfigurationClass.newInstance();
+            ClientConfiguration clientConfiguration = FileOperationProviderRegistry.createClientConfiguration(protocol);
+            if (clientConfiguration != null)
                 clientConfiguration.fillFromSite(site);
-                Client client = (Client) clientClassConstructor.newInstance(clientConfiguration);
-                fileOperationProvider = createFileOperationProviderInstance(fileOperationProviderClass, client);
-                siteToFileOperationProviderMap.put(site, fileOperationProvider);
-            } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
-                throw new VirtualFileException(e);
-            }
+            Client client = FileOperationProviderRegistry.createClient(protocol, clientConfiguration);
+            fileOperationProvider = FileOperationProviderRegistry.createFileOperationProvider(protocol, this, client);
+            siteToFileOperationProviderMap.put(site, fileOperationProvider);
         }
 
     }
@@ -435,41 +487,52 @@ public class UrlFileContext {
         }
     }
 
-    private Constructor getUrlFileConstructor() {
-        Class[] requiredParameterTypes = {URL.class, UrlFileContext.class};
+    private class CustomFileCacheCallbackHandler implements FileCache.CallbackHandler {
 
-        for (Constructor<?> constructor : UrlFile.class.getDeclaredConstructors()) {
-            if (Arrays.equals(constructor.getParameterTypes(), requiredParameterTypes))
-                return constructor;
+        @Override
+        public void afterEntryPurged(UrlFile file) {
+            dispose(file);
         }
-        throw new VirtualFileException(Message.CONSTRUCTOR_NOT_FOUND(UrlFile.class.getName()));
     }
 
-    private Class getClientClass(Class fileOperationProviderClass) {
-        return fileOperationProviderClass.getConstructors()[0].getParameterTypes()[1];
+    /**
+     * The files are only weighed if the memory of the file cache is limited.
+     */
+    private void setFileCacheMemoryLimit(long memoryLimit) {
+        if (memoryLimit > 0) {
+            fileCache.setWeigher(new UrlFileWeigher());
+            fileCache.setMaxWeight(memoryLimit);
+        } else {
+            fileCache.setMaxWeight(0);
+            fileCache.setWeigher(null);
+        }
     }
 
-    private Constructor getClientConstructor(Class clientClass) {
-        return clientClass.getConstructors()[0];
-    }
+    private class CustomConfigurationCallbackHandler implements Configuration.CallbackHandler {
 
-    private Class getClientConfigurationClass(Constructor clientClassConstructor) {
-        return clientClassConstructor.getParameterTypes()[0];
-    }
+        @Override
+        public void changedFileCacheSize(int newSize) {
+            fileCache.setMaxSize(newSize);
+        }
 
-    private class CustomFileCacheCallbackHandler implements FileCache.CallbackHandler {
+        @Override
+        public void changedFileCacheMemoryLimit(long newMemoryLimit) {
+            setFileCacheMemoryLimit(newMemoryLimit);
+        }
 
         @Override
-        public void afterEntryPurged(UrlFile file) {
-            dispose(file);
+        public void changedFileCacheEvictionPolicy(EvictionPolicy newEvictionPolicy) {
+            fileCache.setEvictionPolicy(newEvictionPolicy);
         }
-    }
 
-    private class CustomConfigurationCallbackHandler implements Configuration.CallbackHandler {
+        @Override
+        public void changedNegativeLookupCacheSize(int newSize) {
+            negativeLookupCache.setMaxSize(newSize);
+        }
 
         @Override
-        public void changedFileCacheSize(int newSize) {
-            fileCache.setMaxSize(newSize);
+        public void changedNegativeLookupCacheTimeToLive(int newTimeToLive) {
+            negativeLookupCache.setTimeToLive(newTimeToLive);
         }
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile;
+
+import at.beris.virtualfile.cache.FileCache;
+
+import java.net.URL;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.FileTime;
+import java.security.Principal;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Estimates the heap retained by a cached UrlFile including its FileModel.
+ * The sizes assume a 64-bit JVM with compressed references. The model is never loaded for weighing.
+ * A file is weighed when it is cached and after its model was set, not on every access.
+ */
+final class UrlFileWeigher implements FileCache.Weigher {
+    private static final int CACHE_ENTRY_SIZE = 64;
+    private static final int URL_FILE_SIZE = 32;
+    private static final int URL_SIZE = 80;
+    private static final int FILE_MODEL_SIZE = 64;
+    private static final int FILE_TIME_SIZE = 40;
+    private static final int COLLECTION_SIZE = 64;
+    private static final int COLLECTION_ELEMENT_SIZE = 32;
+    private static final int ACL_ENTRY_SIZE = 48;
+    private static final int PRINCIPAL_SIZE = 24;
+    private static final int STRING_SIZE = 40;
+
+    @Override
+    public long weigh(UrlFile file) {
+        long weight = CACHE_ENTRY_SIZE + URL_FILE_SIZE;
+        if (file == null)
+            return weight;
+        weight += weigh(file.url);
+        FileModel model = file.model;
+        if (model != null)
+            weight += weigh(model, file.url);
+        return weight;
+    }
+
+    private long weigh(FileModel model, URL fileUrl) {
+        long weight = FILE_MODEL_SIZE;
+        if (model.getUrl() != fileUrl)
+            weight += weigh(model.getUrl());
+        if (model.getLinkTarget() != null)
+            weight += weigh(model.getLinkTarget());
+        weight += weigh(model.getLastModifiedTime()) + weigh(model.getLastAccessTime()) + weigh(model.getCreationTime());
+        weight += weigh(model.getOwner()) + weigh(model.getGroup());
+
+        weight += COLLECTION_SIZE;
+        Set<?> attributes = model.getAttributes();
+        if (attributes != null)
+            weight += (long) attributes.size() * COLLECTION_ELEMENT_SIZE;
+
+        weight += COLLECTION_SIZE;
+        List<AclEntry> acl = model.getAcl();
+        if (acl != null) {
+            for (AclEntry aclEntry : acl) {
+                weight += COLLECTION_ELEMENT_SIZE + ACL_ENTRY_SIZE + weigh(aclEntry.principal());
+                weight += (long) (aclEntry.permissions().size() + aclEntry.flags().size()) * COLLECTION_ELEMENT_SIZE;
+            }
+        }
+        return weight;
+    }
+
+    private long weigh(URL url) {
+        if (url == null)
+            return 0;
+        // URL keeps protocol, host, file, path, authority and the external form as separate strings
+        String externalForm = url.toString();
+        return URL_SIZE + 2 * weigh(externalForm) + weigh(url.getPath());
+    }
+
+    private long weigh(FileTime fileTime) {
+        return fileTime != null ? FILE_TIME_SIZE : 0;
+    }
+
+    private long weigh(Principal principal) {
+        return principal != null ? PRINCIPAL_SIZE + weigh(principal.getName()) : 0;
+    }
+
+    private long weigh(String string) {
+        return string != null ? STRING_SIZE + 2L * string.length() : 0;
+    }
+}
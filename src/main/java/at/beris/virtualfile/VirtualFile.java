@@ -11,6 +11,7 @@ package at.beris.virtualfile;
 
 import at.beris.virtualfile.attribute.FileAttribute;
 import at.beris.virtualfile.filter.Filter;
+import at.beris.virtualfile.provider.operation.CopyResult;
 import at.beris.virtualfile.provider.operation.FileOperationListener;
 import at.beris.virtualfile.util.DisposableObject;
 
@@ -24,6 +25,7 @@ import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Public API for a virtual file.
@@ -59,6 +61,30 @@ public interface VirtualFile extends DisposableObject {
      */
     Byte[] checksum();
 
+    /**
+     * Return the checksum calculated by the server without transferring the content.
+     *
+     * @return checksum or null if the server can't calculate it
+     */
+    Byte[] remoteChecksum();
+
+    /**
+     * Calculate and return the checksum with a digest algorithm, e.g. SHA-256, MD5 or CRC32.
+     *
+     * @param algorithm Name of a MessageDigest algorithm or of an algorithm registered in ChecksumUtils
+     * @return checksum
+     */
+    byte[] checksum(String algorithm);
+
+    /**
+     * Calculate and return the tree checksum. The file is split into chunks of ChecksumUtils.TREE_CHUNK_SIZE bytes
+     * and the tree checksum is the digest of their digests. The chunks of a local file are hashed in parallel.
+     *
+     * @param algorithm Name of a MessageDigest algorithm or of an algorithm registered in ChecksumUtils
+     * @return tree checksum
+     */
+    byte[] treeChecksum(String algorithm);
+
     /**
      * Copy this file to a target.
      *
@@ -77,6 +103,17 @@ public interface VirtualFile extends DisposableObject {
      */
     Integer copy(VirtualFile targetFile, FileOperationListener listener);
 
+    /**
+     * Copy this file to a target and calculate the checksums of the copied files while they are transferred.
+     * The checksum of a target file is cached, so a later call of checksum() doesn't read it again.
+     *
+     * @param targetFile
+     * @param digestAlgorithm Name of the MessageDigest algorithm, e.g. SHA1 or SHA-256
+     * @param listener
+     * @return CopyResult with the number of copied files and their checksums
+     */
+    CopyResult copyWithChecksum(VirtualFile targetFile, String digestAlgorithm, FileOperationListener listener);
+
     /**
      * Compare this file to a targetfile.
      *
@@ -130,6 +167,25 @@ public interface VirtualFile extends DisposableObject {
      */
     List<VirtualFile> find(Filter filter);
 
+    /**
+     * Finds files recursively matching a filter. Subdirectories are listed concurrently, up to the number of
+     * connections of the site, and the files are returned while they are found in no particular order.
+     * The stream must be closed.
+     *
+     * @param filter A filter
+     * @return A stream of files
+     */
+    Stream<VirtualFile> findConcurrently(Filter filter);
+
+    /**
+     * Finds files recursively matching a filter. The directories are listed one after another while the stream
+     * is consumed, so the files of the tree aren't kept in memory. The stream must be closed.
+     *
+     * @param filter A filter
+     * @return A stream of files
+     */
+    Stream<VirtualFile> walk(Filter filter);
+
     /**
      * Get ACL List. (Only returns something for the Windows operating system)
      *
@@ -179,6 +235,14 @@ public interface VirtualFile extends DisposableObject {
      */
     InputStream getInputStream();
 
+    /**
+     * Get InputStream for this file starting at the offset.
+     *
+     * @param offset Number of bytes to skip
+     * @return InputStream
+     */
+    InputStream getInputStream(long offset);
+
     /**
      * Return the time when this file was last accessed.
      *
@@ -214,6 +278,14 @@ public interface VirtualFile extends DisposableObject {
      */
     OutputStream getOutputStream();
 
+    /**
+     * Get OutputStream for this file.
+     *
+     * @param append Append to the existing content instead of replacing it
+     * @return OutputStream
+     */
+    OutputStream getOutputStream(boolean append);
+
     /**
      * Get the unix owner. (Only returns something on unixlike operationsystems)
      *
@@ -320,6 +392,23 @@ public interface VirtualFile extends DisposableObject {
      */
     List<VirtualFile> list(Filter filter);
 
+    /**
+     * Lists contained files non-recursively. The files are read while the stream is consumed,
+     * so the stream must be closed.
+     *
+     * @return A stream of files
+     */
+    Stream<VirtualFile> stream();
+
+    /**
+     * Lists contained files non-recursively filtered by a filter. The files are read while the stream is consumed,
+     * so the stream must be closed.
+     *
+     * @param filter Filter
+     * @return A stream of files
+     */
+    Stream<VirtualFile> stream(Filter filter);
+
     void move(VirtualFile target);
 
     /**
@@ -0,0 +1,86 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+/**
+ * Doubly linked list of cache entries. The head is the eldest entry, the tail the most recently used one.
+ * Not thread-safe.
+ */
+final class AccessOrderDeque {
+    private CacheEntry head;
+    private CacheEntry tail;
+    private int size;
+
+    void addLast(CacheEntry entry) {
+        entry.previous = tail;
+        entry.next = null;
+        if (tail == null)
+            head = entry;
+        else
+            tail.next = entry;
+        tail = entry;
+        size++;
+    }
+
+    void remove(CacheEntry entry) {
+        if (entry.previous == null)
+            head = entry.next;
+        else
+            entry.previous.next = entry.next;
+
+        if (entry.next == null)
+            tail = entry.previous;
+        else
+            entry.next.previous = entry.previous;
+
+        entry.previous = null;
+        entry.next = null;
+        size--;
+    }
+
+    void moveToBack(CacheEntry entry) {
+        if (entry != tail) {
+            remove(entry);
+            addLast(entry);
+        }
+    }
+
+    CacheEntry peekFirst() {
+        return head;
+    }
+
+    CacheEntry pollFirst() {
+        CacheEntry entry = head;
+        if (entry != null)
+            remove(entry);
+        return entry;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        CacheEntry entry = head;
+        while (entry != null) {
+            CacheEntry next = entry.next;
+            entry.previous = null;
+            entry.next = null;
+            entry = next;
+        }
+        head = null;
+        tail = null;
+        size = 0;
+    }
+}
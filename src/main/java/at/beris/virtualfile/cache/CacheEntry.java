@@ -0,0 +1,116 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+import at.beris.virtualfile.UrlFile;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node of the path trie of the FileCache. A node represents one path segment, directory segments end with a
+ * slash. Only nodes holding a value take part in eviction. Nodes without a value are kept as long as they
+ * have children.
+ * <p>
+ * The children and the value may be read without locking. All modifications as well as the links and the
+ * queue are guarded by the eviction lock of the cache.
+ */
+final class CacheEntry {
+    static final int QUEUE_NONE = 0;
+    static final int QUEUE_WINDOW = 1;
+    static final int QUEUE_PROBATION = 2;
+    static final int QUEUE_PROTECTED = 3;
+
+    private final String segment;
+    private final CacheEntry parent;
+    private final int pathHash;
+    private volatile Map<String, CacheEntry> children;
+    private volatile UrlFile value;
+
+    CacheEntry previous;
+    CacheEntry next;
+    int queue;
+    long weight;
+
+    CacheEntry(CacheEntry parent, String segment) {
+        this.parent = parent;
+        this.segment = segment;
+        this.pathHash = parent == null ? segment.hashCode() : 31 * parent.pathHash + segment.hashCode();
+        this.queue = QUEUE_NONE;
+    }
+
+    String getSegment() {
+        return segment;
+    }
+
+    CacheEntry getParent() {
+        return parent;
+    }
+
+    /**
+     * Hash of the whole path. Unlike the node itself it survives eviction, so it can be used to keep
+     * the access history of a path.
+     *
+     * @return Hash
+     */
+    int getPathHash() {
+        return pathHash;
+    }
+
+    UrlFile getValue() {
+        return value;
+    }
+
+    void setValue(UrlFile value) {
+        this.value = value;
+    }
+
+    boolean isLinked() {
+        return queue != QUEUE_NONE;
+    }
+
+    CacheEntry getChild(String segment) {
+        Map<String, CacheEntry> currentChildren = children;
+        return currentChildren != null ? currentChildren.get(segment) : null;
+    }
+
+    CacheEntry addChild(String segment) {
+        if (children == null)
+            children = new ConcurrentHashMap<>(4);
+        CacheEntry child = children.get(segment);
+        if (child == null) {
+            String internedSegment = segment.intern();
+            child = new CacheEntry(this, internedSegment);
+            children.put(internedSegment, child);
+        }
+        return child;
+    }
+
+    void removeChild(CacheEntry child) {
+        Map<String, CacheEntry> currentChildren = children;
+        if (currentChildren != null) {
+            currentChildren.remove(child.segment, child);
+            if (currentChildren.isEmpty())
+                children = null;
+        }
+    }
+
+    boolean hasChildren() {
+        Map<String, CacheEntry> currentChildren = children;
+        return currentChildren != null && !currentChildren.isEmpty();
+    }
+
+    Collection<CacheEntry> getChildren() {
+        Map<String, CacheEntry> currentChildren = children;
+        return currentChildren != null ? currentChildren.values() : Collections.<CacheEntry>emptyList();
+    }
+}
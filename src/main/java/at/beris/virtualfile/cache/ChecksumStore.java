@@ -0,0 +1,383 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+import at.beris.virtualfile.util.ChecksumUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of SHA-1 checksums, so that files which didn't change aren't read again. An entry is
+ * found by the site and path of the file and is only valid for the size and modification time it was
+ * stored with.
+ * <p>
+ * The entries are kept in a memory mapped hash table with fixed size slots. Each slot holds the SHA-1 of
+ * the file URL without user info, the size, the modification time and the checksum. The table is doubled
+ * in place when it is three quarters full until it reaches the maximum size. Then a new entry replaces an
+ * old one, so neither the file nor the heap grows beyond the maximum.
+ * <p>
+ * Several processes may share the file. Reads hold a shared lock and writes an exclusive lock on it, and a
+ * table grown by another process is mapped again. File locks are held by the whole JVM, so stores of the same
+ * file in one JVM take turns before they lock it.
+ */
+public class ChecksumStore {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ChecksumStore.class);
+
+    private static final int MAGIC = 0x56464353;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int KEY_LENGTH = 20;
+    private static final int CHECKSUM_LENGTH = 20;
+    private static final int SLOT_SIZE = KEY_LENGTH + Long.BYTES + Long.BYTES + CHECKSUM_LENGTH;
+    private static final int MIN_SLOT_COUNT = 1024;
+    private static final int MAX_SLOT_COUNT = 1 << 24;
+    private static final int MAX_PROBES = 16;
+
+    private static final Map<Path, Object> FILE_LOCK_MONITORS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final Object fileLockMonitor;
+    private final int maxSlotCount;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int slotCount;
+
+    /**
+     * @param path       File containing the checksums
+     * @param maxEntries Maximum number of entries
+     */
+    public ChecksumStore(Path path, int maxEntries) {
+        this.path = path;
+        this.fileLockMonitor = FILE_LOCK_MONITORS.computeIfAbsent(path.toAbsolutePath().normalize(), monitorPath -> new Object());
+        this.maxSlotCount = Math.max(MIN_SLOT_COUNT, Math.min(MAX_SLOT_COUNT, Integer.highestOneBit(Math.max(1, maxEntries / 3 * 4)) << 1));
+    }
+
+    /**
+     * Gets the checksum of a file that didn't change since its checksum was stored.
+     *
+     * @param url              URL of the file
+     * @param size             Current size
+     * @param lastModifiedTime Current modification time
+     * @return Checksum or null if there is no valid checksum
+     */
+    public synchronized Byte[] get(URL url, long size, FileTime lastModifiedTime) {
+        if (lastModifiedTime == null)
+            return null;
+        open();
+
+        try {
+            synchronized (fileLockMonitor) {
+                FileLock fileLock = channel.lock(0, Long.MAX_VALUE, true);
+                try {
+                    remapIfResized();
+                    byte[] key = keyOf(url);
+                    int slot = findSlot(table, slotCount, key);
+                    if (slot < 0 || isEmpty(table, slot))
+                        return null;
+
+                    int position = positionOf(slot) + KEY_LENGTH;
+                    if (table.getLong(position) != size || table.getLong(position + Long.BYTES) != lastModifiedTime.toMillis())
+                        return null;
+                    Byte[] checksum = new Byte[CHECKSUM_LENGTH];
+                    for (int i = 0; i < CHECKSUM_LENGTH; i++)
+                        checksum[i] = table.get(position + Long.BYTES * 2 + i);
+                    return checksum;
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * Stores the checksum of a file. A previous checksum of the file is replaced.
+     *
+     * @param url              URL of the file
+     * @param size             Size the checksum belongs to
+     * @param lastModifiedTime Modification time the checksum belongs to
+     * @param checksum         SHA-1 checksum
+     */
+    public synchronized void put(URL url, long size, FileTime lastModifiedTime, Byte[] checksum) {
+        if (lastModifiedTime == null || checksum == null || checksum.length != CHECKSUM_LENGTH)
+            return;
+        open();
+
+        try {
+            synchronized (fileLockMonitor) {
+                FileLock fileLock = channel.lock();
+                try {
+                    remapIfResized();
+                    byte[] key = keyOf(url);
+                    int slot = findSlot(table, slotCount, key);
+                    if ((slot < 0 || (isEmpty(table, slot) && table.getInt(12) >= slotCount / 4 * 3)) && slotCount < maxSlotCount) {
+                        grow();
+                        slot = findSlot(table, slotCount, key);
+                    }
+                    if (slot < 0)
+                        slot = homeSlotOf(key, slotCount);
+                    else if (isEmpty(table, slot))
+                        table.putInt(12, table.getInt(12) + 1);
+
+                    byte[] checksumBytes = new byte[CHECKSUM_LENGTH];
+                    for (int i = 0; i < CHECKSUM_LENGTH; i++)
+                        checksumBytes[i] = checksum[i];
+                    writeSlot(table, slot, key, size, lastModifiedTime.toMillis(), checksumBytes);
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * Unmaps the table. The store is opened again when it is used.
+     */
+    public synchronized void close() {
+        if (channel == null)
+            return;
+        table.force();
+        table = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Closing checksum store {} failed", path, e);
+        }
+        channel = null;
+    }
+
+    private void open() {
+        if (channel != null)
+            return;
+        try {
+            Files.createDirectories(path.getParent());
+            FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                synchronized (fileLockMonitor) {
+                    FileLock fileLock = fileChannel.lock();
+                    try {
+                        if (map(fileChannel))
+                            return;
+                        if (fileChannel.size() > 0)
+                            LOGGER.warn("Recreate invalid checksum store {}", path);
+                        fileChannel.truncate(0);
+                        createTable(fileChannel, MIN_SLOT_COUNT);
+                        if (!map(fileChannel))
+                            throw new IOException("Invalid checksum store " + path);
+                    } finally {
+                        fileLock.release();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                fileChannel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * Maps the table again if another process has grown it.
+     */
+    private void remapIfResized() throws IOException {
+        if (channel.size() != HEADER_SIZE + (long) slotCount * SLOT_SIZE && !map(channel))
+            throw new IOException("Invalid checksum store " + path);
+    }
+
+    private boolean map(FileChannel fileChannel) throws IOException {
+        long fileSize = fileChannel.size();
+        if (fileSize < HEADER_SIZE || fileSize > HEADER_SIZE + (long) MAX_SLOT_COUNT * SLOT_SIZE)
+            return false;
+        MappedByteBuffer mappedTable = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        int storedSlotCount = mappedTable.getInt(8);
+        if (mappedTable.getInt(0) != MAGIC || mappedTable.getInt(4) != VERSION || Integer.bitCount(storedSlotCount) != 1
+                || storedSlotCount > MAX_SLOT_COUNT || fileSize != HEADER_SIZE + (long) storedSlotCount * SLOT_SIZE)
+            return false;
+
+        channel = fileChannel;
+        table = mappedTable;
+        slotCount = storedSlotCount;
+        return true;
+    }
+
+    private static void createTable(FileChannel fileChannel, int tableSlotCount) throws IOException {
+        MappedByteBuffer newTable = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) tableSlotCount * SLOT_SIZE);
+        newTable.putInt(0, MAGIC);
+        newTable.putInt(4, VERSION);
+        newTable.putInt(8, tableSlotCount);
+        newTable.putInt(12, 0);
+        newTable.force();
+    }
+
+    /**
+     * Extends the file to twice the number of slots and rehashes the entries in place. The slots of entries
+     * that weren't moved yet are pending. An entry is moved to the first empty or pending slot of its probes
+     * and the entry of a pending slot is moved next. So the probes of a moved entry only pass moved entries.
+     * The entries of an interrupted rehash may not be found anymore, but no wrong checksum is returned.
+     */
+    private void grow() throws IOException {
+        int oldSlotCount = slotCount;
+        int newSlotCount = slotCount * 2;
+        table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newSlotCount * SLOT_SIZE);
+        table.putInt(8, newSlotCount);
+        slotCount = newSlotCount;
+
+        BitSet pendingSlots = new BitSet(oldSlotCount);
+        for (int slot = 0; slot < oldSlotCount; slot++) {
+            if (!isEmpty(table, slot))
+                pendingSlots.set(slot);
+        }
+
+        Entry entry = new Entry();
+        Entry displacedEntry = new Entry();
+        int newEntryCount = 0;
+        for (int slot = pendingSlots.nextSetBit(0); slot >= 0; slot = pendingSlots.nextSetBit(slot + 1)) {
+            entry.read(table, slot);
+            pendingSlots.clear(slot);
+            clearSlot(table, slot);
+
+            while (true) {
+                int newSlot = findRehashSlot(entry.key, pendingSlots);
+                if (newSlot < 0)
+                    break;
+                boolean displaced = pendingSlots.get(newSlot);
+                if (displaced) {
+                    displacedEntry.read(table, newSlot);
+                    pendingSlots.clear(newSlot);
+                }
+                writeSlot(table, newSlot, entry.key, entry.size, entry.lastModifiedTime, entry.checksum);
+                newEntryCount++;
+                if (!displaced)
+                    break;
+                Entry movedEntry = entry;
+                entry = displacedEntry;
+                displacedEntry = movedEntry;
+            }
+        }
+        table.putInt(12, newEntryCount);
+        table.force();
+    }
+
+    /**
+     * @return First empty or pending slot of the probes or -1 if the probed slots hold moved entries
+     */
+    private int findRehashSlot(byte[] key, BitSet pendingSlots) {
+        int homeSlot = homeSlotOf(key, slotCount);
+        for (int i = 0; i < MAX_PROBES && i < slotCount; i++) {
+            int slot = (homeSlot + i) & (slotCount - 1);
+            if (pendingSlots.get(slot) || isEmpty(table, slot))
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Probes the slots after the home slot of the key.
+     *
+     * @return Slot containing the key, the first empty slot or -1 if the probed slots are used by other keys
+     */
+    private static int findSlot(MappedByteBuffer table, int tableSlotCount, byte[] key) {
+        int homeSlot = homeSlotOf(key, tableSlotCount);
+        for (int i = 0; i < MAX_PROBES && i < tableSlotCount; i++) {
+            int slot = (homeSlot + i) & (tableSlotCount - 1);
+            if (isEmpty(table, slot) || keyEquals(table, slot, key))
+                return slot;
+        }
+        return -1;
+    }
+
+    private static int homeSlotOf(byte[] key, int tableSlotCount) {
+        int hash = (key[0] & 0xff) << 24 | (key[1] & 0xff) << 16 | (key[2] & 0xff) << 8 | (key[3] & 0xff);
+        return hash & (tableSlotCount - 1);
+    }
+
+    private static boolean isEmpty(MappedByteBuffer table, int slot) {
+        int position = positionOf(slot);
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if (table.get(position + i) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean keyEquals(MappedByteBuffer table, int slot, byte[] key) {
+        int position = positionOf(slot);
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if (table.get(position + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The key is written last, so a slot isn't found before its values are complete.
+     */
+    private static void writeSlot(MappedByteBuffer table, int slot, byte[] key, long size, long lastModifiedTime, byte[] checksum) {
+        int position = positionOf(slot);
+        table.put(position, (byte) 0);
+        table.putLong(position + KEY_LENGTH, size);
+        table.putLong(position + KEY_LENGTH + Long.BYTES, lastModifiedTime);
+        for (int i = 0; i < CHECKSUM_LENGTH; i++)
+            table.put(position + KEY_LENGTH + Long.BYTES * 2 + i, checksum[i]);
+        for (int i = KEY_LENGTH - 1; i >= 0; i--)
+            table.put(position + i, key[i]);
+    }
+
+    private static void clearSlot(MappedByteBuffer table, int slot) {
+        int position = positionOf(slot);
+        for (int i = 0; i < KEY_LENGTH; i++)
+            table.put(position + i, (byte) 0);
+    }
+
+    private static int positionOf(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static byte[] keyOf(URL url) {
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort() + url.getPath();
+        return ChecksumUtils.sha1(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class Entry {
+        private final byte[] key = new byte[KEY_LENGTH];
+        private final byte[] checksum = new byte[CHECKSUM_LENGTH];
+        private long size;
+        private long lastModifiedTime;
+
+        private void read(MappedByteBuffer table, int slot) {
+            int position = positionOf(slot);
+            for (int i = 0; i < KEY_LENGTH; i++)
+                key[i] = table.get(position + i);
+            size = table.getLong(position + KEY_LENGTH);
+            lastModifiedTime = table.getLong(position + KEY_LENGTH + Long.BYTES);
+            for (int i = 0; i < CHECKSUM_LENGTH; i++)
+                checksum[i] = table.get(position + KEY_LENGTH + Long.BYTES * 2 + i);
+        }
+    }
+}
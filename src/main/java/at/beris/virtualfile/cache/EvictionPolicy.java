@@ -0,0 +1,25 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+/**
+ * Strategy used by the FileCache to decide which entry is evicted when the cache is full.
+ */
+public enum EvictionPolicy {
+    /**
+     * Evicts the least recently used entry.
+     */
+    LRU,
+    /**
+     * Window TinyLFU. Admits new entries into a small LRU window and only moves them into the main
+     * area if they are accessed more frequently than the entry they would replace.
+     */
+    TINY_LFU
+}
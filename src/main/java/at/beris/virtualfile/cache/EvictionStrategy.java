@@ -0,0 +1,32 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+/**
+ * Keeps the order in which cache entries are evicted. All methods are called while holding the eviction lock.
+ */
+interface EvictionStrategy {
+    void setMaximumSize(long maximumSize);
+
+    void recordInsert(CacheEntry entry);
+
+    void recordAccess(CacheEntry entry);
+
+    void recordRemoval(CacheEntry entry);
+
+    /**
+     * Selects the next entry to evict without removing it.
+     *
+     * @return Entry to evict or null if there are no entries
+     */
+    CacheEntry selectVictim();
+
+    void clear();
+}
@@ -10,102 +10,546 @@
 package at.beris.virtualfile.cache;
 
 import at.beris.virtualfile.UrlFile;
+import at.beris.virtualfile.util.UrlUtils;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
+/**
+ * Thread-safe cache for UrlFiles.
+ * <p>
+ * The files are stored in a trie of path segments per site, so common path prefixes are stored only once
+ * and the parent of a cached file can be found without building its url. Directory segments end with a slash,
+ * so "/dir" and "/dir/" are different entries.
+ * <p>
+ * Reads don't block. The access order is updated only if the eviction lock is free, so under heavy
+ * contention some accesses are not recorded. Writes are serialized and evict single entries until the cache
+ * fits its maximum size again. The callback handler is invoked after the lock was released.
+ * <p>
+ * Besides the number of entries the cache can be limited by a maximum weight, e.g. the estimated number of
+ * bytes retained by the entries. The weight of an entry is determined by the weigher when the entry is put.
+ * The FileModel of a UrlFile is loaded lazily, so the owner of the cache reports a changed file with
+ * updateWeight. Reads never weigh entries.
+ */
 public class FileCache {
-    public static final float LOAD_FACTOR = 0.75F;
-    // Percent of cache entries purged when cache is full
-    public static final float PURGE_FACTOR = 0.1F;
-    private float loadFactor;
-    private int capacity;
-    private int maxSize;
-    private CallbackHandler callbackHandler;
+    private volatile int maxSize;
+    private volatile long maxWeight;
+    private volatile int size;
+    private long totalWeight;
+    private volatile Weigher weigher;
+    private EvictionPolicy evictionPolicy;
+    private EvictionStrategy evictionStrategy;
+    private volatile CallbackHandler callbackHandler;
 
-    private Map<String, UrlFile> cacheMap;
+    private final ConcurrentMap<String, CacheEntry> rootBySite;
+    private final ReentrantLock evictionLock;
 
     public FileCache(int maxSize) {
+        this(maxSize, EvictionPolicy.LRU);
+    }
+
+    public FileCache(int maxSize, EvictionPolicy evictionPolicy) {
         this.maxSize = maxSize;
-        this.loadFactor = LOAD_FACTOR;
-        calculateFields();
-        createMap();
+        this.evictionPolicy = evictionPolicy;
+        this.evictionStrategy = createEvictionStrategy(evictionPolicy);
+        this.evictionStrategy.setMaximumSize(maxSize);
+        this.rootBySite = new ConcurrentHashMap<>();
+        this.evictionLock = new ReentrantLock();
     }
 
-    public UrlFile put(String key, UrlFile value) {
-        if (isCacheFull()) {
-            purgeCache();
+    public UrlFile put(URL url, UrlFile value) {
+        List<UrlFile> evictedFiles;
+        evictionLock.lock();
+        try {
+            CacheEntry entry = createEntry(url);
+            if (entry.isLinked()) {
+                entry.setValue(value);
+                evictionStrategy.recordAccess(entry);
+                updateWeight(entry);
+            } else
+                linkEntry(entry, value);
+            evictedFiles = evict(Collections.singletonList(entry));
+        } finally {
+            evictionLock.unlock();
         }
-        cacheMap.put(key, value);
+        notifyPurged(evictedFiles);
         return value;
     }
 
-    public UrlFile remove(String key) {
-        return cacheMap.remove(key);
+    /**
+     * Puts the value only if there is no entry for the url yet.
+     *
+     * @param url   URL
+     * @param value UrlFile
+     * @return The UrlFile already cached for the url or null if the value was put
+     */
+    public UrlFile putIfAbsent(URL url, UrlFile value) {
+        List<UrlFile> evictedFiles;
+        evictionLock.lock();
+        try {
+            CacheEntry entry = createEntry(url);
+            if (entry.isLinked()) {
+                evictionStrategy.recordAccess(entry);
+                return entry.getValue();
+            }
+            linkEntry(entry, value);
+            evictedFiles = evict(Collections.singletonList(entry));
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyPurged(evictedFiles);
+        return null;
     }
 
-    public int size() {
-        return cacheMap.size();
+    /**
+     * Gets the UrlFile for the url. If it isn't cached, it is created with the fileFactory. Missing ancestors
+     * are created and cached as well, so that the parents of a cached file are usually cached, too.
+     *
+     * @param url         URL
+     * @param fileFactory Creates a UrlFile for an url
+     * @return Cached UrlFile
+     */
+    public UrlFile getOrCreate(URL url, Function<URL, UrlFile> fileFactory) {
+        UrlFile file = get(url);
+        if (file != null)
+            return file;
+
+        List<UrlFile> evictedFiles;
+        evictionLock.lock();
+        try {
+            String siteKey = getSiteKey(url);
+            String path = url.getPath();
+            CacheEntry entry = getOrCreateRoot(siteKey);
+            List<CacheEntry> linkedEntries = new ArrayList<>();
+            int begin = path.startsWith("/") ? 1 : 0;
+            while (true) {
+                if (!entry.isLinked()) {
+                    URL entryUrl = begin >= path.length() ? url : UrlUtils.newUrl(siteKey + path.substring(0, begin));
+                    linkEntry(entry, fileFactory.apply(entryUrl));
+                    linkedEntries.add(entry);
+                }
+                if (begin >= path.length())
+                    break;
+                int end = nextSegmentEnd(path, begin);
+                entry = entry.addChild(path.substring(begin, end));
+                begin = end;
+            }
+            file = entry.getValue();
+            evictedFiles = evict(linkedEntries);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyPurged(evictedFiles);
+        return file;
+    }
+
+    public UrlFile get(URL url) {
+        CacheEntry entry = findEntry(url);
+        if (entry == null)
+            return null;
+        UrlFile value = entry.getValue();
+        if (value == null)
+            return null;
+
+        if (evictionLock.tryLock()) {
+            try {
+                if (entry.isLinked())
+                    evictionStrategy.recordAccess(entry);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return value;
     }
 
-    public UrlFile get(String key) {
-        return cacheMap.get(key);
+    /**
+     * Weighs the cached file again, e.g. after its FileModel was loaded or replaced. Nothing is done if there
+     * is no weigher or the file isn't cached under the url any more.
+     *
+     * @param url   URL
+     * @param value Cached UrlFile
+     */
+    public void updateWeight(URL url, UrlFile value) {
+        if (weigher == null)
+            return;
+
+        List<UrlFile> evictedFiles;
+        evictionLock.lock();
+        try {
+            CacheEntry entry = findEntry(url);
+            if (entry == null || !entry.isLinked() || entry.getValue() != value)
+                return;
+            updateWeight(entry);
+            evictedFiles = evict(Collections.singletonList(entry));
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyPurged(evictedFiles);
+    }
+
+    /**
+     * Gets the cached parent of the file with the url by following the parent link in the trie.
+     *
+     * @param url URL
+     * @return Parent UrlFile or null if the parent or the file itself isn't cached
+     */
+    public UrlFile getParent(URL url) {
+        CacheEntry entry = findEntry(url);
+        if (entry == null || entry.getParent() == null)
+            return null;
+        return entry.getParent().getValue();
+    }
+
+    public UrlFile remove(URL url) {
+        evictionLock.lock();
+        try {
+            CacheEntry entry = findEntry(url);
+            if (entry == null || !entry.isLinked())
+                return null;
+            UrlFile value = entry.getValue();
+            unlinkEntry(entry);
+            pruneEntry(entry);
+            return value;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the descendants of the url, e.g. after the directory was deleted or renamed.
+     *
+     * @param url             URL
+     * @param includingItself If true, the file of the url is removed, too
+     * @return Removed UrlFiles
+     */
+    public List<UrlFile> removeTree(URL url, boolean includingItself) {
+        evictionLock.lock();
+        try {
+            CacheEntry entry = findEntry(url);
+            if (entry == null)
+                return Collections.emptyList();
+
+            List<UrlFile> removedFiles = new ArrayList<>();
+            Deque<CacheEntry> entries = new ArrayDeque<>(entry.getChildren());
+            while (!entries.isEmpty()) {
+                CacheEntry descendant = entries.pop();
+                entries.addAll(descendant.getChildren());
+                if (descendant.isLinked()) {
+                    removedFiles.add(descendant.getValue());
+                    unlinkEntry(descendant);
+                }
+            }
+            for (CacheEntry child : new ArrayList<>(entry.getChildren()))
+                entry.removeChild(child);
+
+            if (includingItself && entry.isLinked()) {
+                removedFiles.add(entry.getValue());
+                unlinkEntry(entry);
+            }
+            pruneEntry(entry);
+            return removedFiles;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size() {
+        return size;
     }
 
     public void clear() {
-        cacheMap.clear();
+        evictionLock.lock();
+        try {
+            for (CacheEntry entry : getLinkedEntries()) {
+                entry.queue = CacheEntry.QUEUE_NONE;
+                entry.setValue(null);
+            }
+            rootBySite.clear();
+            evictionStrategy.clear();
+            size = 0;
+            totalWeight = 0;
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
-    private void createMap() {
-        cacheMap = new LinkedHashMap<>(capacity, loadFactor);
+    public int getMaxSize() {
+        return maxSize;
     }
 
     public void setMaxSize(int maxSize) {
-        this.maxSize = maxSize;
-        calculateFields();
-        disposeMap();
-        createMap();
+        List<UrlFile> evictedFiles;
+        evictionLock.lock();
+        try {
+            this.maxSize = maxSize;
+            evictionStrategy.setMaximumSize(maxSize);
+            evictedFiles = evict();
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyPurged(evictedFiles);
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
     }
 
-    public int getPurgeSize() {
-        return (int) (maxSize * PURGE_FACTOR);
+    /**
+     * Limits the total weight of all entries.
+     *
+     * @param maxWeight Maximum weight or 0 for no limit
+     */
+    public void setMaxWeight(long maxWeight) {
+        List<UrlFile> evictedFiles;
+        evictionLock.lock();
+        try {
+            this.maxWeight = maxWeight;
+            evictedFiles = evict();
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyPurged(evictedFiles);
+    }
+
+    /**
+     * Gets the total weight of all entries as last determined by the weigher.
+     *
+     * @return Total weight
+     */
+    public long getWeight() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void setWeigher(Weigher weigher) {
+        List<UrlFile> evictedFiles;
+        evictionLock.lock();
+        try {
+            this.weigher = weigher;
+            for (CacheEntry entry : getLinkedEntries())
+                updateWeight(entry);
+            evictedFiles = evict();
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyPurged(evictedFiles);
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        evictionLock.lock();
+        try {
+            return evictionPolicy;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Changes the eviction policy. The entries are kept, but their access history is lost.
+     *
+     * @param evictionPolicy Eviction Policy
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        evictionLock.lock();
+        try {
+            if (this.evictionPolicy == evictionPolicy)
+                return;
+
+            EvictionStrategy newEvictionStrategy = createEvictionStrategy(evictionPolicy);
+            newEvictionStrategy.setMaximumSize(maxSize);
+            List<CacheEntry> linkedEntries = getLinkedEntries();
+            evictionStrategy.clear();
+            for (CacheEntry entry : linkedEntries) {
+                entry.queue = CacheEntry.QUEUE_NONE;
+                newEvictionStrategy.recordInsert(entry);
+            }
+            this.evictionPolicy = evictionPolicy;
+            this.evictionStrategy = newEvictionStrategy;
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     public void setCallbackHandler(CallbackHandler callbackHandler) {
         this.callbackHandler = callbackHandler;
     }
 
-    private void calculateFields() {
-        this.capacity = (int) Math.ceil(maxSize / (100 * loadFactor)) + 1;
+    private CacheEntry findEntry(URL url) {
+        CacheEntry entry = rootBySite.get(getSiteKey(url));
+        String path = url.getPath();
+        int begin = path.startsWith("/") ? 1 : 0;
+        while (entry != null && begin < path.length()) {
+            int end = nextSegmentEnd(path, begin);
+            entry = entry.getChild(path.substring(begin, end));
+            begin = end;
+        }
+        return entry;
+    }
+
+    private CacheEntry createEntry(URL url) {
+        CacheEntry entry = getOrCreateRoot(getSiteKey(url));
+        String path = url.getPath();
+        int begin = path.startsWith("/") ? 1 : 0;
+        while (begin < path.length()) {
+            int end = nextSegmentEnd(path, begin);
+            entry = entry.addChild(path.substring(begin, end));
+            begin = end;
+        }
+        return entry;
+    }
+
+    private CacheEntry getOrCreateRoot(String siteKey) {
+        CacheEntry root = rootBySite.get(siteKey);
+        if (root == null) {
+            root = new CacheEntry(null, siteKey);
+            rootBySite.put(siteKey, root);
+        }
+        return root;
+    }
+
+    private void linkEntry(CacheEntry entry, UrlFile value) {
+        entry.setValue(value);
+        evictionStrategy.recordInsert(entry);
+        size++;
+        updateWeight(entry);
+    }
+
+    private void unlinkEntry(CacheEntry entry) {
+        evictionStrategy.recordRemoval(entry);
+        entry.setValue(null);
+        size--;
+        totalWeight -= entry.weight;
+        entry.weight = 0;
     }
 
-    private void disposeMap() {
-        cacheMap.clear();
-        cacheMap = null;
+    /**
+     * Removes nodes from the trie which neither hold a value nor have children.
+     */
+    private void pruneEntry(CacheEntry entry) {
+        while (entry != null && !entry.isLinked() && !entry.hasChildren()) {
+            CacheEntry parent = entry.getParent();
+            if (parent == null)
+                rootBySite.remove(entry.getSegment(), entry);
+            else
+                parent.removeChild(entry);
+            entry = parent;
+        }
+    }
+
+    private List<CacheEntry> getLinkedEntries() {
+        List<CacheEntry> linkedEntries = new ArrayList<>(size);
+        Deque<CacheEntry> entries = new ArrayDeque<>(rootBySite.values());
+        while (!entries.isEmpty()) {
+            CacheEntry entry = entries.pop();
+            entries.addAll(entry.getChildren());
+            if (entry.isLinked())
+                linkedEntries.add(entry);
+        }
+        return linkedEntries;
     }
 
-    private boolean isCacheFull() {
-        return cacheMap.size() == maxSize;
+    private List<UrlFile> evict() {
+        return evict(Collections.<CacheEntry>emptyList());
     }
 
-    private void purgeCache() {
-        int numOfEntriesToPurge = getPurgeSize();
-        int numOfEntriesPurged = 0;
+    /**
+     * Evicts entries until the cache is within its capacity.
+     *
+     * @param keptEntries Entries just linked for the caller, which are never evicted. The cache may stay over
+     *                    capacity until the next eviction if only these are left.
+     * @return Evicted files
+     */
+    private List<UrlFile> evict(Collection<CacheEntry> keptEntries) {
+        List<UrlFile> evictedFiles = null;
+        List<CacheEntry> skippedEntries = null;
+        while (isOverCapacity()) {
+            CacheEntry victim = evictionStrategy.selectVictim();
+            if (victim == null)
+                break;
 
-        Iterator<Map.Entry<String, UrlFile>> it = cacheMap.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, UrlFile> entry = it.next();
-            UrlFile file = entry.getValue();
-            if (numOfEntriesPurged < numOfEntriesToPurge) {
-                it.remove();
-                callbackHandler.afterEntryPurged(file);
-                numOfEntriesPurged++;
+            if (keptEntries.contains(victim)) {
+                if (skippedEntries == null)
+                    skippedEntries = new ArrayList<>();
+                skippedEntries.add(victim);
+                evictionStrategy.recordRemoval(victim);
+                continue;
             }
+
+            if (evictedFiles == null)
+                evictedFiles = new ArrayList<>();
+            evictedFiles.add(victim.getValue());
+            unlinkEntry(victim);
+            pruneEntry(victim);
+        }
+        if (skippedEntries != null) {
+            for (CacheEntry entry : skippedEntries)
+                evictionStrategy.recordInsert(entry);
+        }
+        return evictedFiles != null ? evictedFiles : Collections.<UrlFile>emptyList();
+    }
+
+    private boolean isOverCapacity() {
+        return size > maxSize || (maxWeight > 0 && totalWeight > maxWeight);
+    }
+
+    private void updateWeight(CacheEntry entry) {
+        Weigher currentWeigher = weigher;
+        long weight = currentWeigher != null ? currentWeigher.weigh(entry.getValue()) : 0;
+        totalWeight += weight - entry.weight;
+        entry.weight = weight;
+    }
+
+    private void notifyPurged(List<UrlFile> evictedFiles) {
+        CallbackHandler handler = callbackHandler;
+        if (handler == null)
+            return;
+        for (UrlFile file : evictedFiles)
+            handler.afterEntryPurged(file);
+    }
+
+    private static String getSiteKey(URL url) {
+        String authority = url.getAuthority();
+        return url.getProtocol() + "://" + (authority != null ? authority : "");
+    }
+
+    private static int nextSegmentEnd(String path, int begin) {
+        int end = path.indexOf('/', begin);
+        return end == -1 ? path.length() : end + 1;
+    }
+
+    private static EvictionStrategy createEvictionStrategy(EvictionPolicy evictionPolicy) {
+        switch (evictionPolicy) {
+            case TINY_LFU:
+                return new TinyLfuEvictionStrategy();
+            default:
+                return new LruEvictionStrategy();
         }
     }
 
     public interface CallbackHandler {
         void afterEntryPurged(UrlFile value);
     }
+
+    public interface Weigher {
+        /**
+         * Estimates the weight of a cached UrlFile.
+         *
+         * @param value UrlFile
+         * @return Weight, not negative
+         */
+        long weigh(UrlFile value);
+    }
 }
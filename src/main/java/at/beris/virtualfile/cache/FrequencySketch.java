@@ -0,0 +1,99 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+/**
+ * Count-Min sketch with 4-bit counters estimating how often a hash was accessed.
+ * All counters are halved after a sample period so that the history ages out. Not thread-safe.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_FREQUENCY = 15;
+    private static final int SAMPLE_FACTOR = 10;
+
+    private long[] table;
+    private int tableMask;
+    private long sampleSize;
+    private long additions;
+
+    FrequencySketch() {
+        setMaximumSize(1);
+    }
+
+    void setMaximumSize(long maximumSize) {
+        int length = tableLength(maximumSize);
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = Math.max(SAMPLE_FACTOR, SAMPLE_FACTOR * Math.max(1, maximumSize));
+        additions = 0;
+    }
+
+    int frequency(int keyHash) {
+        int hash = spread(keyHash);
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counter(table[indexOf(hash, i)], counterIndex(hash, i)));
+        }
+        return frequency;
+    }
+
+    void increment(int keyHash) {
+        int hash = spread(keyHash);
+        boolean incremented = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int counterIndex = counterIndex(hash, i);
+            if (counter(table[index], counterIndex) < MAX_FREQUENCY) {
+                table[index] += 1L << (counterIndex << 2);
+                incremented = true;
+            }
+        }
+
+        if (incremented && ++additions >= sampleSize)
+            reset();
+    }
+
+    void clear() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = 0L;
+        additions = 0;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        additions = additions >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int counterIndex(int hash, int i) {
+        return (i << 2) + ((hash >>> (i << 3)) & 3);
+    }
+
+    private static int counter(long slot, int counterIndex) {
+        return (int) ((slot >>> (counterIndex << 2)) & 0xFL);
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableLength(long maximumSize) {
+        int size = (int) Math.min(Math.max(maximumSize, 2), 1 << 30);
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+}
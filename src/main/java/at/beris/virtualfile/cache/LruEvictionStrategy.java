@@ -0,0 +1,45 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+final class LruEvictionStrategy implements EvictionStrategy {
+    private final AccessOrderDeque accessOrderDeque = new AccessOrderDeque();
+
+    @Override
+    public void setMaximumSize(long maximumSize) {
+    }
+
+    @Override
+    public void recordInsert(CacheEntry entry) {
+        entry.queue = CacheEntry.QUEUE_PROTECTED;
+        accessOrderDeque.addLast(entry);
+    }
+
+    @Override
+    public void recordAccess(CacheEntry entry) {
+        accessOrderDeque.moveToBack(entry);
+    }
+
+    @Override
+    public void recordRemoval(CacheEntry entry) {
+        accessOrderDeque.remove(entry);
+        entry.queue = CacheEntry.QUEUE_NONE;
+    }
+
+    @Override
+    public CacheEntry selectVictim() {
+        return accessOrderDeque.peekFirst();
+    }
+
+    @Override
+    public void clear() {
+        accessOrderDeque.clear();
+    }
+}
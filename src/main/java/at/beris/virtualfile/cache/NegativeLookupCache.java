@@ -0,0 +1,161 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe cache remembering urls of files that didn't exist when they were last looked up.
+ * Entries expire after the time to live. If the cache is full the eldest entry is removed.
+ */
+public class NegativeLookupCache {
+    private final ExpiryTimeMap expiryTimeByUrl;
+    private long timeToLive;
+
+    /**
+     * @param maxSize    Maximum number of entries or 0 to disable the cache
+     * @param timeToLive Time to live in seconds
+     */
+    public NegativeLookupCache(int maxSize, int timeToLive) {
+        this.timeToLive = TimeUnit.SECONDS.toNanos(timeToLive);
+        this.expiryTimeByUrl = new ExpiryTimeMap(maxSize);
+    }
+
+    public synchronized boolean contains(String url) {
+        if (expiryTimeByUrl.isEmpty())
+            return false;
+
+        Long expiryTime = expiryTimeByUrl.get(url);
+        if (expiryTime == null)
+            return false;
+        if (System.nanoTime() - expiryTime >= 0) {
+            expiryTimeByUrl.remove(url);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void put(String url) {
+        if (expiryTimeByUrl.maxSize <= 0 || timeToLive <= 0)
+            return;
+        expiryTimeByUrl.remove(url);
+        expiryTimeByUrl.put(url, System.nanoTime() + timeToLive);
+    }
+
+    /**
+     * Removes the url of a file that was found. A directory url with or without trailing slash is the same file.
+     *
+     * @param url Url
+     */
+    public synchronized void remove(String url) {
+        if (expiryTimeByUrl.isEmpty())
+            return;
+        removePath(stripTrailingSlash(url));
+    }
+
+    /**
+     * Removes the url and the urls of its ancestors, because creating a file may create its parent directories.
+     * Each url is removed by its key, so the other entries aren't scanned.
+     *
+     * @param url Url
+     */
+    public synchronized void removeWithAncestors(String url) {
+        if (expiryTimeByUrl.isEmpty())
+            return;
+
+        String path = stripTrailingSlash(url);
+        int rootEnd = path.indexOf("//") + 2;
+        removePath(path);
+        int end;
+        while ((end = path.lastIndexOf('/')) >= rootEnd) {
+            path = path.substring(0, end);
+            removePath(path);
+        }
+    }
+
+    /**
+     * Removes the url as well as all urls of its ancestors and descendants, because moving or copying a
+     * directory also moves or copies its children. All entries are scanned.
+     *
+     * @param url Url
+     */
+    public synchronized void invalidate(String url) {
+        if (expiryTimeByUrl.isEmpty())
+            return;
+
+        String path = stripTrailingSlash(url);
+        Iterator<String> it = expiryTimeByUrl.keySet().iterator();
+        while (it.hasNext()) {
+            String entryPath = stripTrailingSlash(it.next());
+            if (entryPath.equals(path) || path.startsWith(entryPath + "/") || entryPath.startsWith(path + "/"))
+                it.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return expiryTimeByUrl.size();
+    }
+
+    public synchronized void clear() {
+        expiryTimeByUrl.clear();
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        expiryTimeByUrl.maxSize = maxSize;
+        Iterator<String> it = expiryTimeByUrl.keySet().iterator();
+        while (expiryTimeByUrl.size() > Math.max(maxSize, 0) && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Changes the time to live of new entries.
+     *
+     * @param timeToLive Time to live in seconds
+     */
+    public synchronized void setTimeToLive(int timeToLive) {
+        this.timeToLive = TimeUnit.SECONDS.toNanos(timeToLive);
+    }
+
+    private void removePath(String path) {
+        expiryTimeByUrl.remove(path);
+        expiryTimeByUrl.remove(path + "/");
+    }
+
+    public synchronized boolean isEmpty() {
+        return expiryTimeByUrl.isEmpty();
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * Removes the eldest entry when an entry is added to a full map.
+     */
+    private static class ExpiryTimeMap extends LinkedHashMap<String, Long> {
+        private static final long serialVersionUID = 1L;
+
+        private int maxSize;
+
+        private ExpiryTimeMap(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.cache;
+
+/**
+ * Window TinyLFU. New entries are kept in a small LRU window. When the window overflows, its eldest entry
+ * competes with the eldest entry of the probation area and the one with the lower estimated access
+ * frequency is evicted. Entries accessed while in probation are promoted to the protected area.
+ */
+final class TinyLfuEvictionStrategy implements EvictionStrategy {
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final AccessOrderDeque windowDeque = new AccessOrderDeque();
+    private final AccessOrderDeque probationDeque = new AccessOrderDeque();
+    private final AccessOrderDeque protectedDeque = new AccessOrderDeque();
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    private long maximumSize;
+    private long maximumWindowSize;
+    private long maximumProtectedSize;
+
+    @Override
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        this.maximumWindowSize = Math.max(1, maximumSize * WINDOW_PERCENT / 100);
+        this.maximumProtectedSize = (maximumSize - maximumWindowSize) * PROTECTED_PERCENT / 100;
+        sketch.setMaximumSize(maximumSize);
+        demoteProtected();
+    }
+
+    @Override
+    public void recordInsert(CacheEntry entry) {
+        sketch.increment(entry.getPathHash());
+        entry.queue = CacheEntry.QUEUE_WINDOW;
+        windowDeque.addLast(entry);
+
+        // as long as the cache isn't full, entries leaving the window need not compete for admission
+        while (windowDeque.size() > maximumWindowSize && size() <= maximumSize) {
+            CacheEntry windowEntry = windowDeque.pollFirst();
+            windowEntry.queue = CacheEntry.QUEUE_PROBATION;
+            probationDeque.addLast(windowEntry);
+        }
+    }
+
+    @Override
+    public void recordAccess(CacheEntry entry) {
+        sketch.increment(entry.getPathHash());
+        switch (entry.queue) {
+            case CacheEntry.QUEUE_WINDOW:
+                windowDeque.moveToBack(entry);
+                break;
+            case CacheEntry.QUEUE_PROBATION:
+                probationDeque.remove(entry);
+                entry.queue = CacheEntry.QUEUE_PROTECTED;
+                protectedDeque.addLast(entry);
+                demoteProtected();
+                break;
+            case CacheEntry.QUEUE_PROTECTED:
+                protectedDeque.moveToBack(entry);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void recordRemoval(CacheEntry entry) {
+        AccessOrderDeque deque = dequeOf(entry);
+        if (deque != null)
+            deque.remove(entry);
+        entry.queue = CacheEntry.QUEUE_NONE;
+    }
+
+    @Override
+    public CacheEntry selectVictim() {
+        CacheEntry candidate = windowDeque.size() > maximumWindowSize ? windowDeque.peekFirst() : null;
+        CacheEntry victim = probationDeque.peekFirst();
+        if (victim == null)
+            victim = protectedDeque.peekFirst();
+
+        if (candidate == null)
+            return victim != null ? victim : windowDeque.peekFirst();
+        if (victim == null)
+            return candidate;
+
+        if (sketch.frequency(candidate.getPathHash()) > sketch.frequency(victim.getPathHash())) {
+            windowDeque.remove(candidate);
+            candidate.queue = CacheEntry.QUEUE_PROBATION;
+            probationDeque.addLast(candidate);
+            return victim;
+        }
+        return candidate;
+    }
+
+    @Override
+    public void clear() {
+        windowDeque.clear();
+        probationDeque.clear();
+        protectedDeque.clear();
+        sketch.clear();
+    }
+
+    private void demoteProtected() {
+        while (protectedDeque.size() > maximumProtectedSize) {
+            CacheEntry entry = protectedDeque.pollFirst();
+            entry.queue = CacheEntry.QUEUE_PROBATION;
+            probationDeque.addLast(entry);
+        }
+    }
+
+    private long size() {
+        return windowDeque.size() + probationDeque.size() + protectedDeque.size();
+    }
+
+    private AccessOrderDeque dequeOf(CacheEntry entry) {
+        switch (entry.queue) {
+            case CacheEntry.QUEUE_WINDOW:
+                return windowDeque;
+            case CacheEntry.QUEUE_PROBATION:
+                return probationDeque;
+            case CacheEntry.QUEUE_PROTECTED:
+                return protectedDeque;
+            default:
+                return null;
+        }
+    }
+}
@@ -23,12 +23,21 @@ import java.util.Optional;
 public abstract class ClientConfiguration<T> {
 
     public static final int DEFAULT_TIMEOUT = 30;
+    public static final int DEFAULT_FILE_MODEL_TIME_TO_LIVE = 0;
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 60;
     public static final String DEFAULT_USERNAME = StringUtils.EMPTY_STRING;
     public static final char[] DEFAULT_PASSWORD = {};
 
 
     private int timeout;
 
+    private int fileModelTimeToLive;
+
+    private int maxConnections;
+
+    private int connectionIdleTimeout;
+
     private String username;
 
     private char[] password;
@@ -39,6 +48,9 @@ public abstract class ClientConfiguration<T> {
 
     public ClientConfiguration() {
         setTimeout(DEFAULT_TIMEOUT);
+        setFileModelTimeToLive(DEFAULT_FILE_MODEL_TIME_TO_LIVE);
+        setMaxConnections(DEFAULT_MAX_CONNECTIONS);
+        setConnectionIdleTimeout(DEFAULT_CONNECTION_IDLE_TIMEOUT);
         setUsername(DEFAULT_USERNAME);
         setPassword(DEFAULT_PASSWORD);
     }
@@ -68,6 +80,52 @@ public abstract class ClientConfiguration<T> {
         return (T) this;
     }
 
+    public int getFileModelTimeToLive() {
+        return fileModelTimeToLive;
+    }
+
+    /**
+     * Seconds after which the cached metadata of a file is refreshed in the background.
+     * Until the refresh has finished the stale metadata is returned.
+     *
+     * @param fileModelTimeToLive Time to live in seconds or 0 if the metadata never expires
+     * @return Client configuration
+     */
+    public T setFileModelTimeToLive(int fileModelTimeToLive) {
+        this.fileModelTimeToLive = fileModelTimeToLive;
+        return (T) this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Maximum number of connections to a site that are used at the same time.
+     *
+     * @param maxConnections Maximum number of connections
+     * @return Client configuration
+     */
+    public T setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return (T) this;
+    }
+
+    public int getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    /**
+     * Seconds after which an unused connection to a site is closed.
+     *
+     * @param connectionIdleTimeout Idle timeout in seconds or 0 to keep unused connections open
+     * @return Client configuration
+     */
+    public T setConnectionIdleTimeout(int connectionIdleTimeout) {
+        this.connectionIdleTimeout = connectionIdleTimeout;
+        return (T) this;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -133,5 +191,8 @@ public abstract class ClientConfiguration<T> {
         setPassword(clientConfig.getPassword());
         setPort(clientConfig.getPort());
         setTimeout(clientConfig.getTimeout());
+        setFileModelTimeToLive(clientConfig.getFileModelTimeToLive());
+        setMaxConnections(clientConfig.getMaxConnections());
+        setConnectionIdleTimeout(clientConfig.getConnectionIdleTimeout());
     }
 }
@@ -0,0 +1,224 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.client;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounded pool of connections to a single site. A connection is borrowed for one operation and returned
+ * afterwards. Idle connections are checked with the factory before they are handed out again and are closed
+ * when they were idle longer than the idle timeout.
+ *
+ * @param <T> Type of the connection
+ */
+public class ConnectionPool<T> {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final ConnectionFactory<T> connectionFactory;
+    private final int maxConnections;
+    private final long idleTimeout;
+    private final long borrowTimeout;
+    private final Semaphore permits;
+    private final Deque<IdleConnection<T>> idleConnections = new ArrayDeque<>();
+    private boolean closed;
+
+    /**
+     * @param connectionFactory  Factory creating, validating and closing the connections
+     * @param maxConnections     Maximum number of connections borrowed at the same time
+     * @param idleTimeoutSeconds Seconds after which an idle connection is closed or 0 to keep idle connections open
+     */
+    public ConnectionPool(ConnectionFactory<T> connectionFactory, int maxConnections, int idleTimeoutSeconds) {
+        this(connectionFactory, maxConnections, idleTimeoutSeconds, 0);
+    }
+
+    /**
+     * @param connectionFactory    Factory creating, validating and closing the connections
+     * @param maxConnections       Maximum number of connections borrowed at the same time
+     * @param idleTimeoutSeconds   Seconds after which an idle connection is closed or 0 to keep idle connections open
+     * @param borrowTimeoutSeconds Seconds to wait for a connection if all are in use or 0 to wait until one is returned
+     */
+    public ConnectionPool(ConnectionFactory<T> connectionFactory, int maxConnections, int idleTimeoutSeconds, int borrowTimeoutSeconds) {
+        this.connectionFactory = connectionFactory;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.idleTimeout = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.borrowTimeout = TimeUnit.SECONDS.toNanos(borrowTimeoutSeconds);
+        this.permits = new Semaphore(this.maxConnections, true);
+    }
+
+    /**
+     * Borrows a connection. Blocks until a connection is available, if all connections are in use.
+     * A thread that already holds a connection and borrows another one waits for the other threads, so the
+     * wait is limited by the borrow timeout and fails instead of hanging.
+     *
+     * @return Connection
+     */
+    public T borrow() {
+        try {
+            if (borrowTimeout <= 0)
+                permits.acquire();
+            else if (!permits.tryAcquire(borrowTimeout, TimeUnit.NANOSECONDS))
+                throw new VirtualFileException(new TimeoutException("No connection available within "
+                        + TimeUnit.NANOSECONDS.toSeconds(borrowTimeout) + " seconds, all " + maxConnections + " connections are in use"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VirtualFileException(e);
+        }
+
+        try {
+            T connection;
+            while ((connection = pollIdleConnection()) != null) {
+                if (connectionFactory.validate(connection))
+                    return connection;
+                LOGGER.debug("Discard broken connection {}", connection);
+                closeConnection(connection);
+            }
+            return connectionFactory.create();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool.
+     *
+     * @param connection Connection
+     */
+    public void release(T connection) {
+        List<T> expiredConnections;
+        boolean closeConnection;
+        synchronized (idleConnections) {
+            closeConnection = closed;
+            if (!closed)
+                idleConnections.addFirst(new IdleConnection<>(connection, System.nanoTime()));
+            expiredConnections = removeExpiredConnections();
+        }
+        permits.release();
+
+        if (closeConnection)
+            closeConnection(connection);
+        for (T expiredConnection : expiredConnections)
+            closeConnection(expiredConnection);
+    }
+
+    /**
+     * Closes a borrowed connection that is broken instead of returning it to the pool.
+     *
+     * @param connection Connection
+     */
+    public void invalidate(T connection) {
+        permits.release();
+        closeConnection(connection);
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are returned to the pool as usual.
+     */
+    public void clear() {
+        List<T> connections = new ArrayList<>();
+        synchronized (idleConnections) {
+            for (IdleConnection<T> idleConnection : idleConnections)
+                connections.add(idleConnection.connection);
+            idleConnections.clear();
+        }
+        for (T connection : connections)
+            closeConnection(connection);
+    }
+
+    /**
+     * Closes all idle connections and closes borrowed connections when they are returned.
+     */
+    public void close() {
+        synchronized (idleConnections) {
+            closed = true;
+        }
+        clear();
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getIdleCount() {
+        synchronized (idleConnections) {
+            return idleConnections.size();
+        }
+    }
+
+    public int getActiveCount() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    private T pollIdleConnection() {
+        List<T> expiredConnections;
+        IdleConnection<T> idleConnection;
+        synchronized (idleConnections) {
+            expiredConnections = removeExpiredConnections();
+            idleConnection = idleConnections.pollFirst();
+        }
+        for (T expiredConnection : expiredConnections)
+            closeConnection(expiredConnection);
+        return idleConnection != null ? idleConnection.connection : null;
+    }
+
+    private List<T> removeExpiredConnections() {
+        List<T> expiredConnections = new ArrayList<>();
+        if (idleTimeout <= 0)
+            return expiredConnections;
+
+        long now = System.nanoTime();
+        Iterator<IdleConnection<T>> it = idleConnections.descendingIterator();
+        while (it.hasNext()) {
+            IdleConnection<T> idleConnection = it.next();
+            if (now - idleConnection.idleSince < idleTimeout)
+                break;
+            expiredConnections.add(idleConnection.connection);
+            it.remove();
+        }
+        return expiredConnections;
+    }
+
+    private void closeConnection(T connection) {
+        try {
+            connectionFactory.close(connection);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Closing connection {} failed", connection, e);
+        }
+    }
+
+    public interface ConnectionFactory<T> {
+        T create();
+
+        boolean validate(T connection);
+
+        void close(T connection);
+    }
+
+    private static class IdleConnection<T> {
+        private final T connection;
+        private final long idleSince;
+
+        private IdleConnection(T connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+}
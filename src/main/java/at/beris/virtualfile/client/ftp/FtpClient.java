@@ -11,8 +11,10 @@ package at.beris.virtualfile.client.ftp;
 
 import at.beris.virtualfile.attribute.FileAttribute;
 import at.beris.virtualfile.client.Client;
+import at.beris.virtualfile.client.ConnectionPool;
 import at.beris.virtualfile.exception.OperationNotSupportedException;
 import at.beris.virtualfile.exception.VirtualFileException;
+import at.beris.virtualfile.util.ChecksumUtils;
 import at.beris.virtualfile.util.UrlUtils;
 import org.apache.commons.net.ftp.*;
 import org.slf4j.LoggerFactory;
@@ -21,72 +23,65 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.Socket;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     private final static org.slf4j.Logger LOGGER = LoggerFactory.getLogger(FtpClient.class);
     private final static int MAX_CONNECTION_ATTEMPTS = 3;
-    private String physicalRootPath;
-    private boolean reconnect;
-    private FTPClient ftpClient;
+    private final static Map<String, String> HASH_ALGORITHMS = new HashMap<>();
+
+    static {
+        HASH_ALGORITHMS.put(ChecksumUtils.normalizeAlgorithm(ChecksumUtils.SHA1), "SHA-1");
+        HASH_ALGORITHMS.put(ChecksumUtils.normalizeAlgorithm(ChecksumUtils.SHA256), "SHA-256");
+        HASH_ALGORITHMS.put(ChecksumUtils.normalizeAlgorithm(ChecksumUtils.MD5), "MD5");
+    }
+
+    private volatile String physicalRootPath;
+    private volatile Boolean machineListingSupported;
+    private ConnectionPool<FTPClient> connectionPool;
 
     private FtpClientConfiguration configuration;
 
     public FtpClient(FtpClientConfiguration configuration) {
         this.configuration = configuration;
-        init();
     }
 
-    private void init() {
-        LOGGER.debug("init");
-        ftpClient = new FTPClient();
-        ftpClient.setControlEncoding("UTF-8");
+    private synchronized ConnectionPool<FTPClient> getConnectionPool() {
+        if (connectionPool == null)
+            connectionPool = new ConnectionPool<>(new FtpConnectionFactory(), configuration.getMaxConnections(),
+                    configuration.getConnectionIdleTimeout(), configuration.getTimeout());
+        return connectionPool;
     }
 
     @Override
     public void connect() {
-        LOGGER.info("Connecting to " + configuration.getUsername() + "@" + configuration.getHostname() + ":" + String.valueOf(configuration.getPassword()));
-        reconnect = true;
-        try {
-            ftpClient.connect(configuration.getHostname(), configuration.getPort());
-        } catch (IOException e) {
-            throw new VirtualFileException(e);
-        }
-        if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
-            disconnect();
-            return;
-        }
-        login();
-        setFileType(FTP.BINARY_FILE_TYPE);
+        getConnectionPool().release(getConnectionPool().borrow());
     }
 
     @Override
     public void disconnect() {
         LOGGER.info("Disconnecting from " + configuration.getUsername() + "@" + configuration.getHostname() + ":" + String.valueOf(configuration.getPort()));
-        executionHandler(new Callable<Void>() {
-            @Override
-            public Void call() throws Exception {
-                reconnect = false;
-                if (ftpClient.isConnected()) {
-                    ftpClient.logout();
-                    ftpClient.disconnect();
-                }
-                return null;
-            }
-        });
+        ConnectionPool<FTPClient> pool;
+        synchronized (this) {
+            pool = connectionPool;
+        }
+        if (pool != null)
+            pool.clear();
     }
 
     @Override
     public void deleteFile(final String path) {
         LOGGER.debug("deleteFile (path : {})", path);
-        executionHandler(new Callable<Void>() {
+        executionHandler(new FtpOperation<Void>() {
             @Override
-            public Void call() throws Exception {
+            public Void execute(FTPClient ftpClient) throws Exception {
                 int replyCode = ftpClient.dele(path);
                 String replyText = ftpClient.getReplyString();
                 if (!FTPReply.isPositiveCompletion(replyCode))
@@ -99,11 +94,10 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     @Override
     public void createFile(final String path) {
         LOGGER.debug("createFile (path : {})", path);
-        executionHandler(new Callable<Void>() {
+        executionHandler(new FtpOperation<Void>() {
             @Override
-            public Void call() throws Exception {
+            public Void execute(FTPClient ftpClient) throws Exception {
                 try (ByteArrayInputStream inputStream = new ByteArrayInputStream(new byte[]{})) {
-                    checkConnection();
                     ftpClient.storeFile(path, inputStream);
                 }
                 return null;
@@ -114,9 +108,11 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     @Override
     public boolean exists(final String path) {
         LOGGER.debug("exists (path : {})", path);
-        Boolean exists = executionHandler(new Callable<Boolean>() {
+        Boolean exists = executionHandler(new FtpOperation<Boolean>() {
             @Override
-            public Boolean call() throws Exception {
+            public Boolean execute(FTPClient ftpClient) throws Exception {
+                if (isMachineListingSupported(ftpClient))
+                    return ftpClient.mlistFile(path) != null;
 
                 int replyCode = ftpClient.stat(path);
                 String replyText = ftpClient.getReplyString();
@@ -146,9 +142,9 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     @Override
     public void createDirectory(final String path) {
         LOGGER.debug("createDirectory (path : {})", path);
-        executionHandler(new Callable<Void>() {
+        executionHandler(new FtpOperation<Void>() {
             @Override
-            public Void call() throws Exception {
+            public Void execute(FTPClient ftpClient) throws Exception {
                 int replyCode = ftpClient.mkd(path);
                 String replyText = ftpClient.getReplyString();
                 if (!FTPReply.isPositiveCompletion(replyCode)) {
@@ -166,9 +162,9 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     @Override
     public void deleteDirectory(final String path) {
         LOGGER.debug("deleteDirectory (path : {})", path);
-        executionHandler(new Callable<Void>() {
+        executionHandler(new FtpOperation<Void>() {
             @Override
-            public Void call() throws Exception {
+            public Void execute(FTPClient ftpClient) throws Exception {
                 int replyCode = ftpClient.rmd(path);
                 String replyText = ftpClient.getReplyString();
                 if (!FTPReply.isPositiveCompletion(replyCode)) {
@@ -181,22 +177,92 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
 
     @Override
     public InputStream getInputStream(final String path) {
-        LOGGER.debug("getInputStream (path : {})", path);
-        return executionHandler(new Callable<FtpInputStream>() {
+        return getInputStream(path, 0);
+    }
+
+    /**
+     * Returns an InputStream reading the file from the offset on. The offset is sent with a REST command.
+     *
+     * @param path   Path
+     * @param offset Number of bytes to skip
+     * @return InputStream
+     */
+    public InputStream getInputStream(final String path, final long offset) {
+        LOGGER.debug("getInputStream (path : {}, offset : {})", path, offset);
+        return executionHandler(new FtpOperation<FtpInputStream>() {
             @Override
-            public FtpInputStream call() throws Exception {
-                return new FtpInputStream(ftpClient.retrieveFileStream(path), ftpClient);
+            public FtpInputStream execute(FTPClient ftpClient) throws Exception {
+                ftpClient.setRestartOffset(offset);
+                InputStream inputStream = ftpClient.retrieveFileStream(path);
+                if (inputStream == null)
+                    throw new IOException(ftpClient.getReplyString());
+                return new FtpInputStream(inputStream, ftpClient, getConnectionPool());
             }
-        });
+        }, true);
     }
 
     @Override
     public OutputStream getOutputStream(final String path) {
-        LOGGER.debug("getOutputStream (path : {})", path);
-        return executionHandler(new Callable<FtpOutputStream>() {
+        return getOutputStream(path, false);
+    }
+
+    /**
+     * Returns an OutputStream writing to the file.
+     *
+     * @param path   Path
+     * @param append Append to the existing content of the file instead of replacing it
+     * @return OutputStream
+     */
+    public OutputStream getOutputStream(final String path, final boolean append) {
+        LOGGER.debug("getOutputStream (path : {}, append : {})", path, append);
+        return executionHandler(new FtpOperation<FtpOutputStream>() {
+            @Override
+            public FtpOutputStream execute(FTPClient ftpClient) throws Exception {
+                OutputStream outputStream = append ? ftpClient.appendFileStream(path) : ftpClient.storeFileStream(path);
+                if (outputStream == null)
+                    throw new IOException(ftpClient.getReplyString());
+                return new FtpOutputStream(outputStream, ftpClient, getConnectionPool());
+            }
+        }, true);
+    }
+
+    /**
+     * Lets the server calculate the SHA-1 checksum of the file with the HASH or XSHA1 extension,
+     * so the content doesn't have to be downloaded.
+     *
+     * @param path Path
+     * @return Checksum or null if the server supports neither extension
+     */
+    public byte[] getChecksum(final String path) {
+        return getChecksum(path, ChecksumUtils.SHA1);
+    }
+
+    /**
+     * Lets the server calculate the SHA-1, SHA-256 or MD5 checksum of the file with the HASH extension or
+     * with XSHA1, XSHA256 or XMD5.
+     *
+     * @param path      Path
+     * @param algorithm Digest algorithm
+     * @return Checksum or null if the server supports neither extension for the algorithm
+     */
+    public byte[] getChecksum(final String path, final String algorithm) {
+        final String normalizedAlgorithm = ChecksumUtils.normalizeAlgorithm(algorithm);
+        if (!HASH_ALGORITHMS.containsKey(normalizedAlgorithm))
+            return null;
+        LOGGER.debug("getChecksum (path : {}, algorithm : {})", path, algorithm);
+        return executionHandler(new FtpOperation<byte[]>() {
             @Override
-            public FtpOutputStream call() throws Exception {
-                return new FtpOutputStream(ftpClient.storeFileStream(path), ftpClient);
+            public byte[] execute(FTPClient ftpClient) throws Exception {
+                if (ftpClient.hasFeature("HASH")) {
+                    if (FTPReply.isPositiveCompletion(ftpClient.sendCommand("OPTS", "HASH " + HASH_ALGORITHMS.get(normalizedAlgorithm)))
+                            && FTPReply.isPositiveCompletion(ftpClient.sendCommand("HASH", path)))
+                        return ChecksumUtils.parseChecksum(ftpClient.getReplyString(), algorithm);
+                } else {
+                    String command = "X" + normalizedAlgorithm;
+                    if (ftpClient.hasFeature(command) && FTPReply.isPositiveCompletion(ftpClient.sendCommand(command, path)))
+                        return ChecksumUtils.parseChecksum(ftpClient.getReplyString(), algorithm);
+                }
+                return null;
             }
         });
     }
@@ -204,14 +270,17 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     @Override
     public FTPFile getFileInfo(final String path) {
         LOGGER.debug("getFileInfo (path: {})", path);
-        return executionHandler(new Callable<FTPFile>() {
+        return executionHandler(new FtpOperation<FTPFile>() {
             @Override
-            public FTPFile call() throws Exception {
+            public FTPFile execute(FTPClient ftpClient) throws Exception {
                 if ("/".equals(path)) {
                     FTPFile rootFile = new FTPFile();
                     rootFile.setName("/");
                     rootFile.setTimestamp(GregorianCalendar.getInstance());
                     return rootFile;
+                } else if (isMachineListingSupported(ftpClient)) {
+                    FTPFile ftpFile = ftpClient.mlistFile(path);
+                    return ftpFile != null ? ftpFile : new FTPFile();
                 } else {
                     String lastPathPart = UrlUtils.getLastPathPart(path);
                     String parentPath = UrlUtils.getParentPath(path);
@@ -231,9 +300,17 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     public List<FTPFile> list(final String path) {
         LOGGER.debug("list (path: {})", path);
 
-        return executionHandler(new Callable<List<FTPFile>>() {
+        return executionHandler(new FtpOperation<List<FTPFile>>() {
             @Override
-            public List<FTPFile> call() throws Exception {
+            public List<FTPFile> execute(FTPClient ftpClient) throws Exception {
+                if (isMachineListingSupported(ftpClient)) {
+                    FTPFile[] ftpFiles = ftpClient.mlistDir(path);
+                    if (FTPReply.isPositiveCompletion(ftpClient.getReplyCode()))
+                        return removeDirectoryEntries(ftpFiles);
+                    LOGGER.warn("Unexpected Reply (Code: {}, Text: '{}'", ftpClient.getReplyCode(), ftpClient.getReplyString());
+                    return Collections.emptyList();
+                }
+
                 int replyCode = ftpClient.cwd(path);
                 String replyText = ftpClient.getReplyString();
 
@@ -247,6 +324,38 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
         });
     }
 
+    /**
+     * Lists a directory lazily with MLSD. The entries are parsed while they are read from the data connection,
+     * so the directory doesn't have to fit into memory. Servers without MLSD are listed at once.
+     * The stream must be closed to complete the command and return the connection, if it isn't consumed completely.
+     *
+     * @param path Path of the directory
+     * @return Stream of entries
+     */
+    public Stream<FTPFile> stream(final String path) {
+        LOGGER.debug("stream (path: {})", path);
+
+        Stream<FTPFile> stream = executionHandler(new FtpOperation<Stream<FTPFile>>() {
+            @Override
+            public Stream<FTPFile> execute(FTPClient ftpClient) throws Exception {
+                if (ftpClient instanceof ListingFTPClient && isMachineListingSupported(ftpClient)) {
+                    Socket socket = ((ListingFTPClient) ftpClient).openDataConnection(FTPCmd.MLSD.getCommand(), path);
+                    if (socket != null) {
+                        FtpListingIterator iterator = new FtpListingIterator(socket, ftpClient, getConnectionPool());
+                        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                                .onClose(iterator::close);
+                    }
+                    LOGGER.warn("Unexpected Reply (Code: {}, Text: '{}'", ftpClient.getReplyCode(), ftpClient.getReplyString());
+                    getConnectionPool().release(ftpClient);
+                    return Stream.empty();
+                }
+                getConnectionPool().release(ftpClient);
+                return null;
+            }
+        }, true);
+        return stream != null ? stream : list(path).stream();
+    }
+
     @Override
     public void setLastModifiedTime(String path, FileTime time) {
         throw new OperationNotSupportedException();
@@ -269,42 +378,20 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
 
     @Override
     public void dispose() {
-        disconnect();
-        ftpClient = null;
-    }
-
-    private void checkConnection() {
-        if (!ftpClient.isConnected())
-            connect();
-    }
-
-    private void login() {
-        LOGGER.debug("login");
-        executionHandler(new Callable<Void>() {
-            @Override
-            public Void call() throws Exception {
-                ftpClient.login(configuration.getUsername(), String.valueOf(configuration.getPassword()));
-                return null;
-            }
-        });
-    }
-
-    private void setFileType(final int fileType) {
-        LOGGER.debug("setFileType (fileType: {})", fileType);
-        executionHandler(new Callable<Void>() {
-            @Override
-            public Void call() throws Exception {
-                ftpClient.setFileType(fileType);
-                return null;
-            }
-        });
+        ConnectionPool<FTPClient> pool;
+        synchronized (this) {
+            pool = connectionPool;
+            connectionPool = null;
+        }
+        if (pool != null)
+            pool.close();
     }
 
     public String getPhysicalRootPath() {
         if (physicalRootPath == null) {
-            physicalRootPath = executionHandler(new Callable<String>() {
+            physicalRootPath = executionHandler(new FtpOperation<String>() {
                 @Override
-                public String call() throws Exception {
+                public String execute(FTPClient ftpClient) throws Exception {
                     ftpClient.changeWorkingDirectory("/");
                     for (FTPFile ftpFile : ftpClient.listFiles()) {
                         if (ftpFile.isSymbolicLink() && ".".equals(ftpFile.getLink())) {
@@ -318,22 +405,81 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
         return physicalRootPath;
     }
 
-    private <T> T executionHandler(Callable<T> action) {
+    /**
+     * Checks once per client, if the server announces MLST in its FEAT reply. MLST and MLSD return
+     * the facts of a file in a machine readable format with exact UTC timestamps, so a file can be looked up
+     * with a single command instead of listing its parent directory.
+     */
+    private boolean isMachineListingSupported(FTPClient ftpClient) throws IOException {
+        Boolean supported = machineListingSupported;
+        if (supported == null) {
+            supported = ftpClient.hasFeature("MLST");
+            machineListingSupported = supported;
+            LOGGER.debug("MLST supported: {}", supported);
+        }
+        return supported;
+    }
+
+    /**
+     * Removes the entries of the listed directory and its parent from a MLSD listing.
+     *
+     * @param ftpFiles Entries parsed from a MLSD listing
+     * @return Entries of the files in the directory
+     */
+    static List<FTPFile> removeDirectoryEntries(FTPFile[] ftpFiles) {
+        List<FTPFile> ftpFileList = new ArrayList<>(ftpFiles.length);
+        for (FTPFile ftpFile : ftpFiles) {
+            if (ftpFile != null && !isDirectoryEntry(ftpFile))
+                ftpFileList.add(ftpFile);
+        }
+        return ftpFileList;
+    }
+
+    /**
+     * @param ftpFile Entry parsed from a MLSD listing
+     * @return True if the entry is the listed directory or its parent
+     */
+    static boolean isDirectoryEntry(FTPFile ftpFile) {
+        if (".".equals(ftpFile.getName()) || "..".equals(ftpFile.getName()))
+            return true;
+        String rawListing = ftpFile.getRawListing() != null ? ftpFile.getRawListing().toLowerCase() : "";
+        return rawListing.contains("type=cdir;") || rawListing.contains("type=pdir;");
+    }
+
+    private <T> T executionHandler(FtpOperation<T> action) {
+        return executionHandler(action, false);
+    }
+
+    /**
+     * Borrows a control connection from the pool for the action. A connection closed by the server is
+     * discarded and the action is retried with another connection.
+     *
+     * @param action         Action
+     * @param keepConnection If true, the connection isn't returned, because it's used by the result of the action
+     * @return Result of the action
+     */
+    private <T> T executionHandler(FtpOperation<T> action, boolean keepConnection) {
+        ConnectionPool<FTPClient> pool = getConnectionPool();
         int connectionAttempts = MAX_CONNECTION_ATTEMPTS;
         while (connectionAttempts > 0) {
+            FTPClient ftpClient = pool.borrow();
+            boolean releaseConnection = true;
             try {
-                checkConnection();
-                return action.call();
+                T result = action.execute(ftpClient);
+                releaseConnection = !keepConnection;
+                return result;
             } catch (FTPConnectionClosedException e) {
                 LOGGER.debug("Exception", e);
-                if (reconnect) {
-                    LOGGER.warn("Server closed connection. Reconnecting.");
-                    connectionAttempts--;
-                    connect();
-                }
+                LOGGER.warn("Server closed connection. Reconnecting.");
+                connectionAttempts--;
+                releaseConnection = false;
+                pool.invalidate(ftpClient);
             } catch (Exception e) {
                 LOGGER.debug("Exception", e);
                 throw new VirtualFileException(e);
+            } finally {
+                if (releaseConnection)
+                    pool.release(ftpClient);
             }
         }
         return null;
@@ -347,14 +493,67 @@ public class FtpClient implements Client<FTPFile, FtpClientConfiguration> {
     @Override
     public String getCurrentDirectory() {
         LOGGER.debug("Get current directory");
-        String currentDirectory = executionHandler(new Callable<String>() {
+        String currentDirectory = executionHandler(new FtpOperation<String>() {
 
             @Override
-            public String call() throws Exception {
+            public String execute(FTPClient ftpClient) throws Exception {
                 return ftpClient.printWorkingDirectory();
             }
         });
         LOGGER.debug("Returns: '{}'", currentDirectory);
         return currentDirectory;
     }
+
+    private interface FtpOperation<T> {
+        T execute(FTPClient ftpClient) throws Exception;
+    }
+
+    /**
+     * Exposes the data connection of commands FTPClient only offers as a complete listing.
+     */
+    private static class ListingFTPClient extends FTPClient {
+        private Socket openDataConnection(String command, String arg) throws IOException {
+            return _openDataConnection_(command, arg);
+        }
+    }
+
+    private class FtpConnectionFactory implements ConnectionPool.ConnectionFactory<FTPClient> {
+
+        @Override
+        public FTPClient create() {
+            LOGGER.info("Connecting to " + configuration.getUsername() + "@" + configuration.getHostname() + ":" + String.valueOf(configuration.getPort()));
+            FTPClient ftpClient = new ListingFTPClient();
+            ftpClient.setControlEncoding("UTF-8");
+            try {
+                ftpClient.connect(configuration.getHostname(), configuration.getPort());
+                if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode()))
+                    throw new IOException(ftpClient.getReplyString());
+                LOGGER.debug("login");
+                ftpClient.login(configuration.getUsername(), String.valueOf(configuration.getPassword()));
+                LOGGER.debug("setFileType (fileType: {})", FTP.BINARY_FILE_TYPE);
+                ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+                return ftpClient;
+            } catch (IOException e) {
+                close(ftpClient);
+                throw new VirtualFileException(e);
+            }
+        }
+
+        @Override
+        public boolean validate(FTPClient ftpClient) {
+            return ftpClient.isConnected();
+        }
+
+        @Override
+        public void close(FTPClient ftpClient) {
+            try {
+                if (ftpClient.isConnected()) {
+                    ftpClient.logout();
+                    ftpClient.disconnect();
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Exception", e);
+            }
+        }
+    }
 }
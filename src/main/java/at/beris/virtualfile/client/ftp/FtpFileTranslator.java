@@ -35,7 +35,7 @@ public final class FtpFileTranslator implements ClientFileTranslator<FtpClient,
                 parentPath = "/" + parentPath.substring(physicalRootPath.length());
         }
 
-        if (ftpFile.isSymbolicLink()) {
+        if (ftpFile.isSymbolicLink() && ftpFile.getLink() != null) {
             String linkPath = ftpFile.getLink() + (ftpFile.getLink().endsWith("/") ? "" : "/");
 
             if (!"".equals(physicalRootPath)) {
@@ -51,7 +51,7 @@ public final class FtpFileTranslator implements ClientFileTranslator<FtpClient,
         model.setFileExists(true);
         model.setSize(ftpFile.getSize());
         model.setCreationTime(null);
-        model.setLastModifiedTime(FileTime.fromMillis(ftpFile.getTimestamp().getTime().getTime()));
+        model.setLastModifiedTime(ftpFile.getTimestamp() != null ? FileTime.fromMillis(ftpFile.getTimestamp().getTimeInMillis()) : null);
         model.setLastAccessTime(null);
         model.setAttributes(createAttributes(ftpFile));
         model.setOwner(new UnixUserPrincipal(ftpFile.getUser(), ftpFile.getGroup()));
@@ -9,6 +9,7 @@
 
 package at.beris.virtualfile.client.ftp;
 
+import at.beris.virtualfile.client.ConnectionPool;
 import at.beris.virtualfile.exception.VirtualFileException;
 import org.apache.commons.net.ftp.FTPClient;
 
@@ -18,10 +19,17 @@ import java.io.InputStream;
 public class FtpInputStream extends InputStream {
     private InputStream inputStream;
     private FTPClient ftpClient;
+    private ConnectionPool<FTPClient> connectionPool;
 
-    public FtpInputStream(InputStream inputStream, FTPClient ftpClient) {
+    /**
+     * @param inputStream      Stream of the data connection
+     * @param ftpClient      Control connection borrowed from the pool
+     * @param connectionPool Pool the control connection is returned to when the stream is closed
+     */
+    public FtpInputStream(InputStream inputStream, FTPClient ftpClient, ConnectionPool<FTPClient> connectionPool) {
         this.inputStream = inputStream;
         this.ftpClient = ftpClient;
+        this.connectionPool = connectionPool;
     }
 
     @Override
@@ -72,11 +80,17 @@ public class FtpInputStream extends InputStream {
 
     @Override
     public void close() {
+        if (ftpClient == null)
+            return;
+
+        FTPClient currentFtpClient = ftpClient;
+        ftpClient = null;
         try {
             inputStream.close();
-            ftpClient.completePendingCommand();
-            ftpClient = null;
+            currentFtpClient.completePendingCommand();
+            connectionPool.release(currentFtpClient);
         } catch (IOException e) {
+            connectionPool.invalidate(currentFtpClient);
             throw new VirtualFileException(e);
         }
     }
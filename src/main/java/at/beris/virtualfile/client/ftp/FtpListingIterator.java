@@ -0,0 +1,116 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.client.ftp;
+
+import at.beris.virtualfile.client.ConnectionPool;
+import at.beris.virtualfile.exception.VirtualFileException;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Parses the entries of a MLSD listing one line at a time while they are read from the data connection.
+ * The control connection is returned to the pool when the listing is read completely or the iterator is closed.
+ */
+public class FtpListingIterator implements Iterator<FTPFile>, Closeable {
+    private Socket socket;
+    private BufferedReader reader;
+    private FTPClient ftpClient;
+    private ConnectionPool<FTPClient> connectionPool;
+    private FTPFile next;
+
+    /**
+     * @param socket         Data connection of the MLSD command
+     * @param ftpClient      Control connection borrowed from the pool
+     * @param connectionPool Pool the control connection is returned to when the listing is closed
+     */
+    public FtpListingIterator(Socket socket, FTPClient ftpClient, ConnectionPool<FTPClient> connectionPool) throws IOException {
+        this(new InputStreamReader(socket.getInputStream(), ftpClient.getControlEncoding()), ftpClient, connectionPool);
+        this.socket = socket;
+    }
+
+    FtpListingIterator(Reader reader, FTPClient ftpClient, ConnectionPool<FTPClient> connectionPool) {
+        this.reader = new BufferedReader(reader);
+        this.ftpClient = ftpClient;
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null)
+            return true;
+        if (ftpClient == null)
+            return false;
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                FTPFile ftpFile = MLSxEntryParser.parseEntry(line);
+                if (ftpFile != null && !FtpClient.isDirectoryEntry(ftpFile)) {
+                    next = ftpFile;
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            FTPClient currentFtpClient = ftpClient;
+            ftpClient = null;
+            closeReader();
+            connectionPool.invalidate(currentFtpClient);
+            throw new VirtualFileException(e);
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public FTPFile next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        FTPFile ftpFile = next;
+        next = null;
+        return ftpFile;
+    }
+
+    @Override
+    public void close() {
+        if (ftpClient == null)
+            return;
+
+        FTPClient currentFtpClient = ftpClient;
+        ftpClient = null;
+        try {
+            closeReader();
+            currentFtpClient.completePendingCommand();
+            connectionPool.release(currentFtpClient);
+        } catch (IOException e) {
+            connectionPool.invalidate(currentFtpClient);
+            throw new VirtualFileException(e);
+        }
+    }
+
+    private void closeReader() {
+        try {
+            reader.close();
+            if (socket != null)
+                socket.close();
+        } catch (IOException e) {
+            // the listing is finished or aborted anyway
+        }
+    }
+}
@@ -9,6 +9,7 @@
 
 package at.beris.virtualfile.client.ftp;
 
+import at.beris.virtualfile.client.ConnectionPool;
 import at.beris.virtualfile.exception.VirtualFileException;
 import org.apache.commons.net.ftp.FTPClient;
 
@@ -18,10 +19,17 @@ import java.io.OutputStream;
 public class FtpOutputStream extends OutputStream {
     private OutputStream outputStream;
     private FTPClient ftpClient;
+    private ConnectionPool<FTPClient> connectionPool;
 
-    public FtpOutputStream(OutputStream outputStream, FTPClient ftpClient) {
+    /**
+     * @param outputStream     Stream of the data connection
+     * @param ftpClient      Control connection borrowed from the pool
+     * @param connectionPool Pool the control connection is returned to when the stream is closed
+     */
+    public FtpOutputStream(OutputStream outputStream, FTPClient ftpClient, ConnectionPool<FTPClient> connectionPool) {
         this.outputStream = outputStream;
         this.ftpClient = ftpClient;
+        this.connectionPool = connectionPool;
     }
 
     @Override
@@ -62,11 +70,17 @@ public class FtpOutputStream extends OutputStream {
 
     @Override
     public void close() {
+        if (ftpClient == null)
+            return;
+
+        FTPClient currentFtpClient = ftpClient;
+        ftpClient = null;
         try {
             outputStream.close();
-            ftpClient.completePendingCommand();
-            ftpClient = null;
+            currentFtpClient.completePendingCommand();
+            connectionPool.release(currentFtpClient);
         } catch (IOException e) {
+            connectionPool.invalidate(currentFtpClient);
             throw new VirtualFileException(e);
         }
     }
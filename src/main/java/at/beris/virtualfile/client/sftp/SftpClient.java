@@ -13,30 +13,51 @@ import at.beris.virtualfile.UnixGroupPrincipal;
 import at.beris.virtualfile.UnixUserPrincipal;
 import at.beris.virtualfile.attribute.FileAttribute;
 import at.beris.virtualfile.client.Client;
+import at.beris.virtualfile.client.ConnectionPool;
 import at.beris.virtualfile.exception.Message;
 import at.beris.virtualfile.exception.VirtualFileException;
+import at.beris.virtualfile.util.BlockingIterator;
+import at.beris.virtualfile.util.ChecksumUtils;
 import at.beris.virtualfile.util.StringUtils;
 import com.jcraft.jsch.*;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SftpClient implements Client<SftpFile, SftpClientConfiguration> {
     private final static org.slf4j.Logger LOGGER = LoggerFactory.getLogger(SftpClient.class);
 
+    private final static int COMMAND_NOT_FOUND_EXIT_STATUS = 127;
+    private final static int LISTING_QUEUE_CAPACITY = 256;
+    private final static String EXIT_STATUS_PREFIX = "exit-status:";
+    private final static Map<String, String> CHECKSUM_COMMANDS = new HashMap<>();
+
+    static {
+        CHECKSUM_COMMANDS.put(ChecksumUtils.normalizeAlgorithm(ChecksumUtils.SHA1), "sha1sum");
+        CHECKSUM_COMMANDS.put(ChecksumUtils.normalizeAlgorithm(ChecksumUtils.SHA256), "sha256sum");
+        CHECKSUM_COMMANDS.put(ChecksumUtils.normalizeAlgorithm(ChecksumUtils.MD5), "md5sum");
+    }
+
     private JSch jsch;
-    private Session session;
-    private ChannelSftp sftpChannel;
-    private boolean isInitialized = false;
+    private ConnectionPool<SftpConnection> connectionPool;
+    private final Set<String> unsupportedChecksumCommands = ConcurrentHashMap.newKeySet();
+    private volatile boolean execChannelUnsupported;
 
     private SftpClientConfiguration configuration;
 
@@ -44,211 +65,288 @@ public class SftpClient implements Client<SftpFile, SftpClientConfiguration> {
         this.configuration = configuration;
     }
 
-    private void init() {
-        LOGGER.debug("init");
-        java.util.Properties sessionConfig = new java.util.Properties();
-        sessionConfig.put("StrictHostKeyChecking", configuration.isStrictHostKeyChecking() ? "yes" : "no");
-        sessionConfig.put("PreferredAuthentications", configuration.getAuthenticationType().getValue());
-
-        jsch = new JSch();
-
-        try {
-            if (configuration.isStrictHostKeyChecking() && !StringUtils.isBlank(configuration.getKnownHostsFile()))
-                jsch.setKnownHosts(configuration.getKnownHostsFile());
-
-            if (configuration.getAuthenticationType() == AuthenticationType.PUBLIC_KEY && !StringUtils.isBlank(String.valueOf(configuration.getPrivateKeyFile())))
-                jsch.addIdentity(configuration.getPrivateKeyFile());
-
-            session = jsch.getSession(configuration.getUsername(), configuration.getHostname(), configuration.getPort());
-            session.setConfig(sessionConfig);
-            if (configuration.getAuthenticationType() == AuthenticationType.PASSWORD) {
-//                session.setPassword(CharUtils.charArrayToByteArray(configuration.getPassword()));
-                //TODO session.setPassword(byte[]) doesn'T seem to work
-                //TODO not sure if CharUtils.charArrayToByteArray is working correct (contains additional zeros)
-                session.setPassword(new String(configuration.getPassword()));
+    private synchronized JSch getJSch() {
+        if (jsch == null) {
+            LOGGER.debug("init");
+            JSch newJSch = new JSch();
+            try {
+                if (configuration.isStrictHostKeyChecking() && !StringUtils.isBlank(configuration.getKnownHostsFile()))
+                    newJSch.setKnownHosts(configuration.getKnownHostsFile());
+
+                if (configuration.getAuthenticationType() == AuthenticationType.PUBLIC_KEY && !StringUtils.isBlank(String.valueOf(configuration.getPrivateKeyFile())))
+                    newJSch.addIdentity(configuration.getPrivateKeyFile());
+            } catch (JSchException e) {
+                handleJSchException(e, null);
             }
-            session.setTimeout(configuration.getTimeout() * 1000);
-            isInitialized = true;
-        } catch (JSchException e) {
-            handleJSchException(e, null);
+            jsch = newJSch;
         }
+        return jsch;
+    }
+
+    private synchronized ConnectionPool<SftpConnection> getConnectionPool() {
+        if (connectionPool == null)
+            connectionPool = new ConnectionPool<>(new SftpConnectionFactory(), configuration.getMaxConnections(),
+                    configuration.getConnectionIdleTimeout(), configuration.getTimeout());
+        return connectionPool;
     }
 
     @Override
     public void connect() {
-        LOGGER.info("Connecting to " + configuration.getUsername() + "@" + configuration.getHostname() + ":" + String.valueOf(configuration.getPort()));
-        try {
-            if (!isInitialized)
-                init();
-            session.connect();
-            HostKey hostkey = session.getHostKey();
-            LOGGER.info("HostKey: " + hostkey.getHost() + " " + hostkey.getType() + " " + hostkey.getFingerPrint(jsch));
-            sftpChannel = (ChannelSftp) session.openChannel("sftp");
-            sftpChannel.connect();
-        } catch (JSchException e) {
-            handleJSchException(e, null);
-        }
+        getConnectionPool().release(getConnectionPool().borrow());
     }
 
     @Override
     public void disconnect() {
         LOGGER.info("Disconnecting from " + configuration.getUsername() + "@" + configuration.getHostname() + ":" + String.valueOf(configuration.getPort()));
-        if (sftpChannel != null)
-            sftpChannel.disconnect();
-        if (session != null)
-            session.disconnect();
+        ConnectionPool<SftpConnection> pool;
+        synchronized (this) {
+            pool = connectionPool;
+        }
+        if (pool != null)
+            pool.clear();
     }
 
     @Override
     public void deleteFile(String path) {
         LOGGER.debug("deleteFile (path : {})", path);
-        try {
-            checkChannel();
-            sftpChannel.rm(path);
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+        execute(channel -> {
+            channel.rm(path);
+            return null;
+        });
     }
 
     @Override
     public void createFile(String path) {
         LOGGER.debug("createFile (path : {})", path);
-        try {
-            checkChannel();
-            sftpChannel.put(new ByteArrayInputStream(new byte[]{}), path);
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+        execute(channel -> {
+            channel.put(new ByteArrayInputStream(new byte[]{}), path);
+            return null;
+        });
     }
 
     @Override
     public boolean exists(String path) {
         LOGGER.debug("exists (path : {})", path);
-        try {
-            checkChannel();
-            sftpChannel.stat(path);
-        } catch (SftpException e) {
-            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE)
-                return false;
-            else
-                handleSftpException(e);
-        }
-        return true;
+        return execute(channel -> {
+            try {
+                channel.stat(path);
+            } catch (SftpException e) {
+                if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE)
+                    return false;
+                throw e;
+            }
+            return true;
+        }, true);
     }
 
     @Override
     public void createDirectory(String path) {
         LOGGER.debug("createDirectory (path : {})", path);
-        try {
-            checkChannel();
-            sftpChannel.mkdir(path);
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+        execute(channel -> {
+            channel.mkdir(path);
+            return null;
+        });
     }
 
     @Override
     public void deleteDirectory(String path) {
         LOGGER.debug("deleteDirectory (path : {})", path);
-        try {
-            checkChannel();
-            if (isDir(path)) {
-                sftpChannel.cd(path);
-                Vector<ChannelSftp.LsEntry> entries = sftpChannel.ls(".");
-                for (ChannelSftp.LsEntry entry : entries) {
-                    if (entry.getFilename().equals(".") || entry.getFilename().equals(".."))
-                        continue;
-                    deleteDirectory(path + entry.getFilename() + (isDir(path + entry.getFilename()) ? "/" : ""));
-                }
-                sftpChannel.cd("..");
-                sftpChannel.rmdir(path);
-            } else {
-                sftpChannel.rm(path);
-            }
-
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+        execute(channel -> {
+            deleteDirectory(channel, path);
+            return null;
+        });
     }
 
     @Override
     public InputStream getInputStream(String path) {
-        LOGGER.debug("getInputStream (path : {})", path);
-        InputStream inputStream = null;
+        return getInputStream(path, 0);
+    }
+
+    /**
+     * Returns an InputStream reading the file from the offset on. Each stream uses its own pooled channel,
+     * so several parts of a file can be read at the same time.
+     *
+     * @param path   Path
+     * @param offset Number of bytes to skip
+     * @return InputStream
+     */
+    public InputStream getInputStream(String path, long offset) {
+        LOGGER.debug("getInputStream (path : {}, offset : {})", path, offset);
+        SftpConnection connection = getConnectionPool().borrow();
         try {
-            checkChannel();
-            inputStream = sftpChannel.get(path);
-        } catch (SftpException e) {
-            handleSftpException(e);
+            return new SftpInputStream(channelOf(connection).get(path, null, offset), connection);
+        } catch (SftpException | RuntimeException e) {
+            releaseConnection(connection);
+            if (e instanceof SftpException) {
+                handleSftpException((SftpException) e);
+                return null;
+            }
+            throw (RuntimeException) e;
         }
-        return inputStream;
     }
 
     @Override
     public OutputStream getOutputStream(String path) {
-        LOGGER.debug("getOutputStream (path : {})", path);
-        OutputStream outputStream = null;
+        return getOutputStream(path, false);
+    }
+
+    /**
+     * Returns an OutputStream writing to the file.
+     *
+     * @param path   Path
+     * @param append Continue after the existing content of the file in RESUME mode instead of replacing it
+     * @return OutputStream
+     */
+    public OutputStream getOutputStream(String path, boolean append) {
+        LOGGER.debug("getOutputStream (path : {}, append : {})", path, append);
+        SftpConnection connection = getConnectionPool().borrow();
         try {
-            checkChannel();
-            outputStream = sftpChannel.put(path);
-        } catch (SftpException e) {
-            handleSftpException(e);
+            return new SftpOutputStream(channelOf(connection).put(path, append ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE), connection);
+        } catch (SftpException | RuntimeException e) {
+            releaseConnection(connection);
+            if (e instanceof SftpException) {
+                handleSftpException((SftpException) e);
+                return null;
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Lets the server calculate the SHA-1 checksum of the file by running sha1sum on an exec channel,
+     * so the content doesn't have to be downloaded.
+     *
+     * @param path Path
+     * @return Checksum or null if the server can't calculate it
+     */
+    public byte[] getChecksum(String path) {
+        return getChecksum(path, ChecksumUtils.SHA1);
+    }
+
+    /**
+     * Lets the server calculate the checksum of the file by running sha1sum, sha256sum or md5sum on an exec
+     * channel. The exit status is printed after the checksum, so it has arrived when the output ends. Missing
+     * commands and servers refusing exec channels are remembered, so they aren't tried again.
+     *
+     * @param path      Path
+     * @param algorithm Digest algorithm
+     * @return Checksum or null if the server can't calculate it
+     */
+    public byte[] getChecksum(String path, String algorithm) {
+        String command = CHECKSUM_COMMANDS.get(ChecksumUtils.normalizeAlgorithm(algorithm));
+        if (command == null || execChannelUnsupported || unsupportedChecksumCommands.contains(command))
+            return null;
+        LOGGER.debug("getChecksum (path : {}, algorithm : {})", path, algorithm);
+
+        SftpConnection connection = getConnectionPool().borrow();
+        ChannelExec channel = null;
+        try {
+            InputStream inputStream;
+            try {
+                channel = (ChannelExec) connection.session.openChannel("exec");
+                channel.setCommand(command + " -b -- '" + path.replace("'", "'\\''") + "'; echo \"" + EXIT_STATUS_PREFIX + "$?\"");
+                channel.setInputStream(null);
+                inputStream = channel.getInputStream();
+                channel.connect();
+            } catch (JSchException e) {
+                // a server that only allows SFTP refuses exec channels, which won't change for the session
+                if (connection.session.isConnected()) {
+                    LOGGER.info("Exec channels aren't available on {}", configuration.getHostname());
+                    execChannelUnsupported = true;
+                }
+                throw e;
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1)
+                output.write(buffer, 0, bytesRead);
+
+            String outputString = output.toString("UTF-8");
+            int exitStatusIndex = outputString.lastIndexOf(EXIT_STATUS_PREFIX);
+            if (exitStatusIndex < 0)
+                return null;
+            int exitStatus = Integer.parseInt(outputString.substring(exitStatusIndex + EXIT_STATUS_PREFIX.length()).trim());
+            if (exitStatus == 0)
+                return ChecksumUtils.parseChecksum(outputString.substring(0, exitStatusIndex), algorithm);
+            if (exitStatus == COMMAND_NOT_FOUND_EXIT_STATUS) {
+                LOGGER.info("{} isn't available on {}", command, configuration.getHostname());
+                unsupportedChecksumCommands.add(command);
+            }
+            return null;
+        } catch (JSchException | IOException | NumberFormatException e) {
+            LOGGER.debug("Server side checksum failed", e);
+            return null;
+        } finally {
+            if (channel != null)
+                channel.disconnect();
+            releaseConnection(connection);
         }
-        return outputStream;
     }
 
     @Override
     public SftpFile getFileInfo(String path) {
         LOGGER.debug("getFileInfo (path : {})", path);
-        SftpFile fileInfo = new SftpFile();
-        try {
-            checkChannel();
-            SftpATTRS sftpATTRS = sftpChannel.stat(path);
-            fileInfo.setPath(path + (sftpATTRS.isDir() && !path.endsWith("/") ? "/" : ""));
-            fileInfo.setSftpATTRS(sftpATTRS);
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
-        return fileInfo;
+        SftpFile fileInfo = execute(channel -> getFileInfo(channel, path));
+        return fileInfo != null ? fileInfo : new SftpFile();
     }
 
     @Override
     public List<SftpFile> list(String path) {
         LOGGER.debug("list (path : {})", path);
-        List<SftpFile> IFileInfoList = new ArrayList<>();
+        return execute(channel -> list(channel, path), new ArrayList<>());
+    }
 
-        try {
-            checkChannel();
-            Vector<ChannelSftp.LsEntry> entries = sftpChannel.ls(path);
-            for (ChannelSftp.LsEntry entry : entries) {
-                if (entry.getFilename().equals(".") || entry.getFilename().equals(".."))
-                    continue;
-                IFileInfoList.add(getFileInfo(path + entry.getFilename()));
+    /**
+     * Lists a directory lazily. The entries are read by a background thread on its own pooled connection and
+     * handed over through a bounded queue, so the directory doesn't have to fit into memory. The stream must be
+     * closed to release the connection, if it isn't consumed completely.
+     *
+     * @param path Path of the directory
+     * @return Stream of file infos
+     */
+    public Stream<SftpFile> stream(String path) {
+        LOGGER.debug("stream (path : {})", path);
+        SftpConnection connection = getConnectionPool().borrow();
+        BlockingIterator<SftpFile> iterator = new BlockingIterator<>(LISTING_QUEUE_CAPACITY);
+        Thread thread = new Thread(() -> {
+            RuntimeException error = null;
+            try {
+                list(channelOf(connection), path, iterator::offer);
+            } catch (SftpException e) {
+                try {
+                    handleSftpException(e);
+                } catch (VirtualFileException handledException) {
+                    error = handledException;
+                }
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                releaseConnection(connection);
+                iterator.finish(error);
             }
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
-
-        return IFileInfoList;
+        }, "VirtualFile-Listing");
+        thread.setDaemon(true);
+        thread.start();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(iterator::close);
     }
 
     @Override
     public void setLastModifiedTime(String path, FileTime time) {
         LOGGER.debug("setLastModifiedTime (path : {}, time: {})", path, time);
-        try {
-            checkChannel();
-            sftpChannel.setMtime(path, (int) (time.toMillis() / 1000));
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+        execute(channel -> {
+            channel.setMtime(path, (int) (time.toMillis() / 1000));
+            return null;
+        });
     }
 
     @Override
     public void setAttributes(String path, Set<FileAttribute> attributes) {
         LOGGER.debug("setAttributes (path : {}, attributes: {})", path, attributes);
-        try {
-            checkChannel();
-            SftpATTRS sftpATTRS = sftpChannel.stat(path);
+        execute(channel -> {
+            SftpATTRS sftpATTRS = channel.stat(path);
 
             int permissions = 0;
             for (FileAttribute attribute : attributes) {
@@ -256,46 +354,45 @@ public class SftpClient implements Client<SftpFile, SftpClientConfiguration> {
             }
 
             sftpATTRS.setPERMISSIONS(permissions);
-            sftpChannel.setStat(path, sftpATTRS);
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+            channel.setStat(path, sftpATTRS);
+            return null;
+        });
     }
 
     @Override
     public void setOwner(String path, UserPrincipal owner) {
         LOGGER.debug("setOwner (path : {}, owner: {})", path, owner);
-        try {
-            UnixUserPrincipal user = (UnixUserPrincipal) owner;
-            checkChannel();
-            SftpATTRS sftpATTRS = sftpChannel.stat(path);
+        UnixUserPrincipal user = (UnixUserPrincipal) owner;
+        execute(channel -> {
+            SftpATTRS sftpATTRS = channel.stat(path);
             sftpATTRS.setUIDGID(user.getUid(), sftpATTRS.getGId());
-            sftpChannel.setStat(path, sftpATTRS);
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+            channel.setStat(path, sftpATTRS);
+            return null;
+        });
     }
 
     @Override
     public void setGroup(String path, GroupPrincipal group) {
         LOGGER.debug("setGroup (path : {}, group: {})", path, group);
-        try {
-            UnixGroupPrincipal unixGroup = (UnixGroupPrincipal) group;
-            checkChannel();
-            SftpATTRS sftpATTRS = sftpChannel.stat(path);
+        UnixGroupPrincipal unixGroup = (UnixGroupPrincipal) group;
+        execute(channel -> {
+            SftpATTRS sftpATTRS = channel.stat(path);
             sftpATTRS.setUIDGID(sftpATTRS.getUId(), unixGroup.getGid());
-            sftpChannel.setStat(path, sftpATTRS);
-        } catch (SftpException e) {
-            handleSftpException(e);
-        }
+            channel.setStat(path, sftpATTRS);
+            return null;
+        });
     }
 
     @Override
     public void dispose() {
-        disconnect();
-        sftpChannel = null;
-        session = null;
-        jsch = null;
+        ConnectionPool<SftpConnection> pool;
+        synchronized (this) {
+            pool = connectionPool;
+            connectionPool = null;
+            jsch = null;
+        }
+        if (pool != null)
+            pool.close();
     }
 
     @Override
@@ -306,29 +403,130 @@ public class SftpClient implements Client<SftpFile, SftpClientConfiguration> {
     @Override
     public String getCurrentDirectory() {
         LOGGER.debug("Get current directory");
-        String currentDirectory = StringUtils.EMPTY_STRING;
-        try {
-            checkChannel();
-            currentDirectory = sftpChannel.pwd();
+        String currentDirectory = execute(ChannelSftp::pwd);
+        if (currentDirectory == null)
+            currentDirectory = StringUtils.EMPTY_STRING;
+        LOGGER.debug("Returns: '{}'", currentDirectory);
+        return currentDirectory;
+    }
 
+    private <R> R execute(SftpOperation<R> operation) {
+        return execute(operation, null);
+    }
+
+    /**
+     * Borrows a connection from the pool for the operation and returns it afterwards.
+     *
+     * @param operation    Operation
+     * @param defaultValue Value returned if the operation failed with an ignored error
+     * @return Result of the operation
+     */
+    private <R> R execute(SftpOperation<R> operation, R defaultValue) {
+        SftpConnection connection = getConnectionPool().borrow();
+        try {
+            return operation.execute(channelOf(connection));
         } catch (SftpException e) {
             handleSftpException(e);
+            return defaultValue;
+        } finally {
+            releaseConnection(connection);
         }
-        LOGGER.debug("Returns: '{}'", currentDirectory);
-        return currentDirectory;
     }
 
-    private void checkChannel() {
+    private ChannelSftp channelOf(SftpConnection connection) {
         try {
-            if (session == null)
-                init();
-            if (!session.isConnected())
-                connect();
-            if (sftpChannel.isClosed() || !sftpChannel.isConnected())
-                sftpChannel.connect();
+            if (connection.channel.isClosed() || !connection.channel.isConnected())
+                connection.channel.connect();
         } catch (JSchException e) {
             handleJSchException(e, null);
         }
+        return connection.channel;
+    }
+
+    private void releaseConnection(SftpConnection connection) {
+        if (connection.session.isConnected() && connection.channel.isConnected())
+            getConnectionPool().release(connection);
+        else
+            getConnectionPool().invalidate(connection);
+    }
+
+    private SftpFile getFileInfo(ChannelSftp channel, String path) throws SftpException {
+        return createFileInfo(path, channel.stat(path));
+    }
+
+    /**
+     * Builds the file infos from the attributes that are returned with the directory entries, so the whole
+     * listing needs a single request. Only symbolic links are stat'ed, because their entries contain the
+     * attributes of the link instead of its target.
+     *
+     * @param channel ChannelSftp
+     * @param path    Path of the directory
+     * @return File infos of the entries
+     * @throws SftpException If the directory can't be listed
+     */
+    static List<SftpFile> list(ChannelSftp channel, String path) throws SftpException {
+        Vector<ChannelSftp.LsEntry> entries = channel.ls(path);
+        List<SftpFile> fileInfoList = new ArrayList<>(entries.size());
+        for (ChannelSftp.LsEntry entry : entries) {
+            if (entry.getFilename().equals(".") || entry.getFilename().equals(".."))
+                continue;
+            String entryPath = path + entry.getFilename();
+            SftpATTRS sftpATTRS = entry.getAttrs();
+            fileInfoList.add(createFileInfo(entryPath, sftpATTRS.isLink() ? channel.stat(entryPath) : sftpATTRS));
+        }
+        return fileInfoList;
+    }
+
+    /**
+     * Passes the file infos of the entries to a consumer while they are read. The channel can't send other
+     * requests during the listing, so symbolic links are stat'ed after the other entries.
+     *
+     * @param channel  ChannelSftp
+     * @param path     Path of the directory
+     * @param consumer Consumer returning false to stop the listing
+     * @throws SftpException If the directory can't be listed
+     */
+    static void list(ChannelSftp channel, String path, Predicate<SftpFile> consumer) throws SftpException {
+        List<String> linkPaths = new ArrayList<>();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        channel.ls(path, entry -> {
+            if (entry.getFilename().equals(".") || entry.getFilename().equals(".."))
+                return ChannelSftp.LsEntrySelector.CONTINUE;
+            String entryPath = path + entry.getFilename();
+            if (entry.getAttrs().isLink())
+                linkPaths.add(entryPath);
+            else if (!consumer.test(createFileInfo(entryPath, entry.getAttrs()))) {
+                stopped.set(true);
+                return ChannelSftp.LsEntrySelector.BREAK;
+            }
+            return ChannelSftp.LsEntrySelector.CONTINUE;
+        });
+        for (String linkPath : linkPaths) {
+            if (stopped.get() || !consumer.test(createFileInfo(linkPath, channel.stat(linkPath))))
+                return;
+        }
+    }
+
+    private static SftpFile createFileInfo(String path, SftpATTRS sftpATTRS) {
+        SftpFile fileInfo = new SftpFile();
+        fileInfo.setPath(path + (sftpATTRS.isDir() && !path.endsWith("/") ? "/" : ""));
+        fileInfo.setSftpATTRS(sftpATTRS);
+        return fileInfo;
+    }
+
+    private void deleteDirectory(ChannelSftp channel, String path) throws SftpException {
+        if (channel.stat(path).isDir()) {
+            String directoryPath = path.endsWith("/") ? path : path + "/";
+            Vector<ChannelSftp.LsEntry> entries = channel.ls(directoryPath);
+            for (ChannelSftp.LsEntry entry : entries) {
+                if (entry.getFilename().equals(".") || entry.getFilename().equals(".."))
+                    continue;
+                deleteDirectory(channel, directoryPath + entry.getFilename() + (entry.getAttrs().isDir() ? "/" : ""));
+            }
+            channel.rmdir(path);
+        } else {
+            channel.rm(path);
+        }
     }
 
     private void handleSftpException(SftpException e) {
@@ -344,8 +542,117 @@ public class SftpClient implements Client<SftpFile, SftpClientConfiguration> {
         throw new VirtualFileException(e);
     }
 
-    private boolean isDir(String path) throws SftpException {
-        return sftpChannel.stat(path).isDir();
+    private interface SftpOperation<R> {
+        R execute(ChannelSftp channel) throws SftpException;
+    }
+
+    private static class SftpConnection {
+        private final Session session;
+        private final ChannelSftp channel;
+
+        private SftpConnection(Session session, ChannelSftp channel) {
+            this.session = session;
+            this.channel = channel;
+        }
+    }
+
+    private class SftpConnectionFactory implements ConnectionPool.ConnectionFactory<SftpConnection> {
+
+        @Override
+        public SftpConnection create() {
+            LOGGER.info("Connecting to " + configuration.getUsername() + "@" + configuration.getHostname() + ":" + String.valueOf(configuration.getPort()));
+            java.util.Properties sessionConfig = new java.util.Properties();
+            sessionConfig.put("StrictHostKeyChecking", configuration.isStrictHostKeyChecking() ? "yes" : "no");
+            sessionConfig.put("PreferredAuthentications", configuration.getAuthenticationType().getValue());
+
+            Session session = null;
+            try {
+                JSch currentJSch = getJSch();
+                session = currentJSch.getSession(configuration.getUsername(), configuration.getHostname(), configuration.getPort());
+                session.setConfig(sessionConfig);
+                if (configuration.getAuthenticationType() == AuthenticationType.PASSWORD) {
+//                    session.setPassword(CharUtils.charArrayToByteArray(configuration.getPassword()));
+                    //TODO session.setPassword(byte[]) doesn'T seem to work
+                    //TODO not sure if CharUtils.charArrayToByteArray is working correct (contains additional zeros)
+                    session.setPassword(new String(configuration.getPassword()));
+                }
+                session.setTimeout(configuration.getTimeout() * 1000);
+                session.connect();
+                HostKey hostkey = session.getHostKey();
+                LOGGER.info("HostKey: " + hostkey.getHost() + " " + hostkey.getType() + " " + hostkey.getFingerPrint(currentJSch));
+                ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+                channel.connect();
+                return new SftpConnection(session, channel);
+            } catch (JSchException e) {
+                if (session != null)
+                    session.disconnect();
+                handleJSchException(e, null);
+                return null;
+            }
+        }
+
+        @Override
+        public boolean validate(SftpConnection connection) {
+            return connection.session.isConnected() && connection.channel.isConnected() && !connection.channel.isClosed();
+        }
+
+        @Override
+        public void close(SftpConnection connection) {
+            connection.channel.disconnect();
+            connection.session.disconnect();
+        }
+    }
+
+    /**
+     * Returns the connection to the pool when the stream is closed.
+     */
+    private class SftpInputStream extends FilterInputStream {
+        private final SftpConnection connection;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private SftpInputStream(InputStream inputStream, SftpConnection connection) {
+            super(inputStream);
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    super.close();
+                } finally {
+                    releaseConnection(connection);
+                }
+            }
+        }
     }
 
+    /**
+     * Returns the connection to the pool when the stream is closed.
+     */
+    private class SftpOutputStream extends FilterOutputStream {
+        private final SftpConnection connection;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private SftpOutputStream(OutputStream outputStream, SftpConnection connection) {
+            super(outputStream);
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    super.close();
+                } finally {
+                    releaseConnection(connection);
+                }
+            }
+        }
+    }
 }
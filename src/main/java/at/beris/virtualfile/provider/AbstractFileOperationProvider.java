@@ -9,22 +9,32 @@
 
 package at.beris.virtualfile.provider;
 
+import at.beris.virtualfile.Configuration;
 import at.beris.virtualfile.FileModel;
 import at.beris.virtualfile.UrlFile;
 import at.beris.virtualfile.UrlFileContext;
 import at.beris.virtualfile.exception.OperationNotSupportedException;
+import at.beris.virtualfile.exception.VirtualFileException;
 import at.beris.virtualfile.filter.Filter;
 import at.beris.virtualfile.provider.operation.CompareFileOperation;
+import at.beris.virtualfile.provider.operation.CopyCheckpointStore;
 import at.beris.virtualfile.provider.operation.CopyFileOperation;
+import at.beris.virtualfile.provider.operation.CopyResult;
 import at.beris.virtualfile.provider.operation.FileOperation;
 import at.beris.virtualfile.provider.operation.FileOperationListener;
+import at.beris.virtualfile.util.ChecksumUtils;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Stream;
 
 public abstract class AbstractFileOperationProvider<C> implements FileOperationProvider<C> {
 
+    private static final String CHECKPOINT_DIRECTORY = "checkpoints";
+
     protected static final Set<FileOperation> BASIC_FILE_OPERATIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(FileOperation.values())));
 
     protected UrlFileContext fileContext;
@@ -46,6 +56,39 @@ public abstract class AbstractFileOperationProvider<C> implements FileOperationP
     @Override
     public abstract Byte[] checksum(FileModel model);
 
+    @Override
+    public Byte[] remoteChecksum(FileModel model) {
+        return null;
+    }
+
+    /**
+     * Calculates the checksum from the content of the file.
+     *
+     * @param model FileModel
+     * @return Checksum
+     */
+    protected Byte[] calculateChecksum(FileModel model) {
+        return ChecksumUtils.toObjectArray(checksum(model, ChecksumUtils.SHA1));
+    }
+
+    @Override
+    public byte[] checksum(FileModel model, String algorithm) {
+        try (InputStream inputStream = getInputStream(model)) {
+            return ChecksumUtils.digest(inputStream, algorithm);
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    @Override
+    public byte[] treeChecksum(FileModel model, String algorithm) {
+        try (InputStream inputStream = getInputStream(model)) {
+            return ChecksumUtils.treeDigest(inputStream, algorithm);
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
     @Override
     public abstract void create(FileModel model);
 
@@ -58,12 +101,52 @@ public abstract class AbstractFileOperationProvider<C> implements FileOperationP
     @Override
     public abstract InputStream getInputStream(FileModel model);
 
+    /**
+     * Reads and discards the bytes before the offset. Providers that can start reading at an offset override this.
+     */
+    @Override
+    public InputStream getInputStream(FileModel model, long offset) {
+        InputStream inputStream = getInputStream(model);
+        try {
+            long bytesToSkip = offset;
+            while (bytesToSkip > 0) {
+                long bytesSkipped = inputStream.skip(bytesToSkip);
+                if (bytesSkipped <= 0) {
+                    if (inputStream.read() < 0)
+                        break;
+                    bytesSkipped = 1;
+                }
+                bytesToSkip -= bytesSkipped;
+            }
+            return inputStream;
+        } catch (IOException e) {
+            try {
+                inputStream.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw new VirtualFileException(e);
+        }
+    }
+
     @Override
     public abstract OutputStream getOutputStream(FileModel model);
 
+    @Override
+    public OutputStream getOutputStream(FileModel model, boolean append) {
+        if (append)
+            throw new OperationNotSupportedException();
+        return getOutputStream(model);
+    }
+
     @Override
     public abstract List<UrlFile> list(FileModel model, Filter filter);
 
+    @Override
+    public Stream<UrlFile> stream(FileModel model, Filter filter) {
+        return list(model, filter).stream();
+    }
+
     @Override
     public abstract void updateModel(FileModel model);
 
@@ -88,6 +171,11 @@ public abstract class AbstractFileOperationProvider<C> implements FileOperationP
     @Override
     public abstract void setOwner(FileModel model);
 
+    @Override
+    public int getMaxConnections() {
+        return 1;
+    }
+
     @Override
     public List<UrlFile> extract(FileModel model, UrlFile target) {
         throw new OperationNotSupportedException();
@@ -120,7 +208,23 @@ public abstract class AbstractFileOperationProvider<C> implements FileOperationP
 
     @Override
     public Integer copy(UrlFile sourceFile, UrlFile targetFile, FileOperationListener listener) {
-        return new CopyFileOperation(fileContext, this).execute(sourceFile, targetFile, listener);
+        return createCopyFileOperation().execute(sourceFile, targetFile, listener);
+    }
+
+    @Override
+    public CopyResult copyWithChecksum(UrlFile sourceFile, UrlFile targetFile, String digestAlgorithm, FileOperationListener listener) {
+        CopyFileOperation copyFileOperation = createCopyFileOperation().setDigestAlgorithm(digestAlgorithm);
+        copyFileOperation.execute(sourceFile, targetFile, listener);
+        return copyFileOperation.getCopyResult();
+    }
+
+    private CopyFileOperation createCopyFileOperation() {
+        Configuration configuration = fileContext.getConfiguration();
+        CopyFileOperation copyFileOperation = new CopyFileOperation(fileContext, this)
+                .setThreadPoolSize(configuration.getCopyThreadPoolSize());
+        if (configuration.isResumableCopy())
+            copyFileOperation.setCheckpointStore(new CopyCheckpointStore(Paths.get(configuration.getHomeDirectory(), CHECKPOINT_DIRECTORY)));
+        return copyFileOperation;
     }
 
     @Override
@@ -13,6 +13,7 @@ import at.beris.virtualfile.FileModel;
 import at.beris.virtualfile.UrlFile;
 import at.beris.virtualfile.filter.Filter;
 import at.beris.virtualfile.provider.operation.FileOperation;
+import at.beris.virtualfile.provider.operation.CopyResult;
 import at.beris.virtualfile.provider.operation.FileOperationListener;
 import at.beris.virtualfile.util.DisposableObject;
 
@@ -20,6 +21,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public interface FileOperationProvider<C> extends DisposableObject {
 
@@ -27,6 +29,33 @@ public interface FileOperationProvider<C> extends DisposableObject {
 
     Byte[] checksum(FileModel model);
 
+    /**
+     * Calculates the checksum with a digest algorithm.
+     *
+     * @param model     FileModel
+     * @param algorithm Name of a MessageDigest algorithm or of an algorithm registered in ChecksumUtils
+     * @return Checksum
+     */
+    byte[] checksum(FileModel model, String algorithm);
+
+    /**
+     * Calculates the tree checksum, which is the digest of the digests of the chunks of the file.
+     * The chunks can be hashed in parallel.
+     *
+     * @param model     FileModel
+     * @param algorithm Name of a MessageDigest algorithm or of an algorithm registered in ChecksumUtils
+     * @return Tree checksum
+     */
+    byte[] treeChecksum(FileModel model, String algorithm);
+
+    /**
+     * Returns the checksum calculated by the server, so the content doesn't have to be transferred.
+     *
+     * @param model FileModel
+     * @return Checksum or null if the server can't calculate it
+     */
+    Byte[] remoteChecksum(FileModel model);
+
     /**
      * Creates a new  physical representation
      *
@@ -40,8 +69,26 @@ public interface FileOperationProvider<C> extends DisposableObject {
 
     InputStream getInputStream(FileModel model);
 
+    /**
+     * Returns an InputStream reading the file from the offset on.
+     *
+     * @param model  FileModel
+     * @param offset Number of bytes to skip
+     * @return InputStream
+     */
+    InputStream getInputStream(FileModel model, long offset);
+
     OutputStream getOutputStream(FileModel model);
 
+    /**
+     * Returns an OutputStream writing to the file.
+     *
+     * @param model  FileModel
+     * @param append Append to the existing content of the file instead of replacing it
+     * @return OutputStream
+     */
+    OutputStream getOutputStream(FileModel model, boolean append);
+
     /**
      * List files in this file
      *
@@ -51,6 +98,16 @@ public interface FileOperationProvider<C> extends DisposableObject {
      */
     List<UrlFile> list(FileModel model, Filter filter);
 
+    /**
+     * Lists files in this file lazily. The files are read while the stream is consumed,
+     * so the stream must be closed to release the resources of the listing.
+     *
+     * @param model  FileModel
+     * @param filter Filter
+     * @return Stream of files
+     */
+    Stream<UrlFile> stream(FileModel model, Filter filter);
+
     /**
      * Updates the Model with information from the physical file.
      *
@@ -74,6 +131,11 @@ public interface FileOperationProvider<C> extends DisposableObject {
 
     List<UrlFile> extract(FileModel model, UrlFile target);
 
+    /**
+     * @return Maximum number of operations that can use the site at the same time
+     */
+    int getMaxConnections();
+
     boolean isOperationSupported(FileOperation fileOperation);
 
     Set<FileOperation> supportedOperations();
@@ -90,6 +152,8 @@ public interface FileOperationProvider<C> extends DisposableObject {
 
     Integer copy(UrlFile sourceFile, UrlFile targetFile, FileOperationListener listener);
 
+    CopyResult copyWithChecksum(UrlFile sourceFile, UrlFile targetFile, String digestAlgorithm, FileOperationListener listener);
+
     Boolean compare(UrlFile sourceFile, UrlFile targetFile, FileOperationListener listener);
 
     void dispose();
@@ -0,0 +1,176 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.provider;
+
+import at.beris.virtualfile.UrlFileContext;
+import at.beris.virtualfile.client.Client;
+import at.beris.virtualfile.client.ClientConfiguration;
+import at.beris.virtualfile.client.ftp.FtpClient;
+import at.beris.virtualfile.client.ftp.FtpClientConfiguration;
+import at.beris.virtualfile.client.http.HttpClient;
+import at.beris.virtualfile.client.http.HttpClientConfiguration;
+import at.beris.virtualfile.client.https.HttpsClient;
+import at.beris.virtualfile.client.https.HttpsClientConfiguration;
+import at.beris.virtualfile.client.sftp.SftpClient;
+import at.beris.virtualfile.client.sftp.SftpClientConfiguration;
+import at.beris.virtualfile.exception.Message;
+import at.beris.virtualfile.exception.VirtualFileException;
+import at.beris.virtualfile.protocol.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the FileOperationProviders and their clients for each protocol. The providers are registered
+ * with factories, so no classpath scanning or reflection is needed to create them.
+ * <p>
+ * The factories of a protocol are kept in their own holder class, which is only loaded when the protocol is
+ * used first. The clients of SFTP and FTP need optional libraries, so if one is missing only its protocol
+ * isn't registered.
+ */
+public final class FileOperationProviderRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileOperationProviderRegistry.class);
+
+    private static final Map<Protocol, Supplier<Registration>> REGISTRATION_FACTORIES = new EnumMap<>(Protocol.class);
+    private static final Map<Protocol, Registration> REGISTRATIONS = new EnumMap<>(Protocol.class);
+
+    static {
+        REGISTRATION_FACTORIES.put(Protocol.FILE, () -> LocalRegistration.REGISTRATION);
+        REGISTRATION_FACTORIES.put(Protocol.SFTP, () -> SftpRegistration.REGISTRATION);
+        REGISTRATION_FACTORIES.put(Protocol.FTP, () -> FtpRegistration.REGISTRATION);
+        REGISTRATION_FACTORIES.put(Protocol.HTTP, () -> HttpRegistration.REGISTRATION);
+        REGISTRATION_FACTORIES.put(Protocol.HTTPS, () -> HttpsRegistration.REGISTRATION);
+    }
+
+    private FileOperationProviderRegistry() {
+    }
+
+    /**
+     * Checks if a FileOperationProvider is registered for the protocol.
+     *
+     * @param protocol Protocol
+     * @return True if the protocol is supported
+     */
+    public static boolean isRegistered(Protocol protocol) {
+        return findRegistration(protocol) != null;
+    }
+
+    /**
+     * Creates an empty client configuration for the protocol.
+     *
+     * @param protocol Protocol
+     * @return ClientConfiguration or null if the protocol doesn't need a client
+     */
+    public static ClientConfiguration createClientConfiguration(Protocol protocol) {
+        Registration registration = getRegistration(protocol);
+        return registration.clientConfigurationFactory != null ? registration.clientConfigurationFactory.get() : null;
+    }
+
+    /**
+     * Creates a client for the protocol.
+     *
+     * @param protocol            Protocol
+     * @param clientConfiguration ClientConfiguration created by {@link #createClientConfiguration(Protocol)}
+     * @return Client or null if the protocol doesn't need a client
+     */
+    public static Client createClient(Protocol protocol, ClientConfiguration clientConfiguration) {
+        Registration registration = getRegistration(protocol);
+        return registration.clientFactory != null ? registration.clientFactory.apply(clientConfiguration) : null;
+    }
+
+    /**
+     * Creates a FileOperationProvider for the protocol.
+     *
+     * @param protocol Protocol
+     * @param context  UrlFileContext
+     * @param client   Client created by {@link #createClient(Protocol, ClientConfiguration)}
+     * @return FileOperationProvider
+     */
+    public static FileOperationProvider createFileOperationProvider(Protocol protocol, UrlFileContext context, Client client) {
+        return getRegistration(protocol).fileOperationProviderFactory.apply(context, client);
+    }
+
+    private static Registration getRegistration(Protocol protocol) {
+        Registration registration = findRegistration(protocol);
+        if (registration == null)
+            throw new VirtualFileException(Message.PROTOCOL_NOT_CONFIGURED(protocol));
+        return registration;
+    }
+
+    /**
+     * Loads the holder class of the protocol on first use.
+     *
+     * @return Registration or null if the protocol isn't registered or a library it needs is missing
+     */
+    private static Registration findRegistration(Protocol protocol) {
+        synchronized (REGISTRATIONS) {
+            if (REGISTRATIONS.containsKey(protocol))
+                return REGISTRATIONS.get(protocol);
+
+            Supplier<Registration> registrationFactory = REGISTRATION_FACTORIES.get(protocol);
+            Registration registration = null;
+            try {
+                registration = registrationFactory != null ? registrationFactory.get() : null;
+            } catch (LinkageError e) {
+                LOGGER.info("Protocol {} isn't available, because a library is missing: {}", protocol, e.toString());
+            }
+            REGISTRATIONS.put(protocol, registration);
+            return registration;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends ClientConfiguration, C extends Client> Registration register(Supplier<T> clientConfigurationFactory,
+                                                                                        Function<T, C> clientFactory,
+                                                                                        BiFunction<UrlFileContext, C, FileOperationProvider> fileOperationProviderFactory) {
+        return new Registration((Supplier<ClientConfiguration>) clientConfigurationFactory,
+                (Function<ClientConfiguration, Client>) clientFactory,
+                (BiFunction<UrlFileContext, Client, FileOperationProvider>) fileOperationProviderFactory);
+    }
+
+    private static class LocalRegistration {
+        private static final Registration REGISTRATION = register(null, null, LocalFileOperationProvider::new);
+    }
+
+    private static class SftpRegistration {
+        private static final Registration REGISTRATION = register(SftpClientConfiguration::new, SftpClient::new, SftpFileOperationProvider::new);
+    }
+
+    private static class FtpRegistration {
+        private static final Registration REGISTRATION = register(FtpClientConfiguration::new, FtpClient::new, FtpFileOperationProvider::new);
+    }
+
+    private static class HttpRegistration {
+        private static final Registration REGISTRATION = register(HttpClientConfiguration::new, HttpClient::new, HttpFileOperationProvider::new);
+    }
+
+    private static class HttpsRegistration {
+        private static final Registration REGISTRATION = register(HttpsClientConfiguration::new, HttpsClient::new, HttpsFileOperationProvider::new);
+    }
+
+    private static class Registration {
+        private final Supplier<ClientConfiguration> clientConfigurationFactory;
+        private final Function<ClientConfiguration, Client> clientFactory;
+        private final BiFunction<UrlFileContext, Client, FileOperationProvider> fileOperationProviderFactory;
+
+        private Registration(Supplier<ClientConfiguration> clientConfigurationFactory,
+                             Function<ClientConfiguration, Client> clientFactory,
+                             BiFunction<UrlFileContext, Client, FileOperationProvider> fileOperationProviderFactory) {
+            this.clientConfigurationFactory = clientConfigurationFactory;
+            this.clientFactory = clientFactory;
+            this.fileOperationProviderFactory = fileOperationProviderFactory;
+        }
+    }
+}
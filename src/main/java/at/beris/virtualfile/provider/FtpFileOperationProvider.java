@@ -16,8 +16,8 @@ import at.beris.virtualfile.client.ftp.FtpClient;
 import at.beris.virtualfile.client.ftp.FtpFileTranslator;
 import at.beris.virtualfile.exception.NotImplementedException;
 import at.beris.virtualfile.exception.OperationNotSupportedException;
-import at.beris.virtualfile.exception.VirtualFileException;
 import at.beris.virtualfile.filter.Filter;
+import at.beris.virtualfile.util.ChecksumUtils;
 import at.beris.virtualfile.util.UrlUtils;
 import org.apache.commons.net.ftp.FTPFile;
 
@@ -25,6 +25,7 @@ import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class FtpFileOperationProvider extends AbstractFileOperationProvider<FtpClient> {
 
@@ -59,10 +60,19 @@ public class FtpFileOperationProvider extends AbstractFileOperationProvider<FtpC
 
     @Override
     public Byte[] checksum(FileModel model) {
-        String tempDir = System.getProperty("java.io.tmpdir");
-        String tempFilePath = tempDir + File.separator + "tmpfile_" + Thread.currentThread().getName() + "_" + System.currentTimeMillis();
-        UrlFile tempFile = copyToLocalFile(model, tempFilePath);
-        return tempFile.checksum();
+        Byte[] checksum = remoteChecksum(model);
+        return checksum != null ? checksum : calculateChecksum(model);
+    }
+
+    @Override
+    public byte[] checksum(FileModel model, String algorithm) {
+        byte[] checksum = client.getChecksum(model.getUrl().getPath(), algorithm);
+        return checksum != null ? checksum : super.checksum(model, algorithm);
+    }
+
+    @Override
+    public Byte[] remoteChecksum(FileModel model) {
+        return ChecksumUtils.toObjectArray(client.getChecksum(model.getUrl().getPath()));
     }
 
     @Override
@@ -70,14 +80,8 @@ public class FtpFileOperationProvider extends AbstractFileOperationProvider<FtpC
         List<FTPFile> ftpFileList = client.list(resolveUrl(model).getPath());
         List<UrlFile> fileList = new ArrayList<>();
 
-        String parentPath = model.getUrl().getPath();
         for (FTPFile ftpFile : ftpFileList) {
-            FileModel childModel = new FileModel();
-            childModel.setParent(model);
-            String childPath = parentPath + ftpFile.getName() + (ftpFile.isDirectory() ? "/" : "");
-            UrlFile childFile = fileContext.resolveFile(UrlUtils.newUrl(model.getUrl(), childPath));
-            ftpFileTranslator.fillModel(childModel, ftpFile, client);
-            childFile.setModel(childModel);
+            UrlFile childFile = createChildFile(model, ftpFile);
             if (filter == null || filter.filter(childFile)) {
                 fileList.add(childFile);
             }
@@ -85,6 +89,30 @@ public class FtpFileOperationProvider extends AbstractFileOperationProvider<FtpC
         return fileList;
     }
 
+    @Override
+    public Stream<UrlFile> stream(FileModel model, Filter filter) {
+        // the translator needs the root path, which can't be looked up with the connection held by the listing
+        client.getPhysicalRootPath();
+        return client.stream(resolveUrl(model).getPath())
+                .map(ftpFile -> createChildFile(model, ftpFile))
+                .filter(childFile -> filter == null || filter.filter(childFile));
+    }
+
+    private UrlFile createChildFile(FileModel model, FTPFile ftpFile) {
+        FileModel childModel = new FileModel();
+        childModel.setParent(model);
+        String childPath = model.getUrl().getPath() + ftpFile.getName() + (ftpFile.isDirectory() ? "/" : "");
+        UrlFile childFile = fileContext.resolveFile(UrlUtils.newUrl(model.getUrl(), childPath));
+        ftpFileTranslator.fillModel(childModel, ftpFile, client);
+        childFile.setModel(childModel);
+        return childFile;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return client.getConfiguration().getMaxConnections();
+    }
+
     @Override
     public void updateModel(FileModel model) {
         model.setFileExists(client.exists(model.getUrl().getPath()));
@@ -105,11 +133,21 @@ public class FtpFileOperationProvider extends AbstractFileOperationProvider<FtpC
         return client.getInputStream(model.getUrl().getPath());
     }
 
+    @Override
+    public InputStream getInputStream(FileModel model, long offset) {
+        return client.getInputStream(model.getUrl().getPath(), offset);
+    }
+
     @Override
     public OutputStream getOutputStream(FileModel model) {
         return client.getOutputStream(model.getUrl().getPath());
     }
 
+    @Override
+    public OutputStream getOutputStream(FileModel model, boolean append) {
+        return client.getOutputStream(model.getUrl().getPath(), append);
+    }
+
     @Override
     public void setAttributes(FileModel model) {
         client.setAttributes(model.getUrl().getPath(), model.getAttributes());
@@ -170,24 +208,6 @@ public class FtpFileOperationProvider extends AbstractFileOperationProvider<FtpC
         throw new OperationNotSupportedException();
     }
 
-    private UrlFile copyToLocalFile(FileModel model, String path) {
-        byte[] buffer = new byte[1024];
-        int length;
-
-        try (
-                InputStream inputStream = client.getInputStream(model.getUrl().getPath());
-                OutputStream outputStream = new FileOutputStream(path)
-        ) {
-            while ((length = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, length);
-            }
-        } catch (IOException e) {
-            throw new VirtualFileException(e);
-        }
-
-
-        return fileContext.resolveFile(UrlUtils.getUrlForLocalPath(path));
-    }
 
     private URL resolveUrl(FileModel model) {
         if (model.isSymbolicLink())
@@ -20,25 +20,41 @@ import at.beris.virtualfile.exception.Message;
 import at.beris.virtualfile.exception.OperationNotSupportedException;
 import at.beris.virtualfile.exception.VirtualFileException;
 import at.beris.virtualfile.filter.Filter;
+import at.beris.virtualfile.provider.operation.AbstractFileOperation;
+import at.beris.virtualfile.util.ChecksumUtils;
 import at.beris.virtualfile.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.*;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class LocalFileOperationProvider extends AbstractFileOperationProvider<Client> {
     private final static Logger LOGGER = LoggerFactory.getLogger(LocalFileOperationProvider.class);
+    private final static boolean UNIX_ATTRIBUTES_SUPPORTED = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private final Map<Object, FileStoreViews> fileStoreViewsCache = new ConcurrentHashMap<>();
 
     public LocalFileOperationProvider(UrlFileContext fileContext, Client client) {
         super(fileContext, client);
@@ -76,20 +92,72 @@ public class LocalFileOperationProvider extends AbstractFileOperationProvider<Cl
 
     @Override
     public List<UrlFile> list(FileModel model, Filter filter) {
-        List<UrlFile> fileList = new ArrayList<>();
-        if (model.isDirectory()) {
-            try {
-                for (File childFile : new File(model.getUrl().toURI()).listFiles()) {
-                    UrlFile file = fileContext.resolveFile(childFile.toURI().toURL());
-                    if (filter == null || filter.filter(file))
-                        fileList.add(file);
-                }
-            } catch (URISyntaxException | MalformedURLException e) {
-                throw new VirtualFileException(e);
-            }
+        try (Stream<UrlFile> stream = stream(model, filter)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads the directory with a DirectoryStream and fills the model of each child from the attributes read for it,
+     * so new children don't have to be looked up again. The children share the file store of the directory.
+     */
+    @Override
+    public Stream<UrlFile> stream(FileModel model, Filter filter) {
+        if (!model.isDirectory())
+            return Stream.empty();
+
+        try {
+            Path directory = Paths.get(model.getUrl().toURI());
+            FileStoreViews fileStoreViews = getFileStoreViews(directory);
+            DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory);
+            return StreamSupport.stream(directoryStream.spliterator(), false)
+                    .onClose(() -> closeDirectoryStream(directoryStream))
+                    .map(path -> createChildFile(path, fileStoreViews))
+                    .filter(file -> file != null && (filter == null || filter.filter(file)));
+        } catch (URISyntaxException | IOException e) {
+            throw new VirtualFileException(e);
         }
+    }
+
+    /**
+     * @return File or null if the file was deleted after it was listed
+     */
+    private UrlFile createChildFile(Path path, FileStoreViews fileStoreViews) {
+        FileModel childModel = new FileModel();
+        if (!fillModel(childModel, path, fileStoreViews))
+            return null;
+        UrlFile childFile = fileContext.resolveFile(toUrl(path, childModel.isFileExists() && childModel.isDirectory()));
+        childFile.setModelIfAbsent(childModel);
+        return childFile;
+    }
+
+    /**
+     * Creates the same URL as File.toURI() without checking again whether the path is a directory.
+     */
+    private URL toUrl(Path path, boolean isDirectory) {
+        String urlPath = path.toAbsolutePath().toString().replace(File.separatorChar, '/');
+        if (!urlPath.startsWith("/"))
+            urlPath = "/" + urlPath;
+        if (isDirectory && !urlPath.endsWith("/"))
+            urlPath = urlPath + "/";
+        try {
+            return new URI("file", null, urlPath, null).toURL();
+        } catch (URISyntaxException | MalformedURLException e) {
+            throw new VirtualFileException(e);
+        }
+    }
 
-        return fileList;
+    private void closeDirectoryStream(DirectoryStream<Path> directoryStream) {
+        try {
+            directoryStream.close();
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return Runtime.getRuntime().availableProcessors();
     }
 
     @Override
@@ -105,70 +173,183 @@ public class LocalFileOperationProvider extends AbstractFileOperationProvider<Cl
 
     @Override
     public Byte[] checksum(FileModel model) {
-        try (FileInputStream fis = new FileInputStream(new File(model.getUrl().toURI()))) {
-            MessageDigest md = MessageDigest.getInstance("SHA1");
-            byte[] dataBytes = new byte[1024];
+        return ChecksumUtils.toObjectArray(checksum(model, ChecksumUtils.SHA1));
+    }
 
-            int nread;
-            while ((nread = fis.read(dataBytes)) != -1) {
-                md.update(dataBytes, 0, nread);
-            }
+    @Override
+    public byte[] checksum(FileModel model, String algorithm) {
+        try (FileChannel channel = FileChannel.open(Paths.get(model.getUrl().toURI()), StandardOpenOption.READ)) {
+            return digest(channel, 0, channel.size(), algorithm);
+        } catch (IOException | URISyntaxException e) {
+            throw new VirtualFileException(e);
+        }
+    }
 
-            byte[] digest = md.digest();
-            Byte[] digestBytes = new Byte[digest.length];
-            for (int i = 0; i < digest.length; i++)
-                digestBytes[i] = digest[i];
+    /**
+     * Hashes the chunks of the file on a thread per processor. A file with a single chunk is hashed by the
+     * calling thread.
+     */
+    @Override
+    public byte[] treeChecksum(FileModel model, String algorithm) {
+        try (FileChannel channel = FileChannel.open(Paths.get(model.getUrl().toURI()), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunkCount = (int) ((size + ChecksumUtils.TREE_CHUNK_SIZE - 1) / ChecksumUtils.TREE_CHUNK_SIZE);
+            MessageDigest treeMd = ChecksumUtils.createMessageDigest(algorithm);
+            if (chunkCount <= 1) {
+                if (chunkCount == 1)
+                    treeMd.update(digest(channel, 0, size, algorithm));
+                return treeMd.digest();
+            }
 
-            return digestBytes;
-        } catch (NoSuchAlgorithmException | IOException | URISyntaxException e) {
+            ExecutorService executorService = Executors.newFixedThreadPool(Math.min(chunkCount, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "VirtualFile-Checksum");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Callable<byte[]>> tasks = new ArrayList<>();
+                for (long position = 0; position < size; position += ChecksumUtils.TREE_CHUNK_SIZE) {
+                    long chunkPosition = position;
+                    tasks.add(() -> digest(channel, chunkPosition, Math.min(ChecksumUtils.TREE_CHUNK_SIZE, size - chunkPosition), algorithm));
+                }
+                for (Future<byte[]> future : executorService.invokeAll(tasks))
+                    treeMd.update(future.get());
+                return treeMd.digest();
+            } finally {
+                executorService.shutdownNow();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new VirtualFileException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new VirtualFileException(e);
+        } catch (IOException | URISyntaxException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * Hashes a region of the file through memory mapped windows.
+     */
+    private byte[] digest(FileChannel channel, long position, long length, String algorithm) throws IOException {
+        MessageDigest md = ChecksumUtils.createMessageDigest(algorithm);
+        long end = position + length;
+        while (position < end) {
+            long windowSize = Math.min(AbstractFileOperation.MAPPED_WINDOW_SIZE, end - position);
+            md.update(channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize));
+            position += windowSize;
         }
+        return md.digest();
     }
 
     @Override
     public void updateModel(FileModel model) {
-        File file = null;
         try {
-            file = new File(model.getUrl().toURI());
-            model.setFileExists(file.exists());
-            if (!model.isFileExists())
+            Path path = Paths.get(model.getUrl().toURI());
+            FileStoreViews fileStoreViews;
+            try {
+                fileStoreViews = getFileStoreViews(path);
+            } catch (NoSuchFileException e) {
+                model.setFileExists(false);
                 return;
+            }
+            fillModel(model, path, fileStoreViews);
+        } catch (IOException | URISyntaxException e) {
+            throw new VirtualFileException(e);
+        }
+    }
 
-            FileStore fileStore = Files.getFileStore(file.toPath());
-            boolean basicFileAttributeViewSupported = fileStore.supportsFileAttributeView(BasicFileAttributeView.class);
-            boolean fileOwnerAttributeViewSupported = fileStore.supportsFileAttributeView(FileOwnerAttributeView.class);
-            boolean aclFileAttributeViewSupported = fileStore.supportsFileAttributeView(AclFileAttributeView.class);
-            boolean posixFileAttributeViewSupported = fileStore.supportsFileAttributeView(PosixFileAttributeView.class);
-            boolean dosFileAttributeViewSupported = fileStore.supportsFileAttributeView(DosFileAttributeView.class);
-
-            if (basicFileAttributeViewSupported) {
-                fillBasicFileAttributes(model, file);
+    /**
+     * Fills the model from a single read of the posix or basic attributes, which contain the owner, group and
+     * permissions as well. Only a symbolic link needs a second read for the attributes of its target. A link
+     * whose target is missing only gets the basic and posix attributes of the link and is marked as not existing.
+     *
+     * @return False if there is no such entry in the directory
+     */
+    private boolean fillModel(FileModel model, Path path, FileStoreViews fileStoreViews) {
+        try {
+            Class<? extends BasicFileAttributes> attributesType = fileStoreViews.posix ? PosixFileAttributes.class : BasicFileAttributes.class;
+            BasicFileAttributes attributes = Files.readAttributes(path, attributesType, LinkOption.NOFOLLOW_LINKS);
+            boolean isSymbolicLink = attributes.isSymbolicLink();
+            boolean targetExists = true;
+            if (isSymbolicLink) {
+                try {
+                    attributes = Files.readAttributes(path, attributesType);
+                } catch (NoSuchFileException e) {
+                    // dangling link, keep the attributes of the link itself
+                    targetExists = false;
+                }
             }
 
-            if (fileOwnerAttributeViewSupported) {
-                FileOwnerAttributeView fileAttributeView = Files.getFileAttributeView(file.toPath(), FileOwnerAttributeView.class);
-                model.setOwner(fileAttributeView.getOwner());
+            model.setFileExists(targetExists);
+            model.setLastModifiedTime(attributes.lastModifiedTime());
+            model.setLastAccessTime(attributes.lastAccessTime());
+            model.setCreationTime(attributes.creationTime());
+            if (attributes.isDirectory())
+                model.setSize(() -> countEntries(path));
+            else
+                model.setSize(attributes.size());
+            model.setDirectory(attributes.isDirectory());
+            model.setSymbolicLink(isSymbolicLink);
+            model.setLinkTarget(isSymbolicLink ? Files.readSymbolicLink(path).toUri().toURL() : null);
+
+            // the other views of a link can't be read on many file systems
+            if (!targetExists) {
+                if (fileStoreViews.posix)
+                    fillPosixFileAttributes((PosixFileAttributes) attributes, model);
+                return true;
             }
 
-            if (aclFileAttributeViewSupported) {
-                AclFileAttributeView attributeView = Files.getFileAttributeView(file.toPath(), AclFileAttributeView.class);
+            if (fileStoreViews.owner && !fileStoreViews.posix)
+                model.setOwner(Files.getFileAttributeView(path, FileOwnerAttributeView.class).getOwner());
+
+            if (fileStoreViews.acl) {
+                AclFileAttributeView attributeView = Files.getFileAttributeView(path, AclFileAttributeView.class);
                 model.setOwner(attributeView.getOwner());
                 model.setAcl(attributeView.getAcl());
             }
 
-            if (dosFileAttributeViewSupported) {
-                fillDosFileAttributes(file, model);
-            }
-
-            if (posixFileAttributeViewSupported) {
-                fillPosixFileAttributes(file, model);
-            }
+            if (fileStoreViews.dos)
+                fillDosFileAttributes(path, model);
 
-        } catch (IOException | URISyntaxException e) {
+            if (fileStoreViews.posix)
+                fillPosixFileAttributes((PosixFileAttributes) attributes, model);
+            return true;
+        } catch (NoSuchFileException e) {
+            model.setFileExists(false);
+            return false;
+        } catch (IOException e) {
             throw new VirtualFileException(e);
         }
     }
 
+    private int countEntries(Path directory) {
+        int count = 0;
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+            for (Path ignored : directoryStream)
+                count++;
+        } catch (IOException | DirectoryIteratorException e) {
+            return 0;
+        }
+        return count;
+    }
+
+    /**
+     * Looking up the file store of a path reads the mount table, so the supported views are cached per device.
+     * File systems without unix attributes are cached per root.
+     */
+    private FileStoreViews getFileStoreViews(Path path) throws IOException {
+        Object key = UNIX_ATTRIBUTES_SUPPORTED ? Files.getAttribute(path, "unix:dev") : path.toAbsolutePath().getRoot();
+        FileStoreViews fileStoreViews = fileStoreViewsCache.get(key);
+        if (fileStoreViews == null) {
+            fileStoreViews = new FileStoreViews(Files.getFileStore(path));
+            fileStoreViewsCache.put(key, fileStoreViews);
+        }
+        return fileStoreViews;
+    }
+
     @Override
     public InputStream getInputStream(FileModel model) {
         try {
@@ -178,10 +359,26 @@ public class LocalFileOperationProvider extends AbstractFileOperationProvider<Cl
         }
     }
 
+    @Override
+    public InputStream getInputStream(FileModel model, long offset) {
+        try {
+            FileInputStream inputStream = new FileInputStream(new File(model.getUrl().toURI()));
+            inputStream.getChannel().position(offset);
+            return inputStream;
+        } catch (URISyntaxException | IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
     @Override
     public OutputStream getOutputStream(FileModel model) {
+        return getOutputStream(model, false);
+    }
+
+    @Override
+    public OutputStream getOutputStream(FileModel model, boolean append) {
         try {
-            return new FileOutputStream(new File(model.getUrl().toURI()));
+            return new FileOutputStream(new File(model.getUrl().toURI()), append);
         } catch (URISyntaxException | FileNotFoundException e) {
             throw new VirtualFileException(e);
         }
@@ -371,58 +568,26 @@ public class LocalFileOperationProvider extends AbstractFileOperationProvider<Cl
         }
     }
 
-    private void fillBasicFileAttributes(FileModel model, File file) {
-        try {
-            BasicFileAttributes basicFileAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
-            model.setLastModifiedTime(basicFileAttributes.lastModifiedTime());
-            model.setLastAccessTime(basicFileAttributes.lastAccessTime());
-            model.setCreationTime(basicFileAttributes.creationTime());
-            model.setSize(file.isDirectory() ? (file.list() != null ? file.list().length : 0) : basicFileAttributes.size());
-            model.setDirectory(file.isDirectory());
-            boolean isSymbolicLink = Files.isSymbolicLink(file.toPath());
-            model.setSymbolicLink(isSymbolicLink);
-            if (isSymbolicLink) {
-                Path symbolicLink = Files.readSymbolicLink(file.toPath());
-                model.setLinkTarget(symbolicLink.toUri().toURL());
-            } else
-                model.setLinkTarget(null);
-        } catch (IOException e) {
-            throw new VirtualFileException(e);
-        }
+    private void fillDosFileAttributes(Path path, FileModel model) throws IOException {
+        Set<FileAttribute> attributes = model.getAttributes();
+        DosFileAttributes dosFileAttributes = Files.readAttributes(path, DosFileAttributes.class);
+        if (dosFileAttributes.isArchive())
+            attributes.add(DosFileAttribute.ARCHIVE);
+        if (dosFileAttributes.isHidden())
+            attributes.add(DosFileAttribute.HIDDEN);
+        if (dosFileAttributes.isReadOnly())
+            attributes.add(DosFileAttribute.READ_ONLY);
+        if (dosFileAttributes.isSystem())
+            attributes.add(DosFileAttribute.SYSTEM);
     }
 
-    private void fillDosFileAttributes(File file, FileModel model) {
-        try {
-            Set<FileAttribute> attributes = model.getAttributes();
-            DosFileAttributes dosFileAttributes = Files.readAttributes(file.toPath(), DosFileAttributes.class);
-            if (dosFileAttributes.isArchive())
-                attributes.add(DosFileAttribute.ARCHIVE);
-            if (dosFileAttributes.isHidden())
-                attributes.add(DosFileAttribute.HIDDEN);
-            if (dosFileAttributes.isReadOnly())
-                attributes.add(DosFileAttribute.READ_ONLY);
-            if (dosFileAttributes.isSystem())
-                attributes.add(DosFileAttribute.SYSTEM);
-        } catch (IOException e) {
-            throw new VirtualFileException(e);
-        }
-    }
-
-    private void fillPosixFileAttributes(File file, FileModel model) {
-        try {
-            Set<FileAttribute> attributes = model.getAttributes();
-
-            PosixFileAttributeView fileAttributeView = Files.getFileAttributeView(file.toPath(), PosixFileAttributeView.class);
-            PosixFileAttributes posixFileAttributes = fileAttributeView.readAttributes();
-
-            model.setOwner(posixFileAttributes.owner());
-            model.setGroup(posixFileAttributes.group());
+    private void fillPosixFileAttributes(PosixFileAttributes posixFileAttributes, FileModel model) {
+        Set<FileAttribute> attributes = model.getAttributes();
+        model.setOwner(posixFileAttributes.owner());
+        model.setGroup(posixFileAttributes.group());
 
-            for (java.nio.file.attribute.PosixFilePermission permission : posixFileAttributes.permissions()) {
-                attributes.add(at.beris.virtualfile.attribute.PosixFilePermission.fromNioPermission(permission));
-            }
-        } catch (IOException e) {
-            throw new VirtualFileException(e);
+        for (java.nio.file.attribute.PosixFilePermission permission : posixFileAttributes.permissions()) {
+            attributes.add(at.beris.virtualfile.attribute.PosixFilePermission.fromNioPermission(permission));
         }
     }
 
@@ -469,4 +634,21 @@ public class LocalFileOperationProvider extends AbstractFileOperationProvider<Cl
             throw new VirtualFileException(e);
         }
     }
+
+    /**
+     * Attribute views supported by a file store.
+     */
+    private static class FileStoreViews {
+        private final boolean owner;
+        private final boolean acl;
+        private final boolean posix;
+        private final boolean dos;
+
+        private FileStoreViews(FileStore fileStore) {
+            owner = fileStore.supportsFileAttributeView(FileOwnerAttributeView.class);
+            acl = fileStore.supportsFileAttributeView(AclFileAttributeView.class);
+            posix = fileStore.supportsFileAttributeView(PosixFileAttributeView.class);
+            dos = fileStore.supportsFileAttributeView(DosFileAttributeView.class);
+        }
+    }
 }
@@ -17,16 +17,15 @@ import at.beris.virtualfile.client.sftp.SftpFile;
 import at.beris.virtualfile.client.sftp.SftpFileTranslator;
 import at.beris.virtualfile.exception.NotImplementedException;
 import at.beris.virtualfile.exception.OperationNotSupportedException;
-import at.beris.virtualfile.exception.VirtualFileException;
 import at.beris.virtualfile.filter.Filter;
+import at.beris.virtualfile.util.ChecksumUtils;
 import at.beris.virtualfile.util.UrlUtils;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class SftpFileOperationProvider extends AbstractFileOperationProvider<SftpClient> {
 
@@ -61,10 +60,19 @@ public class SftpFileOperationProvider extends AbstractFileOperationProvider<Sft
 
     @Override
     public Byte[] checksum(FileModel model) {
-        String tempDir = System.getProperty("java.io.tmpdir");
-        String tempFilePath = tempDir + java.io.File.separator + "tmpfile_" + Thread.currentThread().getName() + "_" + System.currentTimeMillis();
-        UrlFile tempFile = copyToLocalFile(model, tempFilePath);
-        return tempFile.checksum();
+        Byte[] checksum = remoteChecksum(model);
+        return checksum != null ? checksum : calculateChecksum(model);
+    }
+
+    @Override
+    public byte[] checksum(FileModel model, String algorithm) {
+        byte[] checksum = client.getChecksum(model.getUrl().getPath(), algorithm);
+        return checksum != null ? checksum : super.checksum(model, algorithm);
+    }
+
+    @Override
+    public Byte[] remoteChecksum(FileModel model) {
+        return ChecksumUtils.toObjectArray(client.getChecksum(model.getUrl().getPath()));
     }
 
     @Override
@@ -73,10 +81,7 @@ public class SftpFileOperationProvider extends AbstractFileOperationProvider<Sft
         List<UrlFile> fileList = new ArrayList<>();
 
         for (SftpFile sftpFile : fileInfoList) {
-            UrlFile childFile = fileContext.resolveFile(UrlUtils.newUrl(model.getUrl(), sftpFile.getPath()));
-            FileModel childModel = new FileModel();
-            sftpFileTranslator.fillModel(childModel, sftpFile, client);
-            childFile.setModel(childModel);
+            UrlFile childFile = createChildFile(model, sftpFile);
             if (filter == null || filter.filter(childFile)) {
                 fileList.add(childFile);
             }
@@ -84,6 +89,21 @@ public class SftpFileOperationProvider extends AbstractFileOperationProvider<Sft
         return fileList;
     }
 
+    @Override
+    public Stream<UrlFile> stream(FileModel model, Filter filter) {
+        return client.stream(model.getUrl().getPath())
+                .map(sftpFile -> createChildFile(model, sftpFile))
+                .filter(childFile -> filter == null || filter.filter(childFile));
+    }
+
+    private UrlFile createChildFile(FileModel model, SftpFile sftpFile) {
+        UrlFile childFile = fileContext.resolveFile(UrlUtils.newUrl(model.getUrl(), sftpFile.getPath()));
+        FileModel childModel = new FileModel();
+        sftpFileTranslator.fillModel(childModel, sftpFile, client);
+        childFile.setModel(childModel);
+        return childFile;
+    }
+
     @Override
     public void updateModel(FileModel model) {
         model.setFileExists(client.exists(model.getUrl().getPath()));
@@ -104,11 +124,26 @@ public class SftpFileOperationProvider extends AbstractFileOperationProvider<Sft
         return client.getInputStream(model.getUrl().getPath());
     }
 
+    @Override
+    public InputStream getInputStream(FileModel model, long offset) {
+        return client.getInputStream(model.getUrl().getPath(), offset);
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return client.getConfiguration().getMaxConnections();
+    }
+
     @Override
     public OutputStream getOutputStream(FileModel model) {
         return client.getOutputStream(model.getUrl().getPath());
     }
 
+    @Override
+    public OutputStream getOutputStream(FileModel model, boolean append) {
+        return client.getOutputStream(model.getUrl().getPath(), append);
+    }
+
     @Override
     public void setAttributes(FileModel model) {
         client.setAttributes(model.getUrl().getPath(), model.getAttributes());
@@ -169,21 +204,4 @@ public class SftpFileOperationProvider extends AbstractFileOperationProvider<Sft
         throw new OperationNotSupportedException();
     }
 
-    private UrlFile copyToLocalFile(FileModel model, String path) {
-        byte[] buffer = new byte[1024];
-        int length;
-
-        try (
-                InputStream inputStream = client.getInputStream(model.getUrl().getPath());
-                OutputStream outputStream = new FileOutputStream(path)
-        ) {
-            while ((length = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, length);
-            }
-        } catch (IOException e) {
-            throw new VirtualFileException(e);
-        }
-
-        return fileContext.resolveFile(UrlUtils.getUrlForLocalPath(path));
-    }
 }
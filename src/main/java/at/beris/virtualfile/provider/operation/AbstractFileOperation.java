@@ -19,17 +19,26 @@ import at.beris.virtualfile.provider.FileOperationProvider;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractFileOperation<RF, RB> {
 
     public final static int STREAM_BUFFER_SIZE = 1024 * 16;
 
+    public final static long MAPPED_WINDOW_SIZE = 1024 * 1024 * 64;
+
     protected UrlFileContext fileContext;
     protected FileOperationProvider fileOperationProvider;
-    protected Integer filesProcessed = 0;
+    protected final AtomicInteger filesProcessed = new AtomicInteger();
 
     protected RF fileOperationResult;
     protected List<RB> streamBufferOperationResultList;
@@ -38,7 +47,7 @@ public abstract class AbstractFileOperation<RF, RB> {
         super();
         this.fileContext = fileContext;
         this.fileOperationProvider = fileOperationProvider;
-        this.streamBufferOperationResultList = new ArrayList<>();
+        this.streamBufferOperationResultList = Collections.synchronizedList(new ArrayList<>());
     }
 
     public RF execute(UrlFile source, UrlFile target, FileOperationListener listener) {
@@ -49,30 +58,102 @@ public abstract class AbstractFileOperation<RF, RB> {
 
     protected void processFilesRecursively(UrlFile source, UrlFile target, FileOperationListener listener) {
         executeIteration(source, target, listener);
-        if (source.isDirectory()) {
+        if (source.isDirectory() && !isFinished()) {
             for (VirtualFile sourceChildFile : source.list()) {
-                source = (UrlFile)sourceChildFile;
-                URL targetUrl = target.getUrl();
-                URL targetChildUrl;
-                try {
-                    targetChildUrl = new URL(targetUrl, targetUrl.getFile() + sourceChildFile.getName() + (sourceChildFile.isDirectory() ? "/" : ""));
-                } catch (MalformedURLException e) {
-                    throw new VirtualFileException(e);
-                }
-                UrlFile parentTarget = target;
-                target = fileContext.resolveFile(targetChildUrl);
-                processFilesRecursively(source, target, listener);
-                target = parentTarget;
+                processFilesRecursively((UrlFile) sourceChildFile, resolveTargetChildFile(target, sourceChildFile), listener);
+                if (isFinished())
+                    break;
             }
         }
         target.refresh();
     }
 
-    protected <SS extends InputStream, TS> void processStreams(SS sourceStream, TS targetStream, long sourceFileSize, FileOperationListener listener, StreamBufferOperation<RB, SS, TS> streamBufferOperation) throws IOException {
+    /**
+     * @return True if the result is known and the remaining files don't need to be listed or processed
+     */
+    protected boolean isFinished() {
+        return false;
+    }
+
+    /**
+     * Processes the files of the tree with a pool of threads. A directory is processed before its children
+     * are submitted and its target is refreshed after the whole tree is done. The listener is called by one
+     * thread at a time and receives the progress of the whole tree. The size of the tree is summed up from the
+     * listings of the directories, so it grows while the tree is processed. Once the listener requests an
+     * interrupt, no further files are started.
+     *
+     * @param source         Source file
+     * @param target         Target file
+     * @param listener       Listener
+     * @param threadPoolSize Number of threads
+     */
+    protected void processFilesConcurrently(UrlFile source, UrlFile target, FileOperationListener listener, int threadPoolSize) {
+        SynchronizedFileOperationListener synchronizedListener = listener != null ? new SynchronizedFileOperationListener(listener) : null;
+        if (synchronizedListener != null && !source.isDirectory())
+            synchronizedListener.addTreeSize(source.getSize());
+        ExecutorService executorService = Executors.newFixedThreadPool(threadPoolSize, runnable -> {
+            Thread thread = new Thread(runnable, "VirtualFile-FileOperation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        FileTaskTracker taskTracker = new FileTaskTracker(executorService);
+        try {
+            taskTracker.submit(() -> processFileConcurrently(source, target, synchronizedListener, taskTracker));
+            taskTracker.awaitCompletion();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void processFileConcurrently(UrlFile source, UrlFile target, SynchronizedFileOperationListener listener, FileTaskTracker taskTracker) {
+        if (taskTracker.isCancelled())
+            return;
+
+        executeIteration(source, target, listener);
+        if (listener != null && listener.interrupt()) {
+            taskTracker.cancel();
+            return;
+        }
+
+        if (source.isDirectory()) {
+            List<VirtualFile> sourceChildFiles = source.list();
+            if (listener != null)
+                listener.addTreeSize(sourceChildFiles.stream().filter(file -> !file.isDirectory()).mapToLong(VirtualFile::getSize).sum());
+            for (VirtualFile sourceChildFile : sourceChildFiles) {
+                UrlFile targetChildFile = resolveTargetChildFile(target, sourceChildFile);
+                taskTracker.submit(() -> processFileConcurrently((UrlFile) sourceChildFile, targetChildFile, listener, taskTracker));
+            }
+            taskTracker.afterCompletion(target::refresh);
+        } else
+            target.refresh();
+    }
+
+    private UrlFile resolveTargetChildFile(UrlFile target, VirtualFile sourceChildFile) {
+        URL targetUrl = target.getUrl();
+        URL targetChildUrl;
+        try {
+            targetChildUrl = new URL(targetUrl, targetUrl.getFile() + sourceChildFile.getName() + (sourceChildFile.isDirectory() ? "/" : ""));
+        } catch (MalformedURLException e) {
+            throw new VirtualFileException(e);
+        }
+        return fileContext.resolveFile(targetChildUrl);
+    }
+
+    protected <SS extends InputStream, TS> long processStreams(SS sourceStream, TS targetStream, long sourceFileSize, FileOperationListener listener, StreamBufferOperation<RB, SS, TS> streamBufferOperation) throws IOException {
+        return processStreams(sourceStream, targetStream, 0, sourceFileSize, listener, streamBufferOperation);
+    }
+
+    /**
+     * Processes streams that start at an offset of the file, e.g. when a copy is resumed.
+     * The listener receives the totals including the bytes before the offset.
+     *
+     * @return Position after the last processed byte
+     */
+    protected <SS extends InputStream, TS> long processStreams(SS sourceStream, TS targetStream, long offset, long sourceFileSize, FileOperationListener listener, StreamBufferOperation<RB, SS, TS> streamBufferOperation) throws IOException {
 
         byte[] sourceBuffer = new byte[STREAM_BUFFER_SIZE];
         int sourceBytesRead;
-        long bytesProcessedTotal = 0;
+        long bytesProcessedTotal = offset;
 
         while ((sourceBytesRead = sourceStream.read(sourceBuffer)) > 0) {
             RB result = streamBufferOperation.process(sourceStream, targetStream, sourceBuffer, sourceBytesRead);
@@ -85,17 +166,112 @@ public abstract class AbstractFileOperation<RF, RB> {
                     break;
             }
         }
+        return bytesProcessedTotal;
+    }
+
+    /**
+     * Reads until the buffer is full or the end of the stream is reached.
+     *
+     * @return Number of bytes read, less than the buffer length only at the end of the stream
+     */
+    protected static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int bytesReadTotal = 0;
+        int bytesRead;
+        while (bytesReadTotal < buffer.length && (bytesRead = inputStream.read(buffer, bytesReadTotal, buffer.length - bytesReadTotal)) > 0)
+            bytesReadTotal += bytesRead;
+        return bytesReadTotal;
+    }
+
+    protected static Path toPath(UrlFile file) throws URISyntaxException {
+        return Paths.get(file.getUrl().toURI());
     }
 
     private void executeIteration(UrlFile source, UrlFile target, FileOperationListener listener) {
+        int fileNumber = filesProcessed.incrementAndGet();
         if (listener != null)
-            listener.startProcessingFile(source, filesProcessed + 1);
+            listener.startProcessingFile(source, fileNumber);
         executeFileOperation(source, target, listener);
         if (listener != null)
             listener.finishedProcessingFile(source);
-        filesProcessed++;
     }
 
     abstract protected void executeFileOperation(UrlFile source, UrlFile target, FileOperationListener listener);
 
+    /**
+     * Counts the submitted tasks, so that the caller can wait until the whole tree was processed.
+     * The first failure cancels the remaining tasks and is rethrown to the caller.
+     */
+    private static class FileTaskTracker {
+        private final ExecutorService executorService;
+        private final List<Runnable> completionActions = new ArrayList<>();
+        private int pendingTasks;
+        private volatile boolean cancelled;
+        private RuntimeException failure;
+
+        private FileTaskTracker(ExecutorService executorService) {
+            this.executorService = executorService;
+        }
+
+        void submit(Runnable task) {
+            synchronized (this) {
+                pendingTasks++;
+            }
+            executorService.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        if (failure == null)
+                            failure = e;
+                    }
+                    cancel();
+                } finally {
+                    synchronized (this) {
+                        if (--pendingTasks == 0)
+                            notifyAll();
+                    }
+                }
+            });
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Runs the action after all tasks completed without a failure.
+         *
+         * @param action Action
+         */
+        synchronized void afterCompletion(Runnable action) {
+            completionActions.add(action);
+        }
+
+        void awaitCompletion() {
+            List<Runnable> actions;
+            synchronized (this) {
+                waitForTasks();
+                actions = new ArrayList<>(completionActions);
+            }
+            for (Runnable action : actions)
+                action.run();
+        }
+
+        private void waitForTasks() {
+            try {
+                while (pendingTasks > 0)
+                    wait();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new VirtualFileException(e);
+            }
+            if (failure != null)
+                throw failure;
+        }
+    }
 }
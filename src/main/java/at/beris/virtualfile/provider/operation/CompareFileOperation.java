@@ -12,10 +12,18 @@ package at.beris.virtualfile.provider.operation;
 import at.beris.virtualfile.UrlFile;
 import at.beris.virtualfile.UrlFileContext;
 import at.beris.virtualfile.exception.VirtualFileException;
+import at.beris.virtualfile.protocol.Protocol;
 import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.provider.LocalFileOperationProvider;
+import at.beris.virtualfile.util.ByteBufferUtils;
+import at.beris.virtualfile.util.UrlUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 
 public class CompareFileOperation extends AbstractFileOperation<Boolean, Boolean> {
@@ -32,51 +40,138 @@ public class CompareFileOperation extends AbstractFileOperation<Boolean, Boolean
         return fileOperationResult;
     }
 
+    @Override
+    protected boolean isFinished() {
+        return !fileOperationResult;
+    }
+
     @Override
     protected void executeFileOperation(UrlFile source, UrlFile target, FileOperationListener listener) {
-        if (source.isDirectory()) {
-            if (target.isDirectory())
-                fileOperationResult = source.getName().equals(target.getName());
-            else
-                fileOperationResult = false;
+        if (!fileOperationResult)
+            return;
+
+        if (!target.exists())
+            fileOperationResult = false;
+        else if (source.isDirectory()) {
+            // the children of the target are resolved by the names of the source children
+            fileOperationResult = target.isDirectory();
         } else {
             if (target.isDirectory())
                 fileOperationResult = false;
-            else {
-                compareFile(source, target, listener);
-                fileOperationResult &= calculateFileOperationResult();
-            }
+            else
+                fileOperationResult = compareFile(source, target, listener);
         }
     }
 
-    private void compareFile(UrlFile source, UrlFile target, FileOperationListener listener) {
-        CompareStreamBufferOperation streamBufferOperation = new CompareStreamBufferOperation();
+    /**
+     * Compares the sizes first and then the content chunk by chunk. Stops at the first difference.
+     *
+     * @return True if the content is equal
+     */
+    private boolean compareFile(UrlFile source, UrlFile target, FileOperationListener listener) {
+        long sourceFileSize = source.getSize();
+        long targetFileSize = target.getSize();
+        if (sourceFileSize >= 0 && targetFileSize >= 0 && sourceFileSize != targetFileSize)
+            return false;
+        if (isLocalCompare(source, target))
+            return compareLocalFile(source, target, listener);
+        Boolean checksumsEqual = compareChecksums(source, target);
+        if (checksumsEqual != null)
+            return checksumsEqual;
+
+        byte[] sourceBuffer = new byte[STREAM_BUFFER_SIZE];
+        byte[] targetBuffer = new byte[STREAM_BUFFER_SIZE];
+        long bytesProcessedTotal = 0;
+
         try (InputStream sourceStream = source.getInputStream(); InputStream targetStream = target.getInputStream()) {
-            processStreams(sourceStream, targetStream, source.getSize(), listener, streamBufferOperation);
+            int sourceBytesRead;
+            while ((sourceBytesRead = readFully(sourceStream, sourceBuffer)) > 0) {
+                int targetBytesRead = readFully(targetStream, targetBuffer);
+                if (targetBytesRead != sourceBytesRead || !equals(sourceBuffer, targetBuffer, sourceBytesRead))
+                    return false;
+                bytesProcessedTotal += sourceBytesRead;
+
+                if (listener != null) {
+                    listener.afterStreamBufferProcessed(sourceFileSize, sourceBytesRead, bytesProcessedTotal);
+                    if (listener.interrupt())
+                        return true;
+                }
+            }
+            return targetStream.read() < 0;
         } catch (IOException e) {
             throw new VirtualFileException(e);
         }
     }
 
-    private boolean calculateFileOperationResult() {
-        boolean result = true;
-        for (Boolean streamBufferOperationResult : streamBufferOperationResultList) {
-            result &= streamBufferOperationResult;
+    /**
+     * Compares the checksums if the remote files can be hashed by their servers. A local file is hashed locally,
+     * which is cheaper than transferring the remote file.
+     *
+     * @return Result or null if the content has to be compared
+     */
+    private Boolean compareChecksums(UrlFile source, UrlFile target) {
+        Byte[] sourceChecksum = source.remoteChecksum();
+        Byte[] targetChecksum = target.remoteChecksum();
+        if (sourceChecksum == null && targetChecksum == null)
+            return null;
+
+        if (sourceChecksum == null) {
+            if (!isLocal(source))
+                return null;
+            sourceChecksum = source.checksum();
+        }
+        if (targetChecksum == null) {
+            if (!isLocal(target))
+                return null;
+            targetChecksum = target.checksum();
         }
-        return result;
+        return Arrays.equals(sourceChecksum, targetChecksum);
     }
 
-    private class CompareStreamBufferOperation extends StreamBufferOperation<Boolean, InputStream, InputStream> {
+    private boolean isLocal(UrlFile file) {
+        return UrlUtils.getProtocol(file.getUrl()) == Protocol.FILE;
+    }
+
+    private boolean isLocalCompare(UrlFile source, UrlFile target) {
+        return fileOperationProvider instanceof LocalFileOperationProvider && isLocal(source) && isLocal(target);
+    }
 
-        @Override
-        Boolean process(InputStream sourceStream, InputStream targetStream, byte[] sourceBuffer, int sourceBytesRead) {
-            try {
-                targetStream.read(targetBuffer);
-                return Arrays.equals(sourceBuffer, targetBuffer);
+    /**
+     * Compares local files window by window with memory mapped buffers, so the content isn't copied to the heap.
+     */
+    private boolean compareLocalFile(UrlFile source, UrlFile target, FileOperationListener listener) {
+        try (FileChannel sourceChannel = FileChannel.open(toPath(source), StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(toPath(target), StandardOpenOption.READ)) {
+            long sourceFileSize = sourceChannel.size();
+            if (sourceFileSize != targetChannel.size())
+                return false;
 
-            } catch (IOException e) {
-                throw new VirtualFileException(e);
+            long bytesProcessedTotal = 0;
+            while (bytesProcessedTotal < sourceFileSize) {
+                long windowSize = Math.min(MAPPED_WINDOW_SIZE, sourceFileSize - bytesProcessedTotal);
+                MappedByteBuffer sourceBuffer = sourceChannel.map(FileChannel.MapMode.READ_ONLY, bytesProcessedTotal, windowSize);
+                MappedByteBuffer targetBuffer = targetChannel.map(FileChannel.MapMode.READ_ONLY, bytesProcessedTotal, windowSize);
+                if (ByteBufferUtils.mismatch(sourceBuffer, targetBuffer) >= 0)
+                    return false;
+                bytesProcessedTotal += windowSize;
+
+                if (listener != null) {
+                    listener.afterStreamBufferProcessed(sourceFileSize, windowSize, bytesProcessedTotal);
+                    if (listener.interrupt())
+                        break;
+                }
             }
+            return true;
+        } catch (IOException | URISyntaxException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    private static boolean equals(byte[] sourceBuffer, byte[] targetBuffer, int length) {
+        for (int i = 0; i < length; i++) {
+            if (sourceBuffer[i] != targetBuffer[i])
+                return false;
         }
+        return true;
     }
 }
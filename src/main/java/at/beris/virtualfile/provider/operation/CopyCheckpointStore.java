@@ -0,0 +1,174 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.provider.operation;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Stores a checkpoint for each file that is copied, so that an aborted copy can continue where it stopped.
+ * The checkpoint files are named after the hash of the source and target URL, so no credentials end up
+ * in the file system.
+ */
+public class CopyCheckpointStore {
+    private final static Logger LOGGER = LoggerFactory.getLogger(CopyCheckpointStore.class);
+
+    private static final String SOURCE_SIZE = "sourceSize";
+    private static final String SOURCE_LAST_MODIFIED = "sourceLastModified";
+    private static final String BYTES_COPIED = "bytesCopied";
+    private static final String BLOCK_LENGTH = "blockLength";
+    private static final String BLOCK_HASH = "blockHash";
+
+    private final Path directory;
+
+    /**
+     * @param directory Directory containing the checkpoint files
+     */
+    public CopyCheckpointStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the checkpoint of a copy.
+     *
+     * @param source Source URL
+     * @param target Target URL
+     * @return Checkpoint or null if there is no readable checkpoint
+     */
+    public Checkpoint load(URL source, URL target) {
+        Path path = pathOf(source, target);
+        if (!Files.exists(path))
+            return null;
+
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            properties.load(inputStream);
+            return new Checkpoint(Long.parseLong(properties.getProperty(SOURCE_SIZE)),
+                    Long.parseLong(properties.getProperty(SOURCE_LAST_MODIFIED)),
+                    Long.parseLong(properties.getProperty(BYTES_COPIED)),
+                    Integer.parseInt(properties.getProperty(BLOCK_LENGTH)),
+                    DatatypeConverter.parseHexBinary(properties.getProperty(BLOCK_HASH)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable checkpoint {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the checkpoint of a copy. The previous checkpoint is replaced atomically.
+     *
+     * @param source     Source URL
+     * @param target     Target URL
+     * @param checkpoint Checkpoint
+     */
+    public void save(URL source, URL target, Checkpoint checkpoint) {
+        Properties properties = new Properties();
+        properties.setProperty(SOURCE_SIZE, String.valueOf(checkpoint.getSourceSize()));
+        properties.setProperty(SOURCE_LAST_MODIFIED, String.valueOf(checkpoint.getSourceLastModified()));
+        properties.setProperty(BYTES_COPIED, String.valueOf(checkpoint.getBytesCopied()));
+        properties.setProperty(BLOCK_LENGTH, String.valueOf(checkpoint.getBlockLength()));
+        properties.setProperty(BLOCK_HASH, DatatypeConverter.printHexBinary(checkpoint.getBlockHash()));
+
+        Path path = pathOf(source, target);
+        try {
+            Files.createDirectories(directory);
+            Path tempPath = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+                properties.store(outputStream, null);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint of a finished copy.
+     *
+     * @param source Source URL
+     * @param target Target URL
+     */
+    public void delete(URL source, URL target) {
+        try {
+            Files.deleteIfExists(pathOf(source, target));
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    private Path pathOf(URL source, URL target) {
+        byte[] key = (source.toString() + " " + target.toString()).getBytes(StandardCharsets.UTF_8);
+        return directory.resolve(DatatypeConverter.printHexBinary(sha1(key, 0, key.length)).toLowerCase() + ".properties");
+    }
+
+    static byte[] sha1(byte[] bytes, int offset, int length) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA1");
+            md.update(bytes, offset, length);
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * Number of bytes copied to the target and the hash of the last block before that position.
+     * The block hash identifies the partial target when the copy is resumed.
+     */
+    public static class Checkpoint {
+        private final long sourceSize;
+        private final long sourceLastModified;
+        private final long bytesCopied;
+        private final int blockLength;
+        private final byte[] blockHash;
+
+        public Checkpoint(long sourceSize, long sourceLastModified, long bytesCopied, int blockLength, byte[] blockHash) {
+            this.sourceSize = sourceSize;
+            this.sourceLastModified = sourceLastModified;
+            this.bytesCopied = bytesCopied;
+            this.blockLength = blockLength;
+            this.blockHash = blockHash;
+        }
+
+        public long getSourceSize() {
+            return sourceSize;
+        }
+
+        public long getSourceLastModified() {
+            return sourceLastModified;
+        }
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        public int getBlockLength() {
+            return blockLength;
+        }
+
+        public byte[] getBlockHash() {
+            return blockHash;
+        }
+    }
+}
@@ -9,24 +9,105 @@
 
 package at.beris.virtualfile.provider.operation;
 
+import at.beris.virtualfile.FileModel;
 import at.beris.virtualfile.UrlFile;
 import at.beris.virtualfile.UrlFileContext;
 import at.beris.virtualfile.exception.OperationNotSupportedException;
 import at.beris.virtualfile.exception.VirtualFileException;
+import at.beris.virtualfile.protocol.Protocol;
 import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.provider.LocalFileOperationProvider;
+import at.beris.virtualfile.provider.SftpFileOperationProvider;
+import at.beris.virtualfile.util.ChecksumUtils;
 import at.beris.virtualfile.util.UrlUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CopyFileOperation extends AbstractFileOperation<Integer, Boolean> {
+    private final static Logger LOGGER = LoggerFactory.getLogger(CopyFileOperation.class);
+
+    public final static long TRANSFER_CHUNK_SIZE = 1024 * 1024 * 8;
+
+    public final static long RANGE_TRANSFER_MIN_SIZE = 1024 * 1024 * 4;
+
+    public final static long CHECKPOINT_INTERVAL = 1024 * 1024 * 8;
+
+    private int threadPoolSize = 1;
+    private CopyCheckpointStore checkpointStore;
+    private String digestAlgorithm;
+    private final Map<String, Byte[]> sourceChecksums = new ConcurrentHashMap<>();
+    private final Map<String, Byte[]> targetChecksums = new ConcurrentHashMap<>();
 
     public CopyFileOperation(UrlFileContext fileContext, FileOperationProvider fileOperationProvider) {
         super(fileContext, fileOperationProvider);
         fileOperationResult = 0;
     }
 
+    /**
+     * Sets the number of threads copying the files of a directory tree. With a single thread the tree is
+     * copied sequentially.
+     *
+     * @param threadPoolSize Number of threads
+     * @return CopyFileOperation
+     */
+    public CopyFileOperation setThreadPoolSize(int threadPoolSize) {
+        this.threadPoolSize = Math.max(1, threadPoolSize);
+        return this;
+    }
+
+    /**
+     * Makes the copy resumable. A checkpoint is saved while a file is copied and removed when it is complete.
+     * If the listener decides to continue with an existing target, a target that matches its checkpoint is
+     * continued instead of being copied again from the start.
+     *
+     * @param checkpointStore CopyCheckpointStore or null to always copy from the start
+     * @return CopyFileOperation
+     */
+    public CopyFileOperation setCheckpointStore(CopyCheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+        return this;
+    }
+
+    /**
+     * Calculates a checksum of each file while it is copied, so that the copy can be verified without reading
+     * the files again. The checksum is cached in the model of the target file.
+     *
+     * @param digestAlgorithm Name of the MessageDigest algorithm or null to copy without checksums
+     * @return CopyFileOperation
+     */
+    public CopyFileOperation setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+        return this;
+    }
+
+    /**
+     * @return Result of the last execution with the checksums of the files copied completely
+     */
+    public CopyResult getCopyResult() {
+        return new CopyResult(fileOperationResult, digestAlgorithm, sourceChecksums, targetChecksums);
+    }
+
     @Override
     public Integer execute(UrlFile source, UrlFile target, FileOperationListener listener) {
         super.execute(source, target, listener);
@@ -34,10 +115,25 @@ public class CopyFileOperation extends AbstractFileOperation<Integer, Boolean> {
             throw new OperationNotSupportedException("Can't copy directory to a file!");
         if (!source.isDirectory() && target.isDirectory())
             target = fileContext.resolveFile(UrlUtils.newUrl(target.getUrl(), source.getName()));
-        processFilesRecursively(source, target, listener);
+        int threadPoolSize = getThreadPoolSize(target);
+        if (threadPoolSize > 1 && source.isDirectory())
+            processFilesConcurrently(source, target, listener, threadPoolSize);
+        else
+            processFilesRecursively(source, target, listener);
         return fileOperationResult;
     }
 
+    /**
+     * A copy within a remote site holds a pooled connection for the source stream while it borrows another one
+     * for the target stream. The number of threads is kept below the connections of the site, so that at
+     * least one thread always gets both connections.
+     */
+    private int getThreadPoolSize(UrlFile target) {
+        if (UrlUtils.getProtocol(target.getUrl()) == Protocol.FILE || fileContext.getFileOperationProvider(target.getUrl()) != fileOperationProvider)
+            return threadPoolSize;
+        return Math.min(threadPoolSize, Math.max(1, fileOperationProvider.getMaxConnections() - 1));
+    }
+
     @Override
     protected void executeFileOperation(UrlFile source, UrlFile target, FileOperationListener listener) {
         boolean createFile = true;
@@ -59,31 +155,346 @@ public class CopyFileOperation extends AbstractFileOperation<Integer, Boolean> {
     }
 
     private void copyFile(UrlFile source, UrlFile target, FileOperationListener listener) {
-        CopyStreamBufferOperation streamBufferOperation = new CopyStreamBufferOperation();
+        MessageDigest messageDigest = digestAlgorithm != null ? ChecksumUtils.createMessageDigest(digestAlgorithm) : null;
+        boolean complete;
+
+        if (checkpointStore != null)
+            complete = copyFileResumable(source, target, listener, messageDigest);
+        else if (isLocalCopy(target))
+            complete = copyLocalFile(source, target, listener, messageDigest);
+        else {
+            int rangeCount = messageDigest == null ? getRangeCount(source, target) : 1;
+            if (rangeCount > 1) {
+                copyFileInRanges(source, target, listener, rangeCount);
+                return;
+            }
+            complete = copyFileStreams(source, target, listener, messageDigest);
+        }
+
+        if (messageDigest != null && complete)
+            storeChecksum(source, target, ChecksumUtils.toObjectArray(messageDigest.digest()));
+    }
+
+    private boolean copyFileStreams(UrlFile source, UrlFile target, FileOperationListener listener, MessageDigest messageDigest) {
+        long sourceFileSize = source.getSize();
+        CopyStreamBufferOperation streamBufferOperation = new CopyStreamBufferOperation(messageDigest);
 
         try (InputStream sourceStream = source.getInputStream(); OutputStream targetStream = target.getOutputStream()) {
-            processStreams(sourceStream, targetStream, source.getSize(), listener, streamBufferOperation);
+            long bytesCopied = processStreams(sourceStream, targetStream, sourceFileSize, listener, streamBufferOperation);
+            return sourceFileSize < 0 || bytesCopied == sourceFileSize;
         } catch (IOException e) {
             throw new VirtualFileException(e);
         }
     }
 
-    private void calculateFileOperationResult() {
-        Boolean isFileCopySuccessful = true;
-        for (Boolean streamBufferOperationResult : streamBufferOperationResultList) {
-            isFileCopySuccessful &= streamBufferOperationResult;
+    /**
+     * The bytes were hashed while they were written, so the checksum is the one of the source and of the
+     * target. The target is refreshed before its checksum is cached, because the cached checksum is only
+     * valid for the size and modification time of the model.
+     */
+    private void storeChecksum(UrlFile source, UrlFile target, Byte[] checksum) {
+        sourceChecksums.put(source.getUrl().toString(), checksum);
+        targetChecksums.put(target.getUrl().toString(), checksum);
+        target.refresh();
+        target.getModel().setChecksum(digestAlgorithm, checksum);
+    }
+
+    private boolean copyFileResumable(UrlFile source, UrlFile target, FileOperationListener listener, MessageDigest messageDigest) {
+        long sourceFileSize = source.getSize();
+        long sourceLastModified = source.getLastModifiedTime() != null ? source.getLastModifiedTime().toMillis() : -1;
+        long offset = getResumeOffset(source, target, sourceFileSize, sourceLastModified);
+        if (offset > 0)
+            LOGGER.info("Resume copy of {} at byte {}", source, offset);
+
+        if (offset > 0 && messageDigest != null)
+            updateDigest(messageDigest, target, offset);
+
+        CheckpointStreamBufferOperation streamBufferOperation =
+                new CheckpointStreamBufferOperation(source, target, sourceFileSize, sourceLastModified, offset, messageDigest);
+        try (InputStream sourceStream = offset > 0 ? source.getInputStream(offset) : source.getInputStream();
+             OutputStream targetStream = offset > 0 ? target.getOutputStream(true) : target.getOutputStream()) {
+            processStreams(sourceStream, targetStream, offset, sourceFileSize, listener, streamBufferOperation);
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+
+        if (streamBufferOperation.position < sourceFileSize)
+            return false;
+        checkpointStore.delete(source.getUrl(), target.getUrl());
+        return true;
+    }
+
+    /**
+     * Hashes the part of the target that was copied before the copy was resumed.
+     */
+    private void updateDigest(MessageDigest messageDigest, UrlFile target, long length) {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        long bytesReadTotal = 0;
+        try (InputStream targetStream = target.getInputStream()) {
+            int bytesRead;
+            while (bytesReadTotal < length && (bytesRead = targetStream.read(buffer, 0, (int) Math.min(buffer.length, length - bytesReadTotal))) > 0) {
+                messageDigest.update(buffer, 0, bytesRead);
+                bytesReadTotal += bytesRead;
+            }
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * A copy is continued after the existing content of the target, if the source didn't change and the
+     * target still contains the last block recorded in the checkpoint. Bytes written after the checkpoint
+     * came from the same source in order, so they are kept as well.
+     *
+     * @return Offset to continue at or 0 to copy from the start
+     */
+    private long getResumeOffset(UrlFile source, UrlFile target, long sourceFileSize, long sourceLastModified) {
+        CopyCheckpointStore.Checkpoint checkpoint = checkpointStore.load(source.getUrl(), target.getUrl());
+        if (checkpoint == null || checkpoint.getSourceSize() != sourceFileSize || checkpoint.getSourceLastModified() != sourceLastModified)
+            return 0;
+
+        target.refresh();
+        if (!target.exists())
+            return 0;
+        long targetFileSize = target.getSize();
+        if (targetFileSize < checkpoint.getBytesCopied() || targetFileSize > sourceFileSize)
+            return 0;
+
+        byte[] block = new byte[checkpoint.getBlockLength()];
+        int blockBytesRead = 0;
+        try (InputStream targetStream = target.getInputStream(checkpoint.getBytesCopied() - block.length)) {
+            int bytesRead;
+            while (blockBytesRead < block.length && (bytesRead = targetStream.read(block, blockBytesRead, block.length - blockBytesRead)) > 0)
+                blockBytesRead += bytesRead;
+        } catch (IOException e) {
+            throw new VirtualFileException(e);
         }
+        if (blockBytesRead < block.length || !Arrays.equals(checkpoint.getBlockHash(), CopyCheckpointStore.sha1(block, 0, block.length)))
+            return 0;
+        return targetFileSize;
+    }
 
-        if (isFileCopySuccessful)
-            fileOperationResult++;
+    private boolean isLocalCopy(UrlFile target) {
+        return fileOperationProvider instanceof LocalFileOperationProvider
+                && UrlUtils.getProtocol(target.getUrl()) == Protocol.FILE;
+    }
+
+    /**
+     * Copies a local file to a local target with FileChannel.transferTo, so that the bytes don't pass through
+     * the heap. If a checksum is calculated, the source is mapped in chunks instead, which are hashed and
+     * written from the same mapping. The listener is notified after each chunk.
+     *
+     * @return True if the whole file was copied
+     */
+    private boolean copyLocalFile(UrlFile source, UrlFile target, FileOperationListener listener, MessageDigest messageDigest) {
+        try (FileChannel sourceChannel = FileChannel.open(toPath(source), StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(toPath(target), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long sourceFileSize = sourceChannel.size();
+            long bytesProcessedTotal = 0;
+
+            while (bytesProcessedTotal < sourceFileSize) {
+                long chunkSize = Math.min(TRANSFER_CHUNK_SIZE, sourceFileSize - bytesProcessedTotal);
+                long bytesTransferred;
+                if (messageDigest != null) {
+                    MappedByteBuffer buffer = sourceChannel.map(FileChannel.MapMode.READ_ONLY, bytesProcessedTotal, chunkSize);
+                    messageDigest.update(buffer.duplicate());
+                    while (buffer.hasRemaining())
+                        targetChannel.write(buffer);
+                    bytesTransferred = chunkSize;
+                } else
+                    bytesTransferred = sourceChannel.transferTo(bytesProcessedTotal, chunkSize, targetChannel);
+                if (bytesTransferred <= 0)
+                    break;
+                bytesProcessedTotal += bytesTransferred;
+                streamBufferOperationResultList.add(true);
+
+                if (listener != null) {
+                    listener.afterStreamBufferProcessed(sourceFileSize, bytesTransferred, bytesProcessedTotal);
+                    if (listener.interrupt())
+                        break;
+                }
+            }
+            return bytesProcessedTotal == sourceFileSize;
+        } catch (IOException | URISyntaxException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * A file downloaded from a SFTP site to a local target is split into byte ranges that are read over
+     * separate pooled channels, because a single channel is limited by the round-trip time of its window.
+     *
+     * @return Number of ranges or 1 if the file is transferred with a single stream
+     */
+    private int getRangeCount(UrlFile source, UrlFile target) {
+        if (!(fileOperationProvider instanceof SftpFileOperationProvider) || UrlUtils.getProtocol(target.getUrl()) != Protocol.FILE)
+            return 1;
+        long rangeCount = Math.min(((SftpFileOperationProvider) fileOperationProvider).getMaxConnections(),
+                source.getSize() / RANGE_TRANSFER_MIN_SIZE);
+        return (int) Math.max(1, rangeCount);
+    }
+
+    private void copyFileInRanges(UrlFile source, UrlFile target, FileOperationListener listener, int rangeCount) {
+        long sourceFileSize = source.getSize();
+        long rangeSize = (sourceFileSize + rangeCount - 1) / rangeCount;
+        ExecutorService executorService = Executors.newFixedThreadPool(rangeCount, runnable -> {
+            Thread thread = new Thread(runnable, "VirtualFile-RangeTransfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (FileChannel targetChannel = FileChannel.open(toPath(target), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RangeTransfer rangeTransfer = new RangeTransfer(source.getModel(), sourceFileSize, targetChannel, listener);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (long offset = 0; offset < sourceFileSize; offset += rangeSize) {
+                long rangeOffset = offset;
+                long rangeLength = Math.min(rangeSize, sourceFileSize - offset);
+                tasks.add(() -> {
+                    rangeTransfer.copy(rangeOffset, rangeLength);
+                    return null;
+                });
+            }
+            for (Future<Void> future : executorService.invokeAll(tasks))
+                future.get();
+            if (!rangeTransfer.interrupted && targetChannel.size() != sourceFileSize)
+                throw new VirtualFileException(new EOFException("Target size " + targetChannel.size()
+                        + " differs from source size " + sourceFileSize));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new VirtualFileException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VirtualFileException(e);
+        } catch (IOException | URISyntaxException e) {
+            throw new VirtualFileException(e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void calculateFileOperationResult() {
+        synchronized (streamBufferOperationResultList) {
+            Boolean isFileCopySuccessful = true;
+            for (Boolean streamBufferOperationResult : streamBufferOperationResultList) {
+                isFileCopySuccessful &= streamBufferOperationResult;
+            }
+
+            if (isFileCopySuccessful)
+                fileOperationResult++;
+        }
     }
 
     private class CopyStreamBufferOperation extends StreamBufferOperation<Boolean, InputStream, OutputStream> {
+        private final MessageDigest messageDigest;
+
+        private CopyStreamBufferOperation(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
 
         @Override
         Boolean process(InputStream sourceStream, OutputStream targetStream, byte[] sourceBuffer, int sourceBytesRead) {
             try {
                 targetStream.write(sourceBuffer, 0, sourceBytesRead);
+                if (messageDigest != null)
+                    messageDigest.update(sourceBuffer, 0, sourceBytesRead);
+                return true;
+            } catch (IOException e) {
+                throw new VirtualFileException(e);
+            }
+        }
+    }
+
+    /**
+     * Copies byte ranges of a SFTP file to their positions in the local target file.
+     */
+    private class RangeTransfer {
+        private final FileModel sourceModel;
+        private final long sourceFileSize;
+        private final FileChannel targetChannel;
+        private final FileOperationListener listener;
+        private long bytesProcessedTotal;
+        private volatile boolean interrupted;
+
+        private RangeTransfer(FileModel sourceModel, long sourceFileSize, FileChannel targetChannel, FileOperationListener listener) {
+            this.sourceModel = sourceModel;
+            this.sourceFileSize = sourceFileSize;
+            this.targetChannel = targetChannel;
+            this.listener = listener;
+        }
+
+        private void copy(long offset, long length) throws IOException {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            long position = offset;
+            long end = offset + length;
+
+            try (InputStream sourceStream = ((SftpFileOperationProvider) fileOperationProvider).getInputStream(sourceModel, offset)) {
+                while (position < end && !interrupted) {
+                    int bytesRead = sourceStream.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                    if (bytesRead <= 0)
+                        break;
+
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, bytesRead);
+                    while (byteBuffer.hasRemaining())
+                        position += targetChannel.write(byteBuffer, position);
+                    streamBufferOperationResultList.add(true);
+                    afterBufferProcessed(bytesRead);
+                }
+            }
+            if (position < end && !interrupted)
+                throw new VirtualFileException(new EOFException("Range ended at " + position + " instead of " + end));
+        }
+
+        private void afterBufferProcessed(int bytesRead) {
+            if (listener == null)
+                return;
+            synchronized (listener) {
+                bytesProcessedTotal += bytesRead;
+                listener.afterStreamBufferProcessed(sourceFileSize, bytesRead, bytesProcessedTotal);
+                if (listener.interrupt())
+                    interrupted = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the buffers to the target and saves a checkpoint after each CHECKPOINT_INTERVAL bytes.
+     */
+    private class CheckpointStreamBufferOperation extends StreamBufferOperation<Boolean, InputStream, OutputStream> {
+        private final UrlFile source;
+        private final UrlFile target;
+        private final long sourceFileSize;
+        private final long sourceLastModified;
+        private final MessageDigest messageDigest;
+        private long position;
+        private long checkpointPosition;
+
+        private CheckpointStreamBufferOperation(UrlFile source, UrlFile target, long sourceFileSize, long sourceLastModified, long offset,
+                                                MessageDigest messageDigest) {
+            this.source = source;
+            this.target = target;
+            this.sourceFileSize = sourceFileSize;
+            this.sourceLastModified = sourceLastModified;
+            this.position = offset;
+            this.checkpointPosition = offset;
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        Boolean process(InputStream sourceStream, OutputStream targetStream, byte[] sourceBuffer, int sourceBytesRead) {
+            try {
+                targetStream.write(sourceBuffer, 0, sourceBytesRead);
+                if (messageDigest != null)
+                    messageDigest.update(sourceBuffer, 0, sourceBytesRead);
+                position += sourceBytesRead;
+                if (position - checkpointPosition >= CHECKPOINT_INTERVAL) {
+                    targetStream.flush();
+                    checkpointStore.save(source.getUrl(), target.getUrl(), new CopyCheckpointStore.Checkpoint(sourceFileSize,
+                            sourceLastModified, position, sourceBytesRead, CopyCheckpointStore.sha1(sourceBuffer, 0, sourceBytesRead)));
+                    checkpointPosition = position;
+                }
                 return true;
             } catch (IOException e) {
                 throw new VirtualFileException(e);
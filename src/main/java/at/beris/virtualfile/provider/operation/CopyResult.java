@@ -0,0 +1,72 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.provider.operation;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Result of a copy with the checksums that were calculated while the files were copied.
+ * A file that wasn't copied completely has no checksums. The checksums are mapped by the URL strings,
+ * because URL.equals resolves the host names.
+ */
+public class CopyResult {
+    private final int filesCopied;
+    private final String digestAlgorithm;
+    private final Map<String, Byte[]> sourceChecksums;
+    private final Map<String, Byte[]> targetChecksums;
+
+    public CopyResult(int filesCopied, String digestAlgorithm, Map<String, Byte[]> sourceChecksums, Map<String, Byte[]> targetChecksums) {
+        this.filesCopied = filesCopied;
+        this.digestAlgorithm = digestAlgorithm;
+        this.sourceChecksums = Collections.unmodifiableMap(new HashMap<>(sourceChecksums));
+        this.targetChecksums = Collections.unmodifiableMap(new HashMap<>(targetChecksums));
+    }
+
+    public int getFilesCopied() {
+        return filesCopied;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * @param sourceUrl URL of a copied source file
+     * @return Checksum of the bytes read from the source file or null if it wasn't copied completely
+     */
+    public Byte[] getSourceChecksum(URL sourceUrl) {
+        return sourceChecksums.get(sourceUrl.toString());
+    }
+
+    /**
+     * @param targetUrl URL of a target file
+     * @return Checksum of the bytes written to the target file or null if it wasn't copied completely
+     */
+    public Byte[] getTargetChecksum(URL targetUrl) {
+        return targetChecksums.get(targetUrl.toString());
+    }
+
+    /**
+     * @return Checksums of the source files mapped by their URL strings
+     */
+    public Map<String, Byte[]> getSourceChecksums() {
+        return sourceChecksums;
+    }
+
+    /**
+     * @return Checksums of the target files mapped by their URL strings
+     */
+    public Map<String, Byte[]> getTargetChecksums() {
+        return targetChecksums;
+    }
+}
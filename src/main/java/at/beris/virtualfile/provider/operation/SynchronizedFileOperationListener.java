@@ -0,0 +1,62 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.provider.operation;
+
+import at.beris.virtualfile.VirtualFile;
+
+/**
+ * Forwards the callbacks of concurrently processed files to a listener one at a time. The progress of the
+ * buffers is reported for the whole tree, since the totals of single files would interleave. The size of the
+ * tree isn't known in advance, it grows with the files of each directory that is listed.
+ */
+class SynchronizedFileOperationListener implements FileOperationListener {
+    private final FileOperationListener listener;
+    private long treeSize;
+    private long bytesProcessedTotal;
+
+    SynchronizedFileOperationListener(FileOperationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds the size of files, before their buffers are reported.
+     *
+     * @param size Size of the files
+     */
+    synchronized void addTreeSize(long size) {
+        treeSize += size;
+    }
+
+    @Override
+    public synchronized boolean fileExists(VirtualFile file) {
+        return listener.fileExists(file);
+    }
+
+    @Override
+    public synchronized void startProcessingFile(VirtualFile file, long currentFileNumber) {
+        listener.startProcessingFile(file, currentFileNumber);
+    }
+
+    @Override
+    public synchronized void finishedProcessingFile(VirtualFile file) {
+        listener.finishedProcessingFile(file);
+    }
+
+    @Override
+    public synchronized void afterStreamBufferProcessed(long fileSize, long bytesProcessed, long bytesProcessedTotal) {
+        this.bytesProcessedTotal += bytesProcessed;
+        listener.afterStreamBufferProcessed(treeSize, bytesProcessed, this.bytesProcessedTotal);
+    }
+
+    @Override
+    public synchronized boolean interrupt() {
+        return listener.interrupt();
+    }
+}
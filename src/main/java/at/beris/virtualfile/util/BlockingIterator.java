@@ -0,0 +1,112 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.util;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands elements from producing threads to the consumer of the iterator. The queue is bounded, so a producer
+ * waits while the consumer is behind.
+ *
+ * @param <T> Type of the elements
+ */
+public class BlockingIterator<T> implements Iterator<T> {
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private volatile boolean closed;
+    private volatile RuntimeException error;
+    private Object next;
+
+    /**
+     * @param capacity Maximum number of elements waiting for the consumer
+     */
+    public BlockingIterator(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Adds an element. Blocks while the queue is full.
+     *
+     * @param element Element
+     * @return False if the iterator was closed and the producer should stop
+     */
+    public boolean offer(T element) {
+        return put(element);
+    }
+
+    /**
+     * Ends the iteration after the elements that were added.
+     *
+     * @param error Error thrown to the consumer at the end or null
+     */
+    public void finish(RuntimeException error) {
+        this.error = error;
+        put(END);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed)
+            return false;
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new VirtualFileException(e);
+            }
+        }
+        if (next != END)
+            return true;
+        if (error != null)
+            throw error;
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        T element = (T) next;
+        next = null;
+        return element;
+    }
+
+    /**
+     * Stops the producers. Clearing the queue wakes up a producer waiting for space.
+     */
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    private boolean put(Object element) {
+        if (closed)
+            return false;
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !closed;
+    }
+}
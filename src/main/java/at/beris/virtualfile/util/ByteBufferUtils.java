@@ -0,0 +1,40 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.util;
+
+import java.nio.ByteBuffer;
+
+public class ByteBufferUtils {
+
+    /**
+     * Finds the first byte that differs between the remaining bytes of two buffers. Eight bytes are compared
+     * at a time. The positions of the buffers are not changed.
+     *
+     * @param buffer      Buffer
+     * @param otherBuffer Other buffer
+     * @return Relative index of the first mismatch or -1 if the remaining bytes are equal
+     */
+    public static int mismatch(ByteBuffer buffer, ByteBuffer otherBuffer) {
+        int length = Math.min(buffer.remaining(), otherBuffer.remaining());
+        int position = buffer.position();
+        int otherPosition = otherBuffer.position();
+
+        int i = 0;
+        for (; i <= length - Long.BYTES; i += Long.BYTES) {
+            if (buffer.getLong(position + i) != otherBuffer.getLong(otherPosition + i))
+                break;
+        }
+        for (; i < length; i++) {
+            if (buffer.get(position + i) != otherBuffer.get(otherPosition + i))
+                return i;
+        }
+        return buffer.remaining() == otherBuffer.remaining() ? -1 : length;
+    }
+}
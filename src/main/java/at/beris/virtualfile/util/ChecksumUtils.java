@@ -0,0 +1,233 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.util;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+public class ChecksumUtils {
+    public static final String SHA1 = "SHA1";
+
+    public static final String SHA256 = "SHA-256";
+
+    public static final String MD5 = "MD5";
+
+    public static final String CRC32 = "CRC32";
+
+    /**
+     * Size of the chunks that are hashed separately for a tree checksum.
+     */
+    public static final long TREE_CHUNK_SIZE = 1024 * 1024 * 64;
+
+    private static final Map<String, Supplier<MessageDigest>> DIGEST_FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        registerDigest(CRC32, Crc32MessageDigest::new);
+    }
+
+    private static final int BUFFER_SIZE = 1024 * 64;
+
+    /**
+     * Calculates the SHA-1 checksum of the remaining content of the stream.
+     *
+     * @param inputStream InputStream
+     * @return Checksum
+     * @throws IOException If reading the stream fails
+     */
+    public static byte[] sha1(InputStream inputStream) throws IOException {
+        return digest(inputStream, SHA1);
+    }
+
+    /**
+     * Registers a digest algorithm that isn't provided by the installed security providers, e.g. a fast
+     * non-cryptographic hash. A registered algorithm takes precedence over the security providers.
+     *
+     * @param algorithm Name of the algorithm
+     * @param factory   Factory creating a new MessageDigest for each checksum
+     */
+    public static void registerDigest(String algorithm, Supplier<MessageDigest> factory) {
+        DIGEST_FACTORIES.put(algorithm.toUpperCase(), factory);
+    }
+
+    /**
+     * Calculates the checksum of the remaining content of the stream.
+     *
+     * @param inputStream InputStream
+     * @param algorithm   Digest algorithm
+     * @return Checksum
+     * @throws IOException If reading the stream fails
+     */
+    public static byte[] digest(InputStream inputStream, String algorithm) throws IOException {
+        MessageDigest md = createMessageDigest(algorithm);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1)
+            md.update(buffer, 0, bytesRead);
+        return md.digest();
+    }
+
+    /**
+     * Calculates the tree checksum of the remaining content of the stream. The content is split into chunks
+     * of TREE_CHUNK_SIZE bytes. The tree checksum is the digest of the concatenated digests of the chunks,
+     * so the chunks of a file can also be hashed in parallel.
+     *
+     * @param inputStream InputStream
+     * @param algorithm   Digest algorithm
+     * @return Tree checksum
+     * @throws IOException If reading the stream fails
+     */
+    public static byte[] treeDigest(InputStream inputStream, String algorithm) throws IOException {
+        MessageDigest treeMd = createMessageDigest(algorithm);
+        MessageDigest chunkMd = createMessageDigest(algorithm);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long chunkBytesRead = 0;
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, TREE_CHUNK_SIZE - chunkBytesRead))) != -1) {
+            chunkMd.update(buffer, 0, bytesRead);
+            chunkBytesRead += bytesRead;
+            if (chunkBytesRead == TREE_CHUNK_SIZE) {
+                treeMd.update(chunkMd.digest());
+                chunkBytesRead = 0;
+            }
+        }
+        if (chunkBytesRead > 0)
+            treeMd.update(chunkMd.digest());
+        return treeMd.digest();
+    }
+
+    public static byte[] sha1(byte[] bytes) {
+        return createMessageDigest(SHA1).digest(bytes);
+    }
+
+    public static MessageDigest createMessageDigest(String algorithm) {
+        Supplier<MessageDigest> factory = DIGEST_FACTORIES.get(algorithm.toUpperCase());
+        if (factory != null)
+            return factory.get();
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new VirtualFileException(e);
+        }
+    }
+
+    /**
+     * Finds a SHA-1 checksum in the output of a server, e.g. of sha1sum or a FTP HASH reply.
+     *
+     * @param output Output
+     * @return Checksum or null if the output doesn't contain one
+     */
+    public static byte[] parseSha1(String output) {
+        return parseChecksum(output, SHA1);
+    }
+
+    /**
+     * Finds a checksum in the output of a server, e.g. of sha256sum or a FTP HASH reply.
+     *
+     * @param output    Output
+     * @param algorithm Digest algorithm
+     * @return Checksum or null if the output doesn't contain a checksum of the algorithm's length
+     */
+    public static byte[] parseChecksum(String output, String algorithm) {
+        if (output == null)
+            return null;
+        int hexLength = createMessageDigest(algorithm).getDigestLength() * 2;
+        Matcher matcher = Pattern.compile("(?<![0-9a-fA-F])[0-9a-fA-F]{" + hexLength + "}(?![0-9a-fA-F])").matcher(output);
+        if (!matcher.find())
+            return null;
+
+        String hex = matcher.group();
+        byte[] checksum = new byte[hex.length() / 2];
+        for (int i = 0; i < checksum.length; i++)
+            checksum[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        return checksum;
+    }
+
+    /**
+     * Gets the name of an algorithm without hyphens in upper case, so that e.g. SHA-1 and SHA1 are equal.
+     *
+     * @param algorithm Digest algorithm
+     * @return Normalized name
+     */
+    public static String normalizeAlgorithm(String algorithm) {
+        return algorithm.replace("-", "").toUpperCase();
+    }
+
+    public static byte[] toPrimitiveArray(Byte[] objectArray) {
+        if (objectArray == null)
+            return null;
+        byte[] bytes = new byte[objectArray.length];
+        for (int i = 0; i < objectArray.length; i++)
+            bytes[i] = objectArray[i];
+        return bytes;
+    }
+
+    public static Byte[] toObjectArray(byte[] bytes) {
+        if (bytes == null)
+            return null;
+        Byte[] objectArray = new Byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++)
+            objectArray[i] = bytes[i];
+        return objectArray;
+    }
+
+    /**
+     * CRC32 of java.util.zip as a MessageDigest. The checksum is returned big-endian in 4 bytes.
+     */
+    private static class Crc32MessageDigest extends MessageDigest {
+        private final CRC32 crc32 = new CRC32();
+
+        private Crc32MessageDigest() {
+            super(CRC32);
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            crc32.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            crc32.update(input, offset, len);
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            crc32.update(input);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            long value = crc32.getValue();
+            crc32.reset();
+            return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return 4;
+        }
+
+        @Override
+        protected void engineReset() {
+            crc32.reset();
+        }
+    }
+}
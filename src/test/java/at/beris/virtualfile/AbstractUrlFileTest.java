@@ -11,6 +11,8 @@ package at.beris.virtualfile;
 
 import at.beris.virtualfile.attribute.FileAttribute;
 import at.beris.virtualfile.os.OsFamily;
+import at.beris.virtualfile.protocol.Protocol;
+import at.beris.virtualfile.provider.operation.CopyFileOperation;
 import at.beris.virtualfile.provider.operation.FileOperationListener;
 import at.beris.virtualfile.util.OsUtils;
 import at.beris.virtualfile.util.UrlUtils;
@@ -112,7 +114,8 @@ public abstract class AbstractUrlFileTest {
         FileOperationListener copyListenerMock = Mockito.mock(FileOperationListener.class);
         sourceFile.copy(targetFile, copyListenerMock);
         assertArrayEquals(sourceFile.checksum(), targetFile.checksum());
-        assertCopyListener(copyListenerMock);
+        boolean localCopy = UrlUtils.getProtocol(targetFileUrl) == Protocol.FILE;
+        assertCopyListener(copyListenerMock, localCopy ? CopyFileOperation.TRANSFER_CHUNK_SIZE : STREAM_BUFFER_SIZE);
     }
 
     protected void copyDirectory() throws IOException, URISyntaxException {
@@ -238,21 +241,24 @@ public abstract class AbstractUrlFileTest {
                 VirtualFile::getLastAccessTime);
     }
 
-    protected void assertCopyListener(FileOperationListener copyListener) {
+    protected void assertCopyListener(FileOperationListener copyListener, long chunkSize) {
+        int numOfChunks = (int) ((TEST_SOURCE_FILE_SIZE + chunkSize - 1) / chunkSize);
         ArgumentCaptor<Long> bytesCopiedBlockArgumentCaptor = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long> bytesCopiedTotalArgumentCaptor = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long> fileSizeArgumentCaptor = ArgumentCaptor.forClass(Long.class);
-        Mockito.verify(copyListener, times(2)).afterStreamBufferProcessed(fileSizeArgumentCaptor.capture(), bytesCopiedBlockArgumentCaptor.capture(), bytesCopiedTotalArgumentCaptor.capture());
+        Mockito.verify(copyListener, times(numOfChunks)).afterStreamBufferProcessed(fileSizeArgumentCaptor.capture(), bytesCopiedBlockArgumentCaptor.capture(), bytesCopiedTotalArgumentCaptor.capture());
 
         List<Long> bytesCopiedBlockList = bytesCopiedBlockArgumentCaptor.getAllValues();
         List<Long> bytesCopiedTotalList = bytesCopiedTotalArgumentCaptor.getAllValues();
 
-        assertEquals(2, bytesCopiedBlockList.size());
-        assertEquals(STREAM_BUFFER_SIZE, bytesCopiedBlockList.get(0).intValue());
-        assertEquals(STREAM_BUFFER_SIZE, bytesCopiedTotalList.get(0).intValue());
-
-        assertEquals(TEST_SOURCE_FILE_SIZE % STREAM_BUFFER_SIZE, bytesCopiedBlockList.get(1).intValue());
-        assertEquals(TEST_SOURCE_FILE_SIZE, bytesCopiedTotalList.get(1).intValue());
+        assertEquals(numOfChunks, bytesCopiedBlockList.size());
+        long bytesCopiedTotal = 0;
+        for (int i = 0; i < numOfChunks; i++) {
+            long bytesCopiedBlock = Math.min(chunkSize, TEST_SOURCE_FILE_SIZE - bytesCopiedTotal);
+            bytesCopiedTotal += bytesCopiedBlock;
+            assertEquals(bytesCopiedBlock, bytesCopiedBlockList.get(i).longValue());
+            assertEquals(bytesCopiedTotal, bytesCopiedTotalList.get(i).longValue());
+        }
     }
 
     protected void assertDirectory(List<String> sourceFileUrlList, List<String> targetFileUrlList) {
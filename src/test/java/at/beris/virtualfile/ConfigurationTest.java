@@ -118,6 +118,8 @@ public class ConfigurationTest {
     public void loadConfiguration() {
         Configuration configuration = Configuration.loadFromXmlFile(new File(TEST_CONFIGURATION_FILE));
         Assert.assertEquals(10000, configuration.getFileCacheSize());
+        Assert.assertEquals(1, configuration.getCopyThreadPoolSize());
+        Assert.assertEquals(0, configuration.getChecksumCacheSize());
     }
 
     @AfterClass
@@ -9,7 +9,9 @@
 
 package at.beris.virtualfile;
 
+import at.beris.virtualfile.cache.EvictionPolicy;
 import at.beris.virtualfile.cache.FileCache;
+import at.beris.virtualfile.util.UrlUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -18,10 +20,18 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -29,7 +39,7 @@ import static org.mockito.Mockito.verify;
 public class FileCacheTest {
 
     public static final int CACHE_SIZE = 100;
-    public static final String TEST_URL = "file://test.txt";
+    public static final String TEST_URL = "file:/test/file";
     private FileCache fileCache;
 
     @Mock
@@ -55,37 +65,217 @@ public class FileCacheTest {
     }
 
     @Test
-    public void purgeCache() {
-        List<UrlFile> entries = new ArrayList<>();
-        for (int i = 0; i < CACHE_SIZE + 1; i++) {
-            UrlFile file = Mockito.mock(UrlFile.class);
-            entries.add(file);
-            putValue(TEST_URL + String.valueOf(i), file);
+    public void evictLeastRecentlyUsedEntry() {
+        fillCache();
+        Assert.assertNotNull(getValue(TEST_URL + String.valueOf(0)));
+        putValue(TEST_URL + String.valueOf(CACHE_SIZE), Mockito.mock(UrlFile.class));
+
+        Assert.assertEquals(CACHE_SIZE, fileCache.size());
+        verify(callbackHandlerMock, times(1)).afterEntryPurged(any(UrlFile.class));
+        Assert.assertNotNull(getValue(TEST_URL + String.valueOf(0)));
+        Assert.assertNull(getValue(TEST_URL + String.valueOf(1)));
+    }
+
+    @Test
+    public void evictEntriesIncrementally() {
+        List<UrlFile> entries = fillCache();
+        for (int i = CACHE_SIZE; i < CACHE_SIZE + 10; i++) {
+            putValue(TEST_URL + String.valueOf(i), Mockito.mock(UrlFile.class));
+            Assert.assertEquals(CACHE_SIZE, fileCache.size());
         }
 
-        Assert.assertEquals(91, fileCache.size());
         verify(callbackHandlerMock, times(10)).afterEntryPurged(any(UrlFile.class));
-        assertOldestEntriesNotExist();
-        newestNewestEntriesExist();
+        for (int i = 0; i < 10; i++) {
+            verify(callbackHandlerMock).afterEntryPurged(entries.get(i));
+            Assert.assertNull(getValue(TEST_URL + String.valueOf(i)));
+        }
+        for (int i = 10; i < CACHE_SIZE + 10; i++) {
+            Assert.assertNotNull(getValue(TEST_URL + String.valueOf(i)));
+        }
     }
 
-    private void assertOldestEntriesNotExist() {
-        for (int i = 0; i < 10; i++) {
-            Assert.assertNull(fileCache.get(TEST_URL + String.valueOf(i)));
+    @Test
+    public void shrinkCache() {
+        fillCache();
+        fileCache.setMaxSize(CACHE_SIZE / 2);
+
+        Assert.assertEquals(CACHE_SIZE / 2, fileCache.size());
+        verify(callbackHandlerMock, times(CACHE_SIZE / 2)).afterEntryPurged(any(UrlFile.class));
+        Assert.assertNull(getValue(TEST_URL + String.valueOf(0)));
+        Assert.assertNotNull(getValue(TEST_URL + String.valueOf(CACHE_SIZE - 1)));
+    }
+
+    @Test
+    public void evictEntriesExceedingMaxWeight() {
+        fileCache.setWeigher(new FileCache.Weigher() {
+            @Override
+            public long weigh(UrlFile value) {
+                return 100;
+            }
+        });
+        fillCache();
+        Assert.assertEquals(CACHE_SIZE * 100, fileCache.getWeight());
+
+        fileCache.setMaxWeight(1000);
+        Assert.assertEquals(10, fileCache.size());
+        Assert.assertEquals(1000, fileCache.getWeight());
+
+        putValue(TEST_URL + String.valueOf(CACHE_SIZE), Mockito.mock(UrlFile.class));
+        Assert.assertEquals(10, fileCache.size());
+        Assert.assertNull(getValue(TEST_URL + String.valueOf(CACHE_SIZE - 10)));
+        Assert.assertNotNull(getValue(TEST_URL + String.valueOf(CACHE_SIZE)));
+        verify(callbackHandlerMock, times(CACHE_SIZE - 9)).afterEntryPurged(any(UrlFile.class));
+
+        removeValue(TEST_URL + String.valueOf(CACHE_SIZE));
+        Assert.assertEquals(900, fileCache.getWeight());
+    }
+
+    @Test
+    public void weighEntriesOnlyWhenChanged() {
+        AtomicInteger weight = new AtomicInteger(100);
+        AtomicInteger weighCount = new AtomicInteger();
+        fileCache.setWeigher(value -> {
+            weighCount.incrementAndGet();
+            return weight.get();
+        });
+        UrlFile file = Mockito.mock(UrlFile.class);
+        putValue(TEST_URL, file);
+        for (int i = 0; i < 10; i++)
+            getValue(TEST_URL);
+        Assert.assertEquals(1, weighCount.get());
+
+        weight.set(200);
+        fileCache.updateWeight(UrlUtils.newUrl(TEST_URL), Mockito.mock(UrlFile.class));
+        Assert.assertEquals(100, fileCache.getWeight());
+        fileCache.updateWeight(UrlUtils.newUrl(TEST_URL), file);
+        Assert.assertEquals(200, fileCache.getWeight());
+        Assert.assertEquals(2, weighCount.get());
+    }
+
+    @Test
+    public void getOrCreateKeepsCreatedFile() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            fileCache.clear();
+            fileCache.setEvictionPolicy(evictionPolicy);
+            fileCache.setWeigher(value -> 100);
+            fileCache.setMaxWeight(50);
+            putValue(TEST_URL, Mockito.mock(UrlFile.class));
+
+            URL url = UrlUtils.newUrl("file:/test/dir/file.txt");
+            UrlFile file = fileCache.getOrCreate(url, fileUrl -> Mockito.mock(UrlFile.class));
+
+            Assert.assertSame(file, fileCache.get(url));
+            verify(callbackHandlerMock, never()).afterEntryPurged(file);
         }
     }
 
-    private void newestNewestEntriesExist() {
-        for (int i = 90; i < 100; i++) {
-            Assert.assertNotNull(fileCache.get(TEST_URL + String.valueOf(i)));
+    @Test
+    public void tinyLfuKeepsFrequentlyUsedEntries() {
+        fileCache.setEvictionPolicy(EvictionPolicy.TINY_LFU);
+        fillCache();
+        for (int n = 0; n < 3; n++) {
+            for (int i = 0; i < CACHE_SIZE; i++) {
+                getValue(TEST_URL + String.valueOf(i));
+            }
+        }
+
+        for (int i = CACHE_SIZE; i < CACHE_SIZE * 2; i++) {
+            putValue(TEST_URL + String.valueOf(i), Mockito.mock(UrlFile.class));
+        }
+
+        Assert.assertEquals(CACHE_SIZE, fileCache.size());
+        int numOfFrequentEntries = 0;
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (getValue(TEST_URL + String.valueOf(i)) != null)
+                numOfFrequentEntries++;
         }
+        Assert.assertTrue(numOfFrequentEntries >= CACHE_SIZE * 0.9);
+    }
+
+    @Test
+    public void concurrentAccess() throws InterruptedException {
+        final int numOfThreads = 4;
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(numOfThreads);
+        ExecutorService executorService = Executors.newFixedThreadPool(numOfThreads);
+
+        for (int t = 0; t < numOfThreads; t++) {
+            final int threadNumber = t;
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < CACHE_SIZE * 10; i++) {
+                            String key = TEST_URL + String.valueOf(threadNumber) + "_" + String.valueOf(i);
+                            UrlFile file = Mockito.mock(UrlFile.class);
+                            putValue(key, file);
+                            getValue(TEST_URL + String.valueOf(threadNumber) + "_" + String.valueOf(i / 2));
+                            if (i % 3 == 0)
+                                removeValue(key);
+                        }
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        latch.await(30, TimeUnit.SECONDS);
+        executorService.shutdown();
+        Assert.assertFalse(failed.get());
+        Assert.assertTrue(fileCache.size() <= CACHE_SIZE);
+    }
+
+    @Test
+    public void getParentEntry() {
+        UrlFile parentFile = Mockito.mock(UrlFile.class);
+        putValue("file:/test/dir/", parentFile);
+        putValue("file:/test/dir/file.txt", Mockito.mock(UrlFile.class));
+
+        Assert.assertSame(parentFile, fileCache.getParent(UrlUtils.newUrl("file:/test/dir/file.txt")));
+        Assert.assertNull(fileCache.getParent(UrlUtils.newUrl("file:/test/dir/")));
+    }
+
+    @Test
+    public void removeTree() {
+        UrlFile dirFile = Mockito.mock(UrlFile.class);
+        putValue("file:/test/dir/", dirFile);
+        putValue("file:/test/dir/file.txt", Mockito.mock(UrlFile.class));
+        putValue("file:/test/dir/subdir/", Mockito.mock(UrlFile.class));
+        putValue("file:/test/dir/subdir/file.txt", Mockito.mock(UrlFile.class));
+        putValue("file:/test/directory/", Mockito.mock(UrlFile.class));
+
+        List<UrlFile> removedFiles = fileCache.removeTree(UrlUtils.newUrl("file:/test/dir/"), false);
+
+        Assert.assertEquals(3, removedFiles.size());
+        Assert.assertEquals(2, fileCache.size());
+        Assert.assertSame(dirFile, getValue("file:/test/dir/"));
+        Assert.assertNull(getValue("file:/test/dir/subdir/file.txt"));
+        Assert.assertNotNull(getValue("file:/test/directory/"));
+        verify(callbackHandlerMock, never()).afterEntryPurged(any(UrlFile.class));
+    }
+
+    private List<UrlFile> fillCache() {
+        List<UrlFile> entries = new ArrayList<>();
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            UrlFile file = Mockito.mock(UrlFile.class);
+            entries.add(file);
+            putValue(TEST_URL + String.valueOf(i), file);
+        }
+        return entries;
+    }
+
+    private UrlFile getValue(String key) {
+        return fileCache.get(UrlUtils.newUrl(key));
     }
 
     private void putValue(String key, UrlFile file) {
-        fileCache.put(key, file);
+        fileCache.put(UrlUtils.newUrl(key), file);
     }
 
     private void removeValue(String key) {
-        fileCache.remove(key);
+        fileCache.remove(UrlUtils.newUrl(key));
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile;
+
+import at.beris.virtualfile.cache.NegativeLookupCache;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NegativeLookupCacheTest {
+
+    private static final int CACHE_SIZE = 10;
+    private static final String TEST_URL = "sftp://www.example.com/home/test/";
+
+    private NegativeLookupCache negativeLookupCache;
+
+    @Before
+    public void setUp() {
+        negativeLookupCache = new NegativeLookupCache(CACHE_SIZE, 60);
+    }
+
+    @Test
+    public void putEntry() {
+        negativeLookupCache.put(TEST_URL + "file.txt");
+        Assert.assertTrue(negativeLookupCache.contains(TEST_URL + "file.txt"));
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL + "other.txt"));
+    }
+
+    @Test
+    public void removeEldestEntry() {
+        for (int i = 0; i < CACHE_SIZE + 1; i++)
+            negativeLookupCache.put(TEST_URL + String.valueOf(i));
+
+        Assert.assertEquals(CACHE_SIZE, negativeLookupCache.size());
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL + "0"));
+        Assert.assertTrue(negativeLookupCache.contains(TEST_URL + String.valueOf(CACHE_SIZE)));
+    }
+
+    @Test
+    public void disabledTimeToLive() {
+        negativeLookupCache.setTimeToLive(0);
+        negativeLookupCache.put(TEST_URL + "file.txt");
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL + "file.txt"));
+    }
+
+    @Test
+    public void invalidateAncestorsAndDescendants() {
+        negativeLookupCache.put("sftp://www.example.com/home/");
+        negativeLookupCache.put(TEST_URL);
+        negativeLookupCache.put(TEST_URL + "dir/");
+        negativeLookupCache.put(TEST_URL + "dir/file.txt");
+        negativeLookupCache.put(TEST_URL + "directory/");
+
+        negativeLookupCache.invalidate(TEST_URL + "dir");
+
+        Assert.assertFalse(negativeLookupCache.contains("sftp://www.example.com/home/"));
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL));
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL + "dir/"));
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL + "dir/file.txt"));
+        Assert.assertTrue(negativeLookupCache.contains(TEST_URL + "directory/"));
+    }
+
+    @Test
+    public void removeEntry() {
+        negativeLookupCache.put(TEST_URL);
+        negativeLookupCache.put(TEST_URL + "dir/");
+        negativeLookupCache.put(TEST_URL + "dir/file.txt");
+
+        negativeLookupCache.remove(TEST_URL + "dir");
+
+        Assert.assertTrue(negativeLookupCache.contains(TEST_URL));
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL + "dir/"));
+        Assert.assertTrue(negativeLookupCache.contains(TEST_URL + "dir/file.txt"));
+    }
+
+    @Test
+    public void removeEntryWithAncestors() {
+        negativeLookupCache.put("sftp://www.example.com/home/");
+        negativeLookupCache.put(TEST_URL);
+        negativeLookupCache.put(TEST_URL + "dir/");
+        negativeLookupCache.put(TEST_URL + "dir/file.txt");
+        negativeLookupCache.put(TEST_URL + "directory/");
+
+        negativeLookupCache.removeWithAncestors(TEST_URL + "dir/");
+
+        Assert.assertFalse(negativeLookupCache.contains("sftp://www.example.com/home/"));
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL));
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL + "dir/"));
+        Assert.assertTrue(negativeLookupCache.contains(TEST_URL + "dir/file.txt"));
+        Assert.assertTrue(negativeLookupCache.contains(TEST_URL + "directory/"));
+    }
+
+    @Test
+    public void disabledCache() {
+        negativeLookupCache.setMaxSize(0);
+        negativeLookupCache.put(TEST_URL);
+        Assert.assertFalse(negativeLookupCache.contains(TEST_URL));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile;
+
+import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.util.UrlUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UrlFileTest {
+
+    private static final String TEST_URL = "sftp://www.example.com/home/test.txt";
+
+    @Mock
+    private UrlFileContext contextMock;
+
+    @Mock
+    private FileOperationProvider fileOperationProviderMock;
+
+    private URL url;
+    private AtomicLong remoteSize;
+    private AtomicLong nanoTime;
+
+    @Before
+    public void setUp() throws Exception {
+        UrlUtils.registerProtocolURLStreamHandlers();
+        url = new URL(TEST_URL);
+        remoteSize = new AtomicLong(1);
+        nanoTime = new AtomicLong();
+
+        when(contextMock.getFileOperationProvider(url)).thenReturn(fileOperationProviderMock);
+        when(contextMock.createFileModel()).thenAnswer(invocation -> new FileModel());
+        when(contextMock.nanoTime()).thenAnswer(invocation -> nanoTime.get());
+        doAnswer(invocation -> {
+            ((FileModel) invocation.getArguments()[0]).setSize(remoteSize.get());
+            return null;
+        }).when(fileOperationProviderMock).updateModel(any(FileModel.class));
+        doAnswer(invocation -> {
+            ((UrlFile) invocation.getArguments()[0]).refreshExpiredModel();
+            return null;
+        }).when(contextMock).refreshExpiredModel(any(UrlFile.class));
+    }
+
+    @Test
+    public void modelNeverExpires() throws Exception {
+        UrlFile file = new UrlFile(url, contextMock);
+        Assert.assertEquals(1, file.getSize());
+        remoteSize.set(2);
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        Assert.assertEquals(1, file.getSize());
+        verify(fileOperationProviderMock, times(1)).updateModel(any(FileModel.class));
+    }
+
+    @Test
+    public void refreshExpiredModel() throws Exception {
+        when(contextMock.getFileModelTimeToLive(url)).thenReturn(1);
+        UrlFile file = new UrlFile(url, contextMock);
+        Assert.assertEquals(1, file.getSize());
+        remoteSize.set(2);
+        Assert.assertEquals(1, file.getSize());
+        verify(contextMock, never()).refreshExpiredModel(file);
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        file.getSize();
+        verify(contextMock, times(1)).refreshExpiredModel(file);
+        Assert.assertEquals(2, file.getSize());
+        verify(fileOperationProviderMock, times(2)).updateModel(any(FileModel.class));
+    }
+
+    @Test
+    public void retryRejectedRefresh() {
+        when(contextMock.getFileModelTimeToLive(url)).thenReturn(1);
+        UrlFile file = new UrlFile(url, contextMock);
+        Assert.assertEquals(1, file.getSize());
+        remoteSize.set(2);
+        doAnswer(invocation -> {
+            ((UrlFile) invocation.getArguments()[0]).cancelModelRefresh();
+            return null;
+        }).doAnswer(invocation -> {
+            ((UrlFile) invocation.getArguments()[0]).refreshExpiredModel();
+            return null;
+        }).when(contextMock).refreshExpiredModel(any(UrlFile.class));
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals(1, file.getSize());
+        Assert.assertEquals(2, file.getSize());
+        verify(contextMock, times(2)).refreshExpiredModel(file);
+    }
+
+    @Test
+    public void existsUsesNegativeLookup() {
+        when(contextMock.isMissingFile(url)).thenReturn(true);
+        UrlFile file = new UrlFile(url, contextMock);
+        Assert.assertFalse(file.exists());
+        verify(fileOperationProviderMock, never()).exists(any(FileModel.class));
+
+        file.create();
+        verify(contextMock).removeMissingFileWithAncestors(url);
+        verify(fileOperationProviderMock).create(any(FileModel.class));
+    }
+
+    @Test
+    public void rememberMissingFile() {
+        when(fileOperationProviderMock.exists(any(FileModel.class))).thenReturn(false);
+        UrlFile file = new UrlFile(url, contextMock);
+        Assert.assertFalse(file.exists());
+        verify(contextMock, atLeastOnce()).addMissingFile(url);
+    }
+}
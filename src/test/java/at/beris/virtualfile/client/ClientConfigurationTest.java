@@ -56,6 +56,9 @@ public class ClientConfigurationTest extends AbstractClientConfigurationTest {
         configurationTemplate.setPassword("pwd".toCharArray());
         configurationTemplate.setPort(12);
         configurationTemplate.setTimeout(56);
+        configurationTemplate.setFileModelTimeToLive(60);
+        configurationTemplate.setMaxConnections(8);
+        configurationTemplate.setConnectionIdleTimeout(120);
 
         SftpClientConfiguration configuration = ClientConfiguration.createSFtpConfiguration();
         configuration.fillFromClientConfiguration(configurationTemplate);
@@ -63,6 +66,9 @@ public class ClientConfigurationTest extends AbstractClientConfigurationTest {
         Assert.assertArrayEquals("pwd".toCharArray(), configuration.getPassword());
         Assert.assertEquals(12, configuration.getPort());
         Assert.assertEquals(56, configuration.getTimeout());
+        Assert.assertEquals(60, configuration.getFileModelTimeToLive());
+        Assert.assertEquals(8, configuration.getMaxConnections());
+        Assert.assertEquals(120, configuration.getConnectionIdleTimeout());
         Assert.assertEquals("usr", configuration.getUsername());
     }
 
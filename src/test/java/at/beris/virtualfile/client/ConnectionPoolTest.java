@@ -0,0 +1,119 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.client;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConnectionPoolTest {
+
+    private static final int MAX_CONNECTIONS = 2;
+
+    @Mock
+    private ConnectionPool.ConnectionFactory<Object> connectionFactoryMock;
+
+    private ConnectionPool<Object> connectionPool;
+
+    @Before
+    public void setUp() {
+        when(connectionFactoryMock.create()).thenAnswer(invocation -> new Object());
+        when(connectionFactoryMock.validate(any())).thenReturn(true);
+        connectionPool = new ConnectionPool<>(connectionFactoryMock, MAX_CONNECTIONS, 0);
+    }
+
+    @Test
+    public void reuseReleasedConnection() {
+        Object connection = connectionPool.borrow();
+        connectionPool.release(connection);
+        Assert.assertSame(connection, connectionPool.borrow());
+        verify(connectionFactoryMock, times(1)).create();
+        Assert.assertEquals(1, connectionPool.getActiveCount());
+    }
+
+    @Test
+    public void discardBrokenConnection() {
+        Object connection = connectionPool.borrow();
+        connectionPool.release(connection);
+        when(connectionFactoryMock.validate(connection)).thenReturn(false);
+
+        Assert.assertNotSame(connection, connectionPool.borrow());
+        verify(connectionFactoryMock).close(connection);
+    }
+
+    @Test
+    public void closeIdleConnections() throws Exception {
+        connectionPool = new ConnectionPool<>(connectionFactoryMock, MAX_CONNECTIONS, 1);
+        Object connection = connectionPool.borrow();
+        connectionPool.release(connection);
+        Assert.assertEquals(1, connectionPool.getIdleCount());
+
+        Thread.sleep(1100);
+        Assert.assertNotSame(connection, connectionPool.borrow());
+        verify(connectionFactoryMock).close(connection);
+    }
+
+    @Test
+    public void limitConnections() throws Exception {
+        final AtomicInteger activeConnections = new AtomicInteger();
+        final AtomicInteger maxActiveConnections = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(MAX_CONNECTIONS * 2);
+        for (int i = 0; i < MAX_CONNECTIONS * 10; i++) {
+            executorService.execute(() -> {
+                Object connection = connectionPool.borrow();
+                maxActiveConnections.accumulateAndGet(activeConnections.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                activeConnections.decrementAndGet();
+                connectionPool.release(connection);
+            });
+        }
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+        Assert.assertEquals(MAX_CONNECTIONS, maxActiveConnections.get());
+        Assert.assertEquals(0, connectionPool.getActiveCount());
+        verify(connectionFactoryMock, atMost(MAX_CONNECTIONS)).create();
+    }
+
+    @Test(expected = VirtualFileException.class)
+    public void failWhenNoConnectionIsReturned() {
+        connectionPool = new ConnectionPool<>(connectionFactoryMock, 1, 0, 1);
+        connectionPool.borrow();
+        connectionPool.borrow();
+    }
+
+    @Test
+    public void closePool() {
+        Object connection = connectionPool.borrow();
+        Object idleConnection = connectionPool.borrow();
+        connectionPool.release(idleConnection);
+
+        connectionPool.close();
+        verify(connectionFactoryMock).close(idleConnection);
+        connectionPool.release(connection);
+        verify(connectionFactoryMock).close(connection);
+        Assert.assertEquals(0, connectionPool.getIdleCount());
+    }
+}
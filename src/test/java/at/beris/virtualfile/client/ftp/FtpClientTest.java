@@ -0,0 +1,58 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.client.ftp;
+
+import at.beris.virtualfile.FileModel;
+import at.beris.virtualfile.attribute.PosixFilePermission;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+public class FtpClientTest {
+
+    @Test
+    public void removeDirectoryEntries() {
+        FTPFile[] ftpFiles = new FTPFile[]{
+                MLSxEntryParser.parseEntry("type=cdir;modify=20170301120000;unix.mode=0755; test"),
+                MLSxEntryParser.parseEntry("type=pdir;modify=20170301120000;unix.mode=0755; .."),
+                MLSxEntryParser.parseEntry("type=file;size=10;modify=20170301120000;unix.mode=0644; file.txt"),
+                MLSxEntryParser.parseEntry("type=dir;modify=20170301120000;unix.mode=0755; directory")};
+
+        List<FTPFile> ftpFileList = FtpClient.removeDirectoryEntries(ftpFiles);
+
+        Assert.assertEquals(2, ftpFileList.size());
+        Assert.assertEquals("file.txt", ftpFileList.get(0).getName());
+        Assert.assertEquals("directory", ftpFileList.get(1).getName());
+    }
+
+    @Test
+    public void fillModelFromMachineListing() {
+        FtpClient client = Mockito.mock(FtpClient.class);
+        Mockito.when(client.getPhysicalRootPath()).thenReturn("");
+        FTPFile ftpFile = MLSxEntryParser.parseEntry("type=file;size=1234;modify=20170301120000.250;unix.mode=0640;unix.owner=1000;unix.group=100; file.txt");
+
+        FileModel model = new FileModel();
+        new FtpFileTranslator().fillModel(model, ftpFile, client);
+
+        Assert.assertTrue(model.isFileExists());
+        Assert.assertEquals(1234, model.getSize());
+        Assert.assertEquals(FileTime.from(Instant.parse("2017-03-01T12:00:00.250Z")), model.getLastModifiedTime());
+        Assert.assertTrue(model.getAttributes().contains(PosixFilePermission.OWNER_READ));
+        Assert.assertTrue(model.getAttributes().contains(PosixFilePermission.OWNER_WRITE));
+        Assert.assertTrue(model.getAttributes().contains(PosixFilePermission.GROUP_READ));
+        Assert.assertFalse(model.getAttributes().contains(PosixFilePermission.OTHERS_READ));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.client.ftp;
+
+import at.beris.virtualfile.client.ConnectionPool;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.StringReader;
+
+public class FtpListingIteratorTest {
+    private static final String LISTING = "type=cdir;modify=20170301120000;unix.mode=0755; test\r\n" +
+            "type=pdir;modify=20170301120000;unix.mode=0755; ..\r\n" +
+            "type=file;size=10;modify=20170301120000;unix.mode=0644; file.txt\r\n" +
+            "type=dir;modify=20170301120000;unix.mode=0755; directory\r\n";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void iterateListing() throws Exception {
+        FTPClient ftpClient = Mockito.mock(FTPClient.class);
+        ConnectionPool<FTPClient> connectionPool = Mockito.mock(ConnectionPool.class);
+        FtpListingIterator iterator = new FtpListingIterator(new StringReader(LISTING), ftpClient, connectionPool);
+
+        Assert.assertTrue(iterator.hasNext());
+        FTPFile ftpFile = iterator.next();
+        Assert.assertEquals("file.txt", ftpFile.getName());
+        Assert.assertEquals(10, ftpFile.getSize());
+        Mockito.verify(connectionPool, Mockito.never()).release(ftpClient);
+
+        Assert.assertEquals("directory", iterator.next().getName());
+        Assert.assertFalse(iterator.hasNext());
+        Mockito.verify(ftpClient).completePendingCommand();
+        Mockito.verify(connectionPool).release(ftpClient);
+
+        iterator.close();
+        Mockito.verify(connectionPool, Mockito.times(1)).release(ftpClient);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void closeBeforeEnd() throws Exception {
+        FTPClient ftpClient = Mockito.mock(FTPClient.class);
+        ConnectionPool<FTPClient> connectionPool = Mockito.mock(ConnectionPool.class);
+        FtpListingIterator iterator = new FtpListingIterator(new StringReader(LISTING), ftpClient, connectionPool);
+
+        iterator.next();
+        iterator.close();
+
+        Assert.assertFalse(iterator.hasNext());
+        Mockito.verify(ftpClient).completePendingCommand();
+        Mockito.verify(connectionPool).release(ftpClient);
+    }
+}
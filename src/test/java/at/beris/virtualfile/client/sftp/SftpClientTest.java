@@ -0,0 +1,100 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.client.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+public class SftpClientTest {
+
+    @Test
+    public void listWithoutStat() throws Exception {
+        Vector<ChannelSftp.LsEntry> entries = new Vector<>();
+        entries.add(createEntry(".", true, false));
+        entries.add(createEntry("..", true, false));
+        entries.add(createEntry("file.txt", false, false));
+        entries.add(createEntry("directory", true, false));
+        ChannelSftp channel = Mockito.mock(ChannelSftp.class);
+        Mockito.when(channel.ls("/home/test/")).thenReturn(entries);
+
+        List<SftpFile> fileInfoList = SftpClient.list(channel, "/home/test/");
+
+        Assert.assertEquals(2, fileInfoList.size());
+        Assert.assertEquals("/home/test/file.txt", fileInfoList.get(0).getPath());
+        Assert.assertEquals("/home/test/directory/", fileInfoList.get(1).getPath());
+        Assert.assertSame(entries.get(2).getAttrs(), fileInfoList.get(0).getFile());
+        Mockito.verify(channel, Mockito.never()).stat(Matchers.anyString());
+    }
+
+    @Test
+    public void listSymbolicLink() throws Exception {
+        Vector<ChannelSftp.LsEntry> entries = new Vector<>();
+        entries.add(createEntry("link", false, true));
+        SftpATTRS targetAttrs = createAttrs(true, false);
+        ChannelSftp channel = Mockito.mock(ChannelSftp.class);
+        Mockito.when(channel.ls("/home/test/")).thenReturn(entries);
+        Mockito.when(channel.stat("/home/test/link")).thenReturn(targetAttrs);
+
+        List<SftpFile> fileInfoList = SftpClient.list(channel, "/home/test/");
+
+        Assert.assertEquals("/home/test/link/", fileInfoList.get(0).getPath());
+        Assert.assertSame(targetAttrs, fileInfoList.get(0).getFile());
+    }
+
+    @Test
+    public void listWithConsumer() throws Exception {
+        Vector<ChannelSftp.LsEntry> entries = new Vector<>();
+        entries.add(createEntry(".", true, false));
+        entries.add(createEntry("link", false, true));
+        entries.add(createEntry("file.txt", false, false));
+        entries.add(createEntry("directory", true, false));
+        entries.add(createEntry("other.txt", false, false));
+        ChannelSftp channel = Mockito.mock(ChannelSftp.class);
+        Mockito.doAnswer(invocation -> {
+            ChannelSftp.LsEntrySelector selector = (ChannelSftp.LsEntrySelector) invocation.getArguments()[1];
+            for (ChannelSftp.LsEntry entry : entries) {
+                if (selector.select(entry) == ChannelSftp.LsEntrySelector.BREAK)
+                    break;
+            }
+            return null;
+        }).when(channel).ls(Matchers.eq("/home/test/"), Matchers.any(ChannelSftp.LsEntrySelector.class));
+
+        List<SftpFile> fileInfoList = new ArrayList<>();
+        SftpClient.list(channel, "/home/test/", fileInfo -> fileInfoList.add(fileInfo) && fileInfoList.size() < 2);
+
+        Assert.assertEquals(2, fileInfoList.size());
+        Assert.assertEquals("/home/test/file.txt", fileInfoList.get(0).getPath());
+        Assert.assertEquals("/home/test/directory/", fileInfoList.get(1).getPath());
+        Mockito.verify(channel, Mockito.never()).stat(Matchers.anyString());
+    }
+
+    private ChannelSftp.LsEntry createEntry(String filename, boolean isDirectory, boolean isLink) {
+        SftpATTRS attrs = createAttrs(isDirectory, isLink);
+        ChannelSftp.LsEntry entry = Mockito.mock(ChannelSftp.LsEntry.class);
+        Mockito.when(entry.getFilename()).thenReturn(filename);
+        Mockito.when(entry.getAttrs()).thenReturn(attrs);
+        return entry;
+    }
+
+    private SftpATTRS createAttrs(boolean isDirectory, boolean isLink) {
+        SftpATTRS attrs = Mockito.mock(SftpATTRS.class);
+        Mockito.when(attrs.isDir()).thenReturn(isDirectory);
+        Mockito.when(attrs.isLink()).thenReturn(isLink);
+        return attrs;
+    }
+}
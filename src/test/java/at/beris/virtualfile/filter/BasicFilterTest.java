@@ -19,6 +19,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class BasicFilterTest {
     private static final String TEST_DIRECTORY = "testdir/";
@@ -89,4 +91,17 @@ public class BasicFilterTest {
         Assert.assertTrue(filteredFileNameList.contains("subdir"));
         Assert.assertTrue(filteredFileNameList.contains("goodmovie.avi"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void filterConcurrently() {
+        Filter filter = new FileNameFilter().not().equalTo("testfile1.txt");
+        List<String> filteredFileNameList;
+        try (Stream<VirtualFile> stream = testDirectory.findConcurrently(filter)) {
+            filteredFileNameList = TestFilterHelper.getNameListFromFileList(stream.collect(Collectors.toList()));
+        }
+        Assert.assertEquals(3, filteredFileNameList.size());
+        Assert.assertTrue(filteredFileNameList.contains("testfile2.txt"));
+        Assert.assertTrue(filteredFileNameList.contains("subdir"));
+        Assert.assertTrue(filteredFileNameList.contains("goodmovie.avi"));
+    }
+}
@@ -14,6 +14,7 @@ import at.beris.virtualfile.UrlFile;
 import at.beris.virtualfile.exception.OperationNotSupportedException;
 import at.beris.virtualfile.filter.Filter;
 import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.provider.operation.CopyResult;
 import at.beris.virtualfile.provider.operation.FileOperation;
 import at.beris.virtualfile.provider.operation.FileOperationListener;
 
@@ -21,6 +22,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public class FileOperationProviderMock implements FileOperationProvider {
     private boolean exists;
@@ -35,6 +37,21 @@ public class FileOperationProviderMock implements FileOperationProvider {
         return new Byte[0];
     }
 
+    @Override
+    public byte[] checksum(FileModel model, String algorithm) {
+        return null;
+    }
+
+    @Override
+    public byte[] treeChecksum(FileModel model, String algorithm) {
+        return null;
+    }
+
+    @Override
+    public Byte[] remoteChecksum(FileModel model) {
+        return null;
+    }
+
     @Override
     public void create(FileModel model) {
         exists = true;
@@ -55,16 +72,31 @@ public class FileOperationProviderMock implements FileOperationProvider {
         return null;
     }
 
+    @Override
+    public InputStream getInputStream(FileModel model, long offset) {
+        return null;
+    }
+
     @Override
     public OutputStream getOutputStream(FileModel model) {
         return null;
     }
 
+    @Override
+    public OutputStream getOutputStream(FileModel model, boolean append) {
+        return null;
+    }
+
     @Override
     public List<UrlFile> list(FileModel model, Filter filter) {
         return null;
     }
 
+    @Override
+    public Stream<UrlFile> stream(FileModel model, Filter filter) {
+        return null;
+    }
+
     @Override
     public void updateModel(FileModel model) {
 
@@ -110,6 +142,11 @@ public class FileOperationProviderMock implements FileOperationProvider {
         return null;
     }
 
+    @Override
+    public int getMaxConnections() {
+        return 1;
+    }
+
     @Override
     public boolean isOperationSupported(FileOperation fileOperation) {
         return false;
@@ -150,6 +187,11 @@ public class FileOperationProviderMock implements FileOperationProvider {
         return 0;
     }
 
+    @Override
+    public CopyResult copyWithChecksum(UrlFile sourceFile, UrlFile targetFile, String digestAlgorithm, FileOperationListener listener) {
+        return null;
+    }
+
     @Override
     public Boolean compare(UrlFile sourceFile, UrlFile targetFile, FileOperationListener listener) {
         return null;
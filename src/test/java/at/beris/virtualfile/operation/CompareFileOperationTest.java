@@ -0,0 +1,180 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.operation;
+
+import at.beris.virtualfile.UrlFile;
+import at.beris.virtualfile.UrlFileContext;
+import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.provider.LocalFileOperationProvider;
+import at.beris.virtualfile.provider.operation.AbstractFileOperation;
+import at.beris.virtualfile.provider.operation.CompareFileOperation;
+import at.beris.virtualfile.util.UrlUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class CompareFileOperationTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeTestCase() {
+        UrlUtils.registerProtocolURLStreamHandlers();
+    }
+
+    @Test
+    public void compareEqualFilesWithShortReads() throws Exception {
+        byte[] content = createContent(AbstractFileOperation.STREAM_BUFFER_SIZE * 3 + 100);
+        UrlFile sourceFile = createFileMock(new URL("file:/source/foo"), content, new ByteArrayInputStream(content));
+        UrlFile targetFile = createFileMock(new URL("file:/target/foo"), content, new ShortReadInputStream(new ByteArrayInputStream(content)));
+
+        Assert.assertTrue(compare(sourceFile, targetFile));
+    }
+
+    @Test
+    public void compareFilesWithDifferentSize() throws Exception {
+        byte[] content = createContent(1000);
+        UrlFile sourceFile = createFileMock(new URL("file:/source/foo"), content, new ByteArrayInputStream(content));
+        UrlFile targetFile = createFileMock(new URL("file:/target/foo"), new byte[999], new ByteArrayInputStream(new byte[999]));
+
+        Assert.assertFalse(compare(sourceFile, targetFile));
+        Mockito.verify(sourceFile, Mockito.never()).getInputStream();
+        Mockito.verify(targetFile, Mockito.never()).getInputStream();
+    }
+
+    @Test
+    public void compareStopsAtFirstDifference() throws Exception {
+        byte[] content = createContent(AbstractFileOperation.STREAM_BUFFER_SIZE * 10);
+        byte[] otherContent = content.clone();
+        otherContent[10] ^= 1;
+        ByteArrayInputStream sourceStream = new ByteArrayInputStream(content);
+        UrlFile sourceFile = createFileMock(new URL("file:/source/foo"), content, sourceStream);
+        UrlFile targetFile = createFileMock(new URL("file:/target/foo"), otherContent, new ByteArrayInputStream(otherContent));
+
+        Assert.assertFalse(compare(sourceFile, targetFile));
+        Assert.assertEquals(content.length - AbstractFileOperation.STREAM_BUFFER_SIZE, sourceStream.available());
+    }
+
+    @Test
+    public void compareLocalFiles() throws Exception {
+        byte[] content = createContent(1024 * 100 + 3);
+        byte[] otherContent = content.clone();
+        otherContent[content.length - 1] ^= 1;
+        File source = temporaryFolder.newFile("source.bin");
+        File equalTarget = temporaryFolder.newFile("equal.bin");
+        File otherTarget = temporaryFolder.newFile("other.bin");
+        Files.write(source.toPath(), content);
+        Files.write(equalTarget.toPath(), content);
+        Files.write(otherTarget.toPath(), otherContent);
+
+        UrlFile sourceFile = createFileMock(source.toURI().toURL(), content, null);
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+        FileOperationProvider fileOperationProvider = new LocalFileOperationProvider(fileContext, null);
+
+        Assert.assertTrue(new CompareFileOperation(fileContext, fileOperationProvider)
+                .execute(sourceFile, createFileMock(equalTarget.toURI().toURL(), content, null), null));
+        Assert.assertFalse(new CompareFileOperation(fileContext, fileOperationProvider)
+                .execute(sourceFile, createFileMock(otherTarget.toURI().toURL(), otherContent, null), null));
+        Mockito.verify(sourceFile, Mockito.never()).getInputStream();
+    }
+
+    @Test
+    public void compareWithRemoteChecksum() throws Exception {
+        byte[] content = createContent(1000);
+        Byte[] checksum = new Byte[]{1, 2, 3};
+        UrlFile sourceFile = createFileMock(UrlUtils.newUrl("sftp://www.example.com/foo"), content, new ByteArrayInputStream(content));
+        Mockito.when(sourceFile.remoteChecksum()).thenReturn(checksum);
+        UrlFile equalTargetFile = createFileMock(new URL("file:/target/foo"), content, new ByteArrayInputStream(content));
+        Mockito.when(equalTargetFile.checksum()).thenReturn(checksum);
+        UrlFile otherTargetFile = createFileMock(new URL("file:/target/bar"), content, new ByteArrayInputStream(content));
+        Mockito.when(otherTargetFile.checksum()).thenReturn(new Byte[]{1, 2, 4});
+
+        Assert.assertTrue(compare(sourceFile, equalTargetFile));
+        Assert.assertFalse(compare(sourceFile, otherTargetFile));
+        Mockito.verify(sourceFile, Mockito.never()).getInputStream();
+    }
+
+    @Test
+    public void compareDirectoriesStopsAtFirstDifference() throws Exception {
+        UrlFile sourceDirectory = createDirectoryMock(new URL("file:/source/foo/"));
+        UrlFile targetDirectory = createDirectoryMock(new URL("file:/target/foo/"));
+        UrlFile missingSourceFile = createFileMock(new URL("file:/source/foo/missing"), new byte[0], new ByteArrayInputStream(new byte[0]));
+        Mockito.when(missingSourceFile.getName()).thenReturn("missing");
+        UrlFile sourceSubdirectory = createDirectoryMock(new URL("file:/source/foo/subdir/"));
+        Mockito.when(sourceSubdirectory.getName()).thenReturn("subdir");
+        Mockito.when(sourceDirectory.list()).thenReturn(Arrays.asList(missingSourceFile, sourceSubdirectory));
+        UrlFile missingTargetFile = Mockito.mock(UrlFile.class);
+        Mockito.when(missingTargetFile.exists()).thenReturn(false);
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+        Mockito.when(fileContext.resolveFile(new URL("file:/target/foo/missing"))).thenReturn(missingTargetFile);
+        FileOperationProvider fileOperationProvider = Mockito.mock(FileOperationProvider.class);
+
+        Assert.assertFalse(new CompareFileOperation(fileContext, fileOperationProvider).execute(sourceDirectory, targetDirectory, null));
+        Mockito.verify(fileContext, Mockito.never()).resolveFile(new URL("file:/target/foo/subdir/"));
+        Mockito.verify(sourceSubdirectory, Mockito.never()).list();
+    }
+
+    private boolean compare(UrlFile sourceFile, UrlFile targetFile) {
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+        FileOperationProvider fileOperationProvider = Mockito.mock(FileOperationProvider.class);
+        return new CompareFileOperation(fileContext, fileOperationProvider).execute(sourceFile, targetFile, null);
+    }
+
+    private byte[] createContent(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i % 251);
+        return content;
+    }
+
+    private UrlFile createFileMock(URL url, byte[] content, InputStream inputStream) {
+        UrlFile file = Mockito.mock(UrlFile.class);
+        Mockito.when(file.getUrl()).thenReturn(url);
+        Mockito.when(file.exists()).thenReturn(true);
+        Mockito.when(file.isDirectory()).thenReturn(false);
+        Mockito.when(file.getSize()).thenReturn((long) content.length);
+        Mockito.when(file.getInputStream()).thenReturn(inputStream);
+        return file;
+    }
+
+    private UrlFile createDirectoryMock(URL url) {
+        UrlFile directory = Mockito.mock(UrlFile.class);
+        Mockito.when(directory.getUrl()).thenReturn(url);
+        Mockito.when(directory.exists()).thenReturn(true);
+        Mockito.when(directory.isDirectory()).thenReturn(true);
+        return directory;
+    }
+
+    /**
+     * Returns at most 1000 bytes per read.
+     */
+    private static class ShortReadInputStream extends FilterInputStream {
+        private ShortReadInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1000));
+        }
+    }
+}
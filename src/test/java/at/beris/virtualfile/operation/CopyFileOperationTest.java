@@ -9,25 +9,56 @@
 
 package at.beris.virtualfile.operation;
 
+import at.beris.virtualfile.FileModel;
 import at.beris.virtualfile.UrlFile;
 import at.beris.virtualfile.UrlFileContext;
 import at.beris.virtualfile.VirtualFile;
+import at.beris.virtualfile.filter.Filter;
 import at.beris.virtualfile.provider.FileOperationProvider;
+import at.beris.virtualfile.provider.LocalFileOperationProvider;
+import at.beris.virtualfile.provider.SftpFileOperationProvider;
+import at.beris.virtualfile.provider.operation.CopyCheckpointStore;
 import at.beris.virtualfile.provider.operation.CopyFileOperation;
+import at.beris.virtualfile.provider.operation.CopyResult;
 import at.beris.virtualfile.provider.operation.FileOperationListener;
+import at.beris.virtualfile.util.ChecksumUtils;
+import at.beris.virtualfile.util.UrlUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.mockito.Mockito.times;
 
 public class CopyFileOperationTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeTestCase() {
+        UrlUtils.registerProtocolURLStreamHandlers();
+    }
+
     @Test
     public void copyFile() throws Exception {
         UrlFile sourceFile = createSourceFileMock(new URL("file:/source/foo"), false);
@@ -43,6 +74,135 @@ public class CopyFileOperationTest {
         Mockito.verify(listener, times(1)).afterStreamBufferProcessed(Matchers.any(Long.class), Matchers.eq(10L), Matchers.eq(10L));
     }
 
+    @Test
+    public void copyLocalFile() throws Exception {
+        byte[] content = new byte[1024 * 100];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        File source = temporaryFolder.newFile("source.bin");
+        Files.write(source.toPath(), content);
+        File target = new File(temporaryFolder.getRoot(), "target.bin");
+
+        UrlFile sourceFile = createFileMock(source.toURI().toURL(), false);
+        Mockito.when(sourceFile.exists()).thenReturn(true);
+        UrlFile targetFile = createFileMock(target.toURI().toURL(), false);
+
+        FileOperationListener listener = Mockito.mock(FileOperationListener.class);
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+        FileOperationProvider fileOperationProvider = new LocalFileOperationProvider(fileContext, null);
+
+        Integer filesCopied = new CopyFileOperation(fileContext, fileOperationProvider).execute(sourceFile, targetFile, listener);
+
+        Assert.assertEquals(Integer.valueOf(1), filesCopied);
+        Assert.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        Mockito.verify(sourceFile, Mockito.never()).getInputStream();
+        Mockito.verify(listener, times(1)).afterStreamBufferProcessed(content.length, content.length, content.length);
+    }
+
+    @Test
+    public void copySftpFileInRanges() throws Exception {
+        byte[] content = new byte[(int) CopyFileOperation.RANGE_TRANSFER_MIN_SIZE * 3 + 1000];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i % 251);
+        File target = new File(temporaryFolder.getRoot(), "target.bin");
+
+        UrlFile sourceFile = createFileMock(UrlUtils.newUrl("sftp://www.example.com/source.bin"), false);
+        Mockito.when(sourceFile.exists()).thenReturn(true);
+        Mockito.when(sourceFile.getSize()).thenReturn((long) content.length);
+        Mockito.when(sourceFile.getModel()).thenReturn(new FileModel());
+        UrlFile targetFile = createFileMock(target.toURI().toURL(), false);
+
+        SftpFileOperationProvider fileOperationProvider = Mockito.mock(SftpFileOperationProvider.class);
+        Mockito.when(fileOperationProvider.getMaxConnections()).thenReturn(4);
+        Mockito.when(fileOperationProvider.getInputStream(Matchers.any(FileModel.class), Matchers.anyLong())).thenAnswer(invocation -> {
+            int offset = ((Long) invocation.getArguments()[1]).intValue();
+            return new ByteArrayInputStream(content, offset, content.length - offset);
+        });
+        FileOperationListener listener = Mockito.mock(FileOperationListener.class);
+
+        Integer filesCopied = new CopyFileOperation(Mockito.mock(UrlFileContext.class), fileOperationProvider).execute(sourceFile, targetFile, listener);
+
+        Assert.assertEquals(Integer.valueOf(1), filesCopied);
+        Assert.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        Mockito.verify(fileOperationProvider, times(3)).getInputStream(Matchers.any(FileModel.class), Matchers.anyLong());
+        Mockito.verify(sourceFile, Mockito.never()).getInputStream();
+        Mockito.verify(listener).afterStreamBufferProcessed(Matchers.eq((long) content.length), Matchers.anyLong(), Matchers.eq((long) content.length));
+    }
+
+    @Test
+    public void resumeCopy() throws Exception {
+        byte[] content = new byte[(int) CopyFileOperation.CHECKPOINT_INTERVAL * 2 + 1000];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i % 251);
+        File source = temporaryFolder.newFile("source.bin");
+        Files.write(source.toPath(), content);
+        File target = new File(temporaryFolder.getRoot(), "target.bin");
+
+        UrlFile sourceFile = createLocalFileMock(source);
+        Mockito.when(sourceFile.getSize()).thenReturn((long) content.length);
+        Mockito.when(sourceFile.getLastModifiedTime()).thenReturn(FileTime.fromMillis(1000));
+        UrlFile targetFile = createLocalFileMock(target);
+
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+        FileOperationProvider fileOperationProvider = Mockito.mock(FileOperationProvider.class);
+        CopyCheckpointStore checkpointStore = new CopyCheckpointStore(temporaryFolder.newFolder("checkpoints").toPath());
+
+        long abortPosition = CopyFileOperation.CHECKPOINT_INTERVAL + 100 * 1024;
+        FileOperationListener abortingListener = Mockito.mock(FileOperationListener.class);
+        Mockito.when(abortingListener.interrupt()).thenAnswer(invocation -> target.length() >= abortPosition);
+        new CopyFileOperation(fileContext, fileOperationProvider).setCheckpointStore(checkpointStore)
+                .execute(sourceFile, targetFile, abortingListener);
+        long resumePosition = target.length();
+        Assert.assertTrue(resumePosition < content.length);
+        Assert.assertNotNull(checkpointStore.load(sourceFile.getUrl(), targetFile.getUrl()));
+
+        FileOperationListener listener = Mockito.mock(FileOperationListener.class);
+        Mockito.when(listener.fileExists(targetFile)).thenReturn(true);
+        Integer filesCopied = new CopyFileOperation(fileContext, fileOperationProvider).setCheckpointStore(checkpointStore)
+                .execute(sourceFile, targetFile, listener);
+
+        Assert.assertEquals(Integer.valueOf(1), filesCopied);
+        Assert.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        Mockito.verify(sourceFile).getInputStream(resumePosition);
+        Mockito.verify(targetFile).getOutputStream(true);
+        Assert.assertNull(checkpointStore.load(sourceFile.getUrl(), targetFile.getUrl()));
+    }
+
+    @Test
+    public void copyWithChecksum() throws Exception {
+        byte[] content = new byte[1024 * 100 + 7];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i % 251);
+        Byte[] expectedChecksum = ChecksumUtils.toObjectArray(MessageDigest.getInstance("SHA-256").digest(content));
+        File source = temporaryFolder.newFile("source.bin");
+        Files.write(source.toPath(), content);
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+
+        for (FileOperationProvider fileOperationProvider : Arrays.asList(Mockito.mock(FileOperationProvider.class),
+                new LocalFileOperationProvider(fileContext, null))) {
+            File target = temporaryFolder.newFile();
+            UrlFile sourceFile = createLocalFileMock(source);
+            UrlFile targetFile = createLocalFileMock(target);
+            FileModel targetModel = new FileModel();
+            Mockito.when(targetFile.getModel()).thenReturn(targetModel);
+
+            CopyFileOperation copyFileOperation = new CopyFileOperation(fileContext, fileOperationProvider).setDigestAlgorithm("SHA-256");
+            copyFileOperation.execute(sourceFile, targetFile, null);
+            CopyResult copyResult = copyFileOperation.getCopyResult();
+
+            Assert.assertEquals(1, copyResult.getFilesCopied());
+            Assert.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+            Assert.assertArrayEquals(expectedChecksum, copyResult.getSourceChecksum(sourceFile.getUrl()));
+            Assert.assertArrayEquals(expectedChecksum, copyResult.getTargetChecksum(targetFile.getUrl()));
+            Assert.assertArrayEquals(expectedChecksum, targetModel.getChecksum("SHA-256"));
+            Assert.assertNull(targetModel.getChecksum(ChecksumUtils.SHA1));
+            Mockito.verify(targetFile, Mockito.never()).getInputStream();
+
+            targetModel.setSize(content.length + 1);
+            Assert.assertNull(targetModel.getChecksum("SHA-256"));
+        }
+    }
+
     @Test
     public void copyDirectory() throws Exception {
         UrlFile sourceFile = createSourceFileMock(new URL("file:/source/foo/"), true);
@@ -73,6 +233,66 @@ public class CopyFileOperationTest {
         Mockito.verify(listener, times(1)).afterStreamBufferProcessed(Matchers.any(Long.class), Matchers.eq(10L), Matchers.eq(10L));
     }
 
+    @Test
+    public void copyDirectoryConcurrently() throws Exception {
+        UrlFile sourceFile = createSourceFileMock(new URL("file:/source/foo/"), true);
+        UrlFile targetFile = createTargetFileMock(new URL("file:/target/foo/"), true);
+
+        FileOperationListener listener = Mockito.mock(FileOperationListener.class);
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+
+        List<VirtualFile> fileList = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            UrlFile sourceChildFile = createSourceFileMock(new URL("file:/source/foo/file" + i + ".txt"), false);
+            Mockito.when(sourceChildFile.getSize()).thenReturn(10L);
+            fileList.add(sourceChildFile);
+            UrlFile targetChildFile = createTargetFileMock(new URL("file:/target/foo/file" + i + ".txt"), false);
+            Mockito.when(fileContext.resolveFile(targetChildFile.getUrl())).thenReturn(targetChildFile);
+        }
+        Mockito.when(sourceFile.list()).thenReturn(fileList);
+
+        FileOperationProvider fileOperationProvider = Mockito.mock(FileOperationProvider.class);
+
+        Integer filesCopied = new CopyFileOperation(fileContext, fileOperationProvider).setThreadPoolSize(4)
+                .execute(sourceFile, targetFile, listener);
+
+        Assert.assertEquals(Integer.valueOf(9), filesCopied);
+        Mockito.verify(listener, times(9)).startProcessingFile(Matchers.any(VirtualFile.class), Matchers.any(Long.class));
+        Mockito.verify(listener, times(8)).afterStreamBufferProcessed(Matchers.eq(80L), Matchers.eq(10L), Matchers.any(Long.class));
+        Mockito.verify(listener).afterStreamBufferProcessed(80L, 10L, 80L);
+        Mockito.verify(targetFile).refresh();
+        Mockito.verify(sourceFile, Mockito.never()).walk(Matchers.any(Filter.class));
+    }
+
+    @Test
+    public void copyWithinSiteKeepsConnectionFree() throws Exception {
+        UrlFile sourceFile = createSourceFileMock(new URL("sftp://www.example.com/source/foo/"), true);
+        UrlFile targetFile = createTargetFileMock(new URL("sftp://www.example.com/target/foo/"), true);
+
+        FileOperationListener listener = Mockito.mock(FileOperationListener.class);
+        Set<Thread> copyThreads = ConcurrentHashMap.newKeySet();
+        Mockito.doAnswer(invocation -> copyThreads.add(Thread.currentThread()))
+                .when(listener).startProcessingFile(Matchers.any(VirtualFile.class), Matchers.anyLong());
+        UrlFileContext fileContext = Mockito.mock(UrlFileContext.class);
+        FileOperationProvider fileOperationProvider = Mockito.mock(FileOperationProvider.class);
+        Mockito.when(fileOperationProvider.getMaxConnections()).thenReturn(2);
+        Mockito.when(fileContext.getFileOperationProvider(Matchers.any(URL.class))).thenReturn(fileOperationProvider);
+
+        List<VirtualFile> fileList = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            fileList.add(createSourceFileMock(new URL("sftp://www.example.com/source/foo/file" + i + ".txt"), false));
+            UrlFile targetChildFile = createTargetFileMock(new URL("sftp://www.example.com/target/foo/file" + i + ".txt"), false);
+            Mockito.when(fileContext.resolveFile(targetChildFile.getUrl())).thenReturn(targetChildFile);
+        }
+        Mockito.when(sourceFile.list()).thenReturn(fileList);
+
+        Integer filesCopied = new CopyFileOperation(fileContext, fileOperationProvider).setThreadPoolSize(4)
+                .execute(sourceFile, targetFile, listener);
+
+        Assert.assertEquals(Integer.valueOf(5), filesCopied);
+        Assert.assertEquals(Collections.singleton(Thread.currentThread()), copyThreads);
+    }
+
     private UrlFile createSourceFileMock(URL url, boolean isDirectory) throws Exception {
         InputStream inputStream = Mockito.mock(InputStream.class);
         Mockito.when(inputStream.read(Mockito.any(byte[].class))).thenReturn(10).thenReturn(0);
@@ -92,6 +312,21 @@ public class CopyFileOperationTest {
         return targetFile;
     }
 
+    private UrlFile createLocalFileMock(File file) throws Exception {
+        UrlFile urlFile = createFileMock(file.toURI().toURL(), false);
+        Mockito.when(urlFile.exists()).thenAnswer(invocation -> file.exists());
+        Mockito.when(urlFile.getSize()).thenAnswer(invocation -> file.length());
+        Mockito.when(urlFile.getInputStream()).thenAnswer(invocation -> new FileInputStream(file));
+        Mockito.when(urlFile.getInputStream(Matchers.anyLong())).thenAnswer(invocation -> {
+            FileInputStream inputStream = new FileInputStream(file);
+            inputStream.getChannel().position((Long) invocation.getArguments()[0]);
+            return inputStream;
+        });
+        Mockito.when(urlFile.getOutputStream()).thenAnswer(invocation -> new FileOutputStream(file));
+        Mockito.when(urlFile.getOutputStream(Matchers.anyBoolean())).thenAnswer(invocation -> new FileOutputStream(file, (Boolean) invocation.getArguments()[0]));
+        return urlFile;
+    }
+
     private UrlFile createFileMock(URL url, boolean isDirectory) {
         String[] pathParts = url.toString().split("/");
         UrlFile sourceFile = Mockito.mock(UrlFile.class);
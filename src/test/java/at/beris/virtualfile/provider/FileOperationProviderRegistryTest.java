@@ -0,0 +1,53 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.provider;
+
+import at.beris.virtualfile.UrlFileContext;
+import at.beris.virtualfile.client.Client;
+import at.beris.virtualfile.client.ClientConfiguration;
+import at.beris.virtualfile.client.sftp.SftpClient;
+import at.beris.virtualfile.client.sftp.SftpClientConfiguration;
+import at.beris.virtualfile.protocol.Protocol;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FileOperationProviderRegistryTest {
+
+    @Test
+    public void allProtocolsRegistered() {
+        for (Protocol protocol : Protocol.values())
+            Assert.assertTrue(FileOperationProviderRegistry.isRegistered(protocol));
+    }
+
+    @Test
+    public void createSftpFileOperationProvider() {
+        ClientConfiguration clientConfiguration = FileOperationProviderRegistry.createClientConfiguration(Protocol.SFTP);
+        Assert.assertTrue(clientConfiguration instanceof SftpClientConfiguration);
+
+        Client client = FileOperationProviderRegistry.createClient(Protocol.SFTP, clientConfiguration);
+        Assert.assertTrue(client instanceof SftpClient);
+
+        FileOperationProvider fileOperationProvider = FileOperationProviderRegistry.createFileOperationProvider(Protocol.SFTP,
+                Mockito.mock(UrlFileContext.class), client);
+        Assert.assertTrue(fileOperationProvider instanceof SftpFileOperationProvider);
+        Assert.assertSame(client, fileOperationProvider.getClient());
+    }
+
+    @Test
+    public void createLocalFileOperationProvider() {
+        Assert.assertNull(FileOperationProviderRegistry.createClientConfiguration(Protocol.FILE));
+        Assert.assertNull(FileOperationProviderRegistry.createClient(Protocol.FILE, null));
+
+        FileOperationProvider fileOperationProvider = FileOperationProviderRegistry.createFileOperationProvider(Protocol.FILE,
+                Mockito.mock(UrlFileContext.class), null);
+        Assert.assertTrue(fileOperationProvider instanceof LocalFileOperationProvider);
+    }
+}
@@ -10,20 +10,36 @@
 package at.beris.virtualfile.provider;
 
 import at.beris.virtualfile.FileModel;
+import at.beris.virtualfile.UrlFile;
 import at.beris.virtualfile.client.Client;
+import at.beris.virtualfile.os.OsFamily;
+import at.beris.virtualfile.util.ChecksumUtils;
+import at.beris.virtualfile.util.OsUtils;
 import at.beris.virtualfile.util.UrlUtils;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static at.beris.virtualfile.TestHelper.*;
 
@@ -32,6 +48,9 @@ public class LocalFileOperationProviderTest extends AbstractFileOperationProvide
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalFileOperationProviderTest.class);
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     @Override
     public void beforeTestCase() {
@@ -62,6 +81,132 @@ public class LocalFileOperationProviderTest extends AbstractFileOperationProvide
         Assert.assertTrue(new File(sourceDirectoryUrl.toURI()).exists());
     }
 
+    @Test
+    public void stream() throws Exception {
+        File directory = temporaryFolder.newFolder("directory");
+        Files.write(new File(directory, "file.txt").toPath(), new byte[10]);
+        Assert.assertTrue(new File(directory, "subdir").mkdir());
+        Mockito.when(fileContext.resolveFile(Matchers.any(URL.class))).thenAnswer(invocation -> {
+            UrlFile file = Mockito.mock(UrlFile.class);
+            Mockito.when(file.getUrl()).thenReturn((URL) invocation.getArguments()[0]);
+            return file;
+        });
+        FileModel fileModel = new FileModel();
+        fileModel.setUrl(directory.toURI().toURL());
+        fileModel.setDirectory(true);
+
+        List<String> urlList;
+        try (Stream<UrlFile> stream = provider.stream(fileModel, null)) {
+            urlList = stream.map(file -> file.getUrl().toString()).sorted().collect(Collectors.toList());
+        }
+
+        Assert.assertEquals(2, urlList.size());
+        Assert.assertEquals(new File(directory, "file.txt").toURI().toURL().toString(), urlList.get(0));
+        Assert.assertEquals(new File(directory, "subdir").toURI().toURL().toString(), urlList.get(1));
+    }
+
+    @Test
+    public void streamFillsChildModels() throws Exception {
+        File directory = temporaryFolder.newFolder("directory");
+        Files.write(new File(directory, "file name.txt").toPath(), new byte[10]);
+        File subdirectory = new File(directory, "subdir");
+        Assert.assertTrue(subdirectory.mkdir());
+        Assert.assertTrue(new File(subdirectory, "child").createNewFile());
+        Map<String, UrlFile> fileMap = new HashMap<>();
+        Mockito.when(fileContext.resolveFile(Matchers.any(URL.class))).thenAnswer(invocation -> {
+            UrlFile file = Mockito.mock(UrlFile.class);
+            fileMap.put(invocation.getArguments()[0].toString(), file);
+            return file;
+        });
+        FileModel fileModel = new FileModel();
+        fileModel.setUrl(directory.toURI().toURL());
+        fileModel.setDirectory(true);
+
+        try (Stream<UrlFile> stream = provider.stream(fileModel, null)) {
+            Assert.assertEquals(2, stream.count());
+        }
+
+        FileModel childModel = captureModel(fileMap.get(new File(directory, "file name.txt").toURI().toURL().toString()));
+        Assert.assertTrue(childModel.isFileExists());
+        Assert.assertFalse(childModel.isDirectory());
+        Assert.assertEquals(10, childModel.getSize());
+        Assert.assertNotNull(childModel.getLastModifiedTime());
+        FileModel subdirectoryModel = captureModel(fileMap.get(subdirectory.toURI().toURL().toString()));
+        Assert.assertTrue(subdirectoryModel.isDirectory());
+        Assert.assertEquals(1, subdirectoryModel.getSize());
+    }
+
+    @Test
+    public void streamKeepsDanglingLink() throws Exception {
+        org.junit.Assume.assumeTrue("Host operating system doesn't support symbolic links. Skipping test..", OsUtils.detectOSFamily() != OsFamily.WINDOWS);
+        File directory = temporaryFolder.newFolder("directory");
+        File link = new File(directory, "link");
+        Files.createSymbolicLink(link.toPath(), new File(directory, "missing").toPath());
+        Map<String, UrlFile> fileMap = new HashMap<>();
+        Mockito.when(fileContext.resolveFile(Matchers.any(URL.class))).thenAnswer(invocation -> {
+            UrlFile file = Mockito.mock(UrlFile.class);
+            fileMap.put(invocation.getArguments()[0].toString(), file);
+            return file;
+        });
+        FileModel fileModel = new FileModel();
+        fileModel.setUrl(directory.toURI().toURL());
+        fileModel.setDirectory(true);
+
+        try (Stream<UrlFile> stream = provider.stream(fileModel, null)) {
+            Assert.assertEquals(1, stream.count());
+        }
+
+        FileModel linkModel = captureModel(fileMap.get(link.toURI().toURL().toString()));
+        Assert.assertTrue(linkModel.isSymbolicLink());
+        Assert.assertFalse(linkModel.isFileExists());
+        Assert.assertNotNull(linkModel.getLinkTarget());
+    }
+
+    private FileModel captureModel(UrlFile file) {
+        Assert.assertNotNull(file);
+        ArgumentCaptor<FileModel> modelCaptor = ArgumentCaptor.forClass(FileModel.class);
+        Mockito.verify(file).setModelIfAbsent(modelCaptor.capture());
+        return modelCaptor.getValue();
+    }
+
+    @Test
+    public void checksum() throws Exception {
+        byte[] content = new byte[1024 * 100 + 3];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        Files.write(new File(sourceFileUrl.toURI()).toPath(), content);
+        FileModel fileModel = new FileModel();
+        fileModel.setUrl(sourceFileUrl);
+
+        byte[] expectedChecksum = MessageDigest.getInstance("SHA1").digest(content);
+        Byte[] checksum = provider.checksum(fileModel);
+        Assert.assertEquals(expectedChecksum.length, checksum.length);
+        for (int i = 0; i < checksum.length; i++)
+            Assert.assertEquals(expectedChecksum[i], checksum[i].byteValue());
+    }
+
+    @Test
+    public void treeChecksum() throws Exception {
+        byte[] content = new byte[(int) ChecksumUtils.TREE_CHUNK_SIZE * 2 + 1000];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i % 251);
+        Files.write(new File(sourceFileUrl.toURI()).toPath(), content);
+        FileModel fileModel = new FileModel();
+        fileModel.setUrl(sourceFileUrl);
+
+        MessageDigest chunkMd = MessageDigest.getInstance("SHA-256");
+        MessageDigest treeMd = MessageDigest.getInstance("SHA-256");
+        for (int position = 0; position < content.length; position += ChecksumUtils.TREE_CHUNK_SIZE) {
+            chunkMd.update(content, position, (int) Math.min(ChecksumUtils.TREE_CHUNK_SIZE, content.length - position));
+            treeMd.update(chunkMd.digest());
+        }
+        byte[] expectedChecksum = treeMd.digest();
+
+        Assert.assertArrayEquals(expectedChecksum, provider.treeChecksum(fileModel, "SHA-256"));
+        Assert.assertArrayEquals(expectedChecksum, ChecksumUtils.treeDigest(new ByteArrayInputStream(content), "SHA-256"));
+        Assert.assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), provider.checksum(fileModel, "SHA-256"));
+    }
+
     protected void cleanupFiles() {
         for (URL url : new URL[]{sourceFileUrl, targetFileUrl, sourceDirectoryUrl, targetDirectoryUrl}) {
             if (url != null) {
@@ -0,0 +1,67 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.util;
+
+import at.beris.virtualfile.exception.VirtualFileException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BlockingIteratorTest {
+
+    @Test
+    public void iterateElementsOfProducer() {
+        BlockingIterator<Integer> iterator = new BlockingIterator<>(2);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 10; i++)
+                iterator.offer(i);
+            iterator.finish(null);
+        });
+        producer.start();
+
+        List<Integer> elements = new ArrayList<>();
+        iterator.forEachRemaining(elements::add);
+
+        Assert.assertEquals(10, elements.size());
+        Assert.assertEquals(Integer.valueOf(9), elements.get(9));
+    }
+
+    @Test(expected = VirtualFileException.class)
+    public void throwErrorOfProducer() {
+        BlockingIterator<Integer> iterator = new BlockingIterator<>(2);
+        iterator.offer(1);
+        iterator.finish(new VirtualFileException(new IllegalStateException()));
+
+        Assert.assertEquals(Integer.valueOf(1), iterator.next());
+        iterator.hasNext();
+    }
+
+    @Test
+    public void closeStopsWaitingProducer() throws Exception {
+        BlockingIterator<Integer> iterator = new BlockingIterator<>(1);
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        Thread producer = new Thread(() -> {
+            int i = 0;
+            while (iterator.offer(i++)) ;
+            stopped.set(true);
+        });
+        producer.start();
+
+        Assert.assertEquals(Integer.valueOf(0), iterator.next());
+        iterator.close();
+        producer.join(5000);
+
+        Assert.assertTrue(stopped.get());
+        Assert.assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class ByteBufferUtilsTest {
+
+    @Test
+    public void testMismatchEqual() {
+        byte[] bytes = createBytes(101);
+        Assert.assertEquals(-1, ByteBufferUtils.mismatch(ByteBuffer.wrap(bytes), ByteBuffer.wrap(bytes.clone())));
+    }
+
+    @Test
+    public void testMismatch() {
+        byte[] bytes = createBytes(101);
+        for (int index : new int[]{0, 7, 8, 63, 100}) {
+            byte[] otherBytes = bytes.clone();
+            otherBytes[index] ^= 1;
+            Assert.assertEquals(index, ByteBufferUtils.mismatch(ByteBuffer.wrap(bytes), ByteBuffer.wrap(otherBytes)));
+        }
+    }
+
+    @Test
+    public void testMismatchDifferentLength() {
+        byte[] bytes = createBytes(20);
+        Assert.assertEquals(10, ByteBufferUtils.mismatch(ByteBuffer.wrap(bytes), ByteBuffer.wrap(bytes, 0, 10)));
+    }
+
+    @Test
+    public void testMismatchKeepsPosition() {
+        byte[] bytes = createBytes(20);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(4);
+        Assert.assertEquals(-1, ByteBufferUtils.mismatch(buffer, ByteBuffer.wrap(bytes, 4, 16)));
+        Assert.assertEquals(4, buffer.position());
+    }
+
+    private byte[] createBytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) (i * 7);
+        return bytes;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of VirtualFile.
+ *
+ * Copyright 2017 by Bernd Riedl <bernd.riedl@gmail.com>
+ *
+ * Licensed under GNU Lesser General Public License 3.0 or later.
+ * Some rights reserved. See COPYING, AUTHORS.
+ */
+
+package at.beris.virtualfile.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+public class ChecksumUtilsTest {
+    private static final String SHA1_HEX = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+
+    @Test
+    public void testParseSha1FromSha1sum() {
+        Assert.assertArrayEquals(hexToBytes(SHA1_HEX), ChecksumUtils.parseSha1(SHA1_HEX + " */home/test/file.txt\n"));
+    }
+
+    @Test
+    public void testParseSha1FromFtpReply() {
+        Assert.assertArrayEquals(hexToBytes(SHA1_HEX), ChecksumUtils.parseSha1("213 SHA-1 0-44 " + SHA1_HEX.toUpperCase() + " file.txt\r\n"));
+    }
+
+    @Test
+    public void testParseSha1Invalid() {
+        Assert.assertNull(ChecksumUtils.parseSha1(null));
+        Assert.assertNull(ChecksumUtils.parseSha1("sha1sum: file.txt: No such file or directory"));
+        Assert.assertNull(ChecksumUtils.parseSha1(SHA1_HEX + "ab file.txt"));
+    }
+
+    @Test
+    public void testParseChecksumOfAlgorithm() {
+        String sha256Hex = "d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592";
+        String md5Hex = "9e107d9d372bb6826bd81d3542a419d6";
+        Assert.assertArrayEquals(hexToBytes(sha256Hex), ChecksumUtils.parseChecksum(sha256Hex + " *file.txt\n", ChecksumUtils.SHA256));
+        Assert.assertArrayEquals(hexToBytes(md5Hex), ChecksumUtils.parseChecksum("213 MD5 0-44 " + md5Hex + " file.txt\r\n", ChecksumUtils.MD5));
+        Assert.assertNull(ChecksumUtils.parseChecksum(SHA1_HEX + " *file.txt\n", ChecksumUtils.SHA256));
+    }
+
+    @Test
+    public void testNormalizeAlgorithm() {
+        Assert.assertEquals(ChecksumUtils.normalizeAlgorithm(ChecksumUtils.SHA1), ChecksumUtils.normalizeAlgorithm("sha-1"));
+        Assert.assertEquals("SHA256", ChecksumUtils.normalizeAlgorithm(ChecksumUtils.SHA256));
+    }
+
+    @Test
+    public void testSha1() throws Exception {
+        byte[] content = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertArrayEquals(MessageDigest.getInstance("SHA1").digest(content), ChecksumUtils.sha1(new ByteArrayInputStream(content)));
+        Assert.assertArrayEquals(hexToBytes(SHA1_HEX), ChecksumUtils.sha1(new ByteArrayInputStream(content)));
+    }
+
+    @Test
+    public void testCrc32() throws Exception {
+        byte[] content = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertArrayEquals(hexToBytes("414fa339"), ChecksumUtils.digest(new ByteArrayInputStream(content), ChecksumUtils.CRC32));
+    }
+
+    @Test
+    public void testRegisterDigest() throws Exception {
+        ChecksumUtils.registerDigest("TEST-SHA1", () -> ChecksumUtils.createMessageDigest(ChecksumUtils.SHA1));
+        Assert.assertArrayEquals(hexToBytes(SHA1_HEX), ChecksumUtils.digest(new ByteArrayInputStream(
+                "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII)), "test-sha1"));
+    }
+
+    @Test
+    public void testTreeDigestOfSingleChunk() throws Exception {
+        byte[] content = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+        MessageDigest md = MessageDigest.getInstance("SHA1");
+        Assert.assertArrayEquals(md.digest(hexToBytes(SHA1_HEX)), ChecksumUtils.treeDigest(new ByteArrayInputStream(content), ChecksumUtils.SHA1));
+        Assert.assertArrayEquals(md.digest(), ChecksumUtils.treeDigest(new ByteArrayInputStream(new byte[0]), ChecksumUtils.SHA1));
+    }
+
+    private byte[] hexToBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        return bytes;
+    }
+}